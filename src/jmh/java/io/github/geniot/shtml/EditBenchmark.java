@@ -0,0 +1,114 @@
+/*
+ * SimplyHTML, a word processor based on Java, HTML and CSS
+ * Copyright (C) 2003 Ulrich Hilger
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.github.geniot.shtml;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.html.HTML;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures editing operations on a document: table operations done
+ * through <code>SHTMLDocument.setOuterHTML</code> the way
+ * <code>SHTMLEditorPane</code> does them and resolving the attributes
+ * of all elements with <code>Util.resolveAttributes</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class EditBenchmark {
+
+    /** size of the HTML read in bytes */
+    @Param({"10240", "102400", "1048576", "10485760"})
+    public int size;
+
+    private SHTMLDocument doc;
+    /** the start of the table in the middle of the document, text before it does not change */
+    private int tableStart;
+    private String tableHtml;
+    private String tableHtmlWithRow;
+
+    @Setup
+    public void setUp() throws IOException, BadLocationException {
+        doc = SyntheticDocuments.read(SyntheticDocuments.html(size));
+        int offset = doc.getLength() / 2;
+        while (findTable(offset) == null) {
+            offset = doc.getParagraphElement(offset).getEndOffset();
+        }
+        tableStart = findTable(offset).getStartOffset();
+        tableHtml = SyntheticDocuments.table(3, 3);
+        tableHtmlWithRow = SyntheticDocuments.table(4, 3);
+        doc.setOuterHTML(getTable(), tableHtml);
+    }
+
+    /**
+     * insert a row into a table and remove it again
+     */
+    @Benchmark
+    public void insertAndDeleteTableRow() throws IOException, BadLocationException {
+        doc.setOuterHTML(getTable(), tableHtmlWithRow);
+        doc.setOuterHTML(getTable(), tableHtml);
+    }
+
+    @Benchmark
+    public int resolveAttributes() {
+        return resolveAttributes(doc.getDefaultRootElement());
+    }
+
+    private int resolveAttributes(final Element element) {
+        final AttributeSet resolved = Util.resolveAttributes(element.getAttributes());
+        int count = resolved.getAttributeCount();
+        for (int i = 0; i < element.getElementCount(); i++) {
+            count += resolveAttributes(element.getElement(i));
+        }
+        return count;
+    }
+
+    private Element getTable() {
+        return findTable(tableStart);
+    }
+
+    private Element findTable(final int offset) {
+        for (Element e = doc.getParagraphElement(offset); e != null; e = e.getParentElement()) {
+            if (e.getAttributes().getAttribute(StyleConstants.NameAttribute) == HTML.Tag.TABLE) {
+                return e;
+            }
+        }
+        return null;
+    }
+}
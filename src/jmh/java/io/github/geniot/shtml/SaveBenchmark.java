@@ -0,0 +1,79 @@
+/*
+ * SimplyHTML, a word processor based on Java, HTML and CSS
+ * Copyright (C) 2003 Ulrich Hilger
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.github.geniot.shtml;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.html.StyleSheet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures writing a document with <code>SHTMLWriter</code> and its
+ * style sheet with <code>CSSWriter</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class SaveBenchmark {
+
+    /** size of the HTML read in bytes */
+    @Param({"10240", "102400", "1048576", "10485760"})
+    public int size;
+
+    private SHTMLDocument doc;
+    private StyleSheet styleSheet;
+
+    @Setup
+    public void setUp() throws IOException, BadLocationException {
+        doc = SyntheticDocuments.read(SyntheticDocuments.html(size));
+        styleSheet = new StyleSheet();
+        styleSheet.addRule(SyntheticDocuments.css(size / 100));
+    }
+
+    @Benchmark
+    public int writeHtml() throws IOException, BadLocationException {
+        final StringWriter sw = new StringWriter(size);
+        new SHTMLWriter(sw, doc).write();
+        return sw.getBuffer().length();
+    }
+
+    @Benchmark
+    public int writeCss() throws IOException {
+        final StringWriter sw = new StringWriter();
+        new CSSWriter(sw, styleSheet).write();
+        return sw.getBuffer().length();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * SimplyHTML, a word processor based on Java, HTML and CSS
+ * Copyright (C) 2003 Ulrich Hilger
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.github.geniot.shtml;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.text.BadLocationException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.geniot.shtml.PseudoDamerauLevenshtein.Alignment;
+
+/**
+ * Measures approximate search with
+ * <code>PseudoDamerauLevenshtein.computeAlignments</code> in the text of a
+ * document, the way <code>FindReplaceDialog</code> searches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class SearchBenchmark {
+
+    /** size of the HTML read in bytes */
+    @Param({"10240", "102400", "1048576", "10485760"})
+    public int size;
+
+    /** the minimum score of a match */
+    @Param({"0.65", "0.9"})
+    public double threshold;
+
+    private String text;
+
+    @Setup
+    public void setUp() throws IOException, BadLocationException {
+        final SHTMLDocument doc = SyntheticDocuments.read(SyntheticDocuments.html(size));
+        text = doc.getText(0, doc.getLength());
+    }
+
+    @Benchmark
+    public List<Alignment> computeAlignments() {
+        final PseudoDamerauLevenshtein pdl = new PseudoDamerauLevenshtein();
+        pdl.init(SyntheticDocuments.PHRASE, text, true, false);
+        return pdl.computeAlignments(threshold);
+    }
+}
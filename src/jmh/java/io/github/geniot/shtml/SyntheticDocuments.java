@@ -0,0 +1,170 @@
+/*
+ * SimplyHTML, a word processor based on Java, HTML and CSS
+ * Copyright (C) 2003 Ulrich Hilger
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.github.geniot.shtml;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+
+import javax.swing.text.BadLocationException;
+
+/**
+ * Generates the documents the benchmarks work on.
+ *
+ * <p>A document is a mix of styled paragraphs, headings, nested lists
+ * and tables, repeated until the HTML reaches the requested size. The
+ * generator is seeded, so every run works on the same documents.</p>
+ */
+class SyntheticDocuments {
+
+    /** the document sizes in bytes benchmarks are run with, 10 KB to 10 MB */
+    static final String[] SIZES = {"10240", "102400", "1048576", "10485760"};
+
+    /** the phrase approximately contained in the documents */
+    static final String PHRASE = "approximate search";
+
+    private static final String[] WORDS = {"lorem", "ipsum", "dolor", "sit", "amet", "consectetur",
+        "adipiscing", "elit", "sed", "do", "eiusmod", "tempor", "incididunt", "labore", "magna",
+        "aliqua", "approximate", "search", "approximative", "serach"};
+
+    private SyntheticDocuments() {
+    }
+
+    /**
+     * get the HTML of a document
+     *
+     * @param size  the approximate size of the HTML in bytes
+     */
+    static String html(final int size) {
+        final Random random = new Random(size);
+        final StringBuilder sb = new StringBuilder(size + 1024);
+        sb.append("<html>\n<head>\n<style type=\"text/css\">\n");
+        sb.append(css(Math.max(size / 1000, 10)));
+        sb.append("</style>\n</head>\n<body>\n");
+        for (int block = 0; sb.length() < size; block++) {
+            switch (block % 6) {
+                case 0:
+                    sb.append("<h2>");
+                    words(sb, random, 4);
+                    sb.append("</h2>\n");
+                    break;
+                case 1:
+                case 2:
+                    sb.append("<p class=\"c").append(random.nextInt(10)).append("\">");
+                    words(sb, random, 20);
+                    sb.append(" <b>");
+                    words(sb, random, 3);
+                    sb.append("</b> <span style=\"color: #ff0000\">");
+                    words(sb, random, 3);
+                    sb.append("</span> ");
+                    if (random.nextInt(4) == 0) {
+                        sb.append(PHRASE).append(' ');
+                    }
+                    words(sb, random, 20);
+                    sb.append("</p>\n");
+                    break;
+                case 3:
+                    sb.append("<ul>\n");
+                    for (int i = 0; i < 3; i++) {
+                        sb.append("<li>");
+                        words(sb, random, 6);
+                        if (i == 1) {
+                            sb.append("<ul>\n<li>");
+                            words(sb, random, 5);
+                            sb.append("</li>\n</ul>\n");
+                        }
+                        sb.append("</li>\n");
+                    }
+                    sb.append("</ul>\n");
+                    break;
+                case 4:
+                    table(sb, random, 3, 3);
+                    break;
+                default:
+                    sb.append("<p><i>");
+                    words(sb, random, 12);
+                    sb.append("</i> <a href=\"#a").append(block).append("\">");
+                    words(sb, random, 2);
+                    sb.append("</a></p>\n");
+            }
+        }
+        sb.append("</body>\n</html>\n");
+        return sb.toString();
+    }
+
+    /**
+     * get a style sheet
+     *
+     * @param rules  the number of class rules of the style sheet
+     */
+    static String css(final int rules) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("body { font-family: SansSerif; font-size: 12pt }\n");
+        sb.append("p { margin-top: 2pt; margin-bottom: 2pt }\n");
+        for (int i = 0; i < rules; i++) {
+            sb.append(".c").append(i).append(" { color: #").append(Integer.toHexString(0x100000 + i * 97 % 0xeffff))
+                .append("; margin-left: ").append(i % 20).append("pt; font-weight: ")
+                .append(i % 2 == 0 ? "bold" : "normal").append(" }\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * get the HTML of a table
+     */
+    static String table(final int rows, final int columns) {
+        final StringBuilder sb = new StringBuilder();
+        table(sb, new Random(rows * 31 + columns), rows, columns);
+        return sb.toString();
+    }
+
+    /**
+     * read a document the way <code>DocumentPane</code> does
+     */
+    static SHTMLDocument read(final String html) throws IOException, BadLocationException {
+        final SHTMLEditorKit kit = new SHTMLEditorKit();
+        final SHTMLDocument doc = (SHTMLDocument) kit.createEmptyDocument();
+        doc.putProperty("IgnoreCharsetDirective", Boolean.TRUE);
+        kit.read(new StringReader(html), doc, 0);
+        return doc;
+    }
+
+    private static void table(final StringBuilder sb, final Random random, final int rows, final int columns) {
+        sb.append("<table border=\"1\">\n");
+        for (int r = 0; r < rows; r++) {
+            sb.append("<tr>\n");
+            for (int c = 0; c < columns; c++) {
+                sb.append("<td><p>");
+                words(sb, random, 3);
+                sb.append("</p></td>\n");
+            }
+            sb.append("</tr>\n");
+        }
+        sb.append("</table>\n");
+    }
+
+    private static void words(final StringBuilder sb, final Random random, final int count) {
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+    }
+}
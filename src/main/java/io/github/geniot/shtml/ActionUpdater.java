@@ -0,0 +1,91 @@
+/*
+ * SimplyHTML, a word processor based on Java, HTML and CSS
+ * Copyright (C) 2003 Ulrich Hilger
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.github.geniot.shtml;
+
+import java.awt.EventQueue;
+import java.util.Enumeration;
+
+import javax.swing.Action;
+
+/**
+ * Updates the actions of a <code>DynamicResource</code> after the state
+ * of the editor changed.
+ *
+ * <p>Changes are collected until the event dispatch thread gets to
+ * update the actions, so that any number of changes in a row cause a
+ * single update. Only actions depending on one of the changed states are
+ * updated then, as told by <code>StateDependentAction</code>. Other
+ * <code>SHTMLAction</code>s are updated on any change.</p>
+ */
+class ActionUpdater implements Runnable {
+
+    /**
+     * construct an <code>ActionUpdater</code>
+     *
+     * @param dynRes  the resource holding the actions to update
+     */
+    ActionUpdater(final DynamicResource dynRes) {
+        this.dynRes = dynRes;
+    }
+
+    /**
+     * update the actions depending on some state soon
+     *
+     * @param states  the changed states, a combination of the constants of
+     * <code>StateDependentAction</code>
+     */
+    synchronized void request(final int states) {
+        changed |= states;
+        if (!scheduled) {
+            scheduled = true;
+            EventQueue.invokeLater(this);
+        }
+    }
+
+    /**
+     * update the actions depending on the states changed since the last update
+     */
+    public void run() {
+        final int states;
+        synchronized (this) {
+            states = changed;
+            changed = 0;
+            scheduled = false;
+        }
+        final Enumeration<?> actions = dynRes.getActions();
+        while (actions.hasMoreElements()) {
+            final Action action = (Action) actions.nextElement();
+            if (action instanceof StateDependentAction) {
+                if ((((StateDependentAction) action).getUpdateDependencies() & states) != 0) {
+                    ((SHTMLAction) action).update();
+                }
+            }
+            else if (action instanceof SHTMLAction) {
+                ((SHTMLAction) action).update();
+            }
+        }
+    }
+
+    /** the resource holding the actions to update */
+    private final DynamicResource dynRes;
+    /** the states changed since the last update */
+    private int changed;
+    /** indicates that an update is waiting to run */
+    private boolean scheduled;
+}
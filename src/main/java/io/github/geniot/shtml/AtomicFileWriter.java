@@ -0,0 +1,130 @@
+/*
+ * SimplyHTML, a word processor based on Java, HTML and CSS
+ * Copyright (C) 2003 Ulrich Hilger
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.github.geniot.shtml;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a file in UTF-8 so that it either keeps its old content or gets
+ * the new content completely.
+ *
+ * <p>Text is buffered and written to a temporary file in the directory of
+ * the target file. <code>commit</code> forces the temporary file to disk
+ * and renames it to the target file. Closing without a commit deletes the
+ * temporary file and leaves the target file untouched.</p>
+ *
+ * <pre>
+ * try (AtomicFileWriter w = new AtomicFileWriter(file)) {
+ *     ... write to w ...
+ *     w.commit();
+ * }
+ * </pre>
+ */
+class AtomicFileWriter extends BufferedWriter {
+
+    /**
+     * construct an <code>AtomicFileWriter</code>
+     *
+     * @param target  the file to write
+     */
+    AtomicFileWriter(final File target) throws IOException {
+        this(target, createTempFile(target));
+    }
+
+    private AtomicFileWriter(final File target, final File temp) throws IOException {
+        this(target, temp, new FileOutputStream(temp));
+    }
+
+    private AtomicFileWriter(final File target, final File temp, final FileOutputStream out) {
+        super(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        this.target = target;
+        this.temp = temp;
+        this.out = out;
+    }
+
+    /**
+     * write all buffered text to disk and replace the target file with it
+     */
+    void commit() throws IOException {
+        flush();
+        out.getFD().sync();
+        super.close();
+        try {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (final AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        committed = true;
+        syncDirectory();
+    }
+
+    /**
+     * close the writer, without a commit the target file remains as it was
+     */
+    public void close() throws IOException {
+        if (!committed) {
+            try {
+                super.close();
+            }
+            finally {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * make the rename durable, not supported on all platforms
+     */
+    private void syncDirectory() {
+        final File dir = target.getAbsoluteFile().getParentFile();
+        try (final FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+        catch (final IOException e) {
+        }
+    }
+
+    private static File createTempFile(final File target) throws IOException {
+        final File dir = target.getAbsoluteFile().getParentFile();
+        return File.createTempFile("." + target.getName() + "-", ".tmp", dir);
+    }
+
+    /** the number of chars buffered before they are written */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** the file to replace */
+    private final File target;
+    /** the file written to until the commit */
+    private final File temp;
+    /** the stream of the temporary file */
+    private final FileOutputStream out;
+    /** indicates that the target file has been replaced */
+    private boolean committed = false;
+}
@@ -0,0 +1,423 @@
+/*
+ * SimplyHTML, a word processor based on Java, HTML and CSS
+ * Copyright (C) 2003 Ulrich Hilger
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.github.geniot.shtml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.Vector;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+/**
+ * Saves the open documents of a <code>SHTMLPanelMultipleDocImpl</code>
+ * to <code>RecoveryJournal</code>s periodically, and opens the documents
+ * found in the journals left by a crashed session.
+ *
+ * <p>All work is done on a single background thread. A document changed
+ * since it was saved to its journal last is written while the document is
+ * read locked, so it can not change meanwhile. The journal of a document
+ * is removed when the document is saved to its file or closed.</p>
+ *
+ * <p>Each session holds a lock on a file in the directory of the journals
+ * as long as it runs. Only journals of sessions whose lock can be
+ * acquired are recovered, so that a second instance of the application
+ * does not take the documents of a running instance for documents of a
+ * crashed session.</p>
+ *
+ * <p>The interval between saves in seconds is taken from the preference
+ * <code>autosave_interval</code>, an interval of 0 turns autosaving
+ * off.</p>
+ */
+class AutoSaver {
+
+    /**
+     * construct an <code>AutoSaver</code>
+     *
+     * @param panel  the panel to open recovered documents in
+     * @param dir  the directory to keep the journals in
+     */
+    AutoSaver(final SHTMLPanelMultipleDocImpl panel, final File dir) {
+        this.panel = panel;
+        this.dir = dir;
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(final Runnable r) {
+                final Thread t = new Thread(r, "AutoSaver");
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * get the directory journals are kept in by default
+     */
+    static File getRecoveryDir() {
+        return new File(System.getProperty("user.home") + File.separator + "."
+                + FrmMain.APP_NAME.toLowerCase() + File.separator + RECOVERY_DIR);
+    }
+
+    /**
+     * get the interval between saves in seconds as set in the preferences
+     */
+    static int getInterval() {
+        try {
+            return Integer.parseInt(Util.getPreference("autosave_interval", "60").trim());
+        }
+        catch (final NumberFormatException e) {
+            return 60;
+        }
+    }
+
+    /**
+     * open the documents of a crashed session and start saving
+     * periodically
+     *
+     * @param seconds  the interval between saves
+     */
+    void start(final int seconds) {
+        lockSession(dir);
+        executor.execute(new Runnable() {
+            public void run() {
+                recover();
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                saveAll();
+            }
+        }, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * stop saving, the journals remain
+     */
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * save a document periodically from now on
+     */
+    void add(final DocumentPane dp) {
+        entries.addElement(new Entry(dp, new RecoveryJournal(dir, session + "-" + (++journalCount))));
+    }
+
+    /**
+     * stop saving a document and remove its journal.
+     *
+     * <p>The journal is removed on the thread doing the saves, after a save
+     * in progress, so that it is not written again after it was removed.</p>
+     */
+    void remove(final DocumentPane dp) {
+        for (final Entry entry : entries.toArray(new Entry[0])) {
+            if (entry.dp == dp) {
+                entries.removeElement(entry);
+                entry.removed = true;
+                entry.setDocument(null);
+                final Runnable delete = new Runnable() {
+                    public void run() {
+                        entry.journal.delete();
+                    }
+                };
+                try {
+                    executor.execute(delete);
+                }
+                catch (final RejectedExecutionException e) {
+                    delete.run();
+                }
+            }
+        }
+    }
+
+    /**
+     * save all documents changed since they were saved last
+     */
+    void saveAll() {
+        for (final Entry entry : entries.toArray(new Entry[0])) {
+            try {
+                save(entry);
+            }
+            catch (final Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void save(final Entry entry) throws Exception {
+        if (entry.removed) {
+            return;
+        }
+        final SHTMLDocument doc = entry.dp.getDocument();
+        if (doc != entry.doc) {
+            entry.setDocument(doc);
+        }
+        if (!entry.dp.needsSaving()) {
+            if (!entry.dp.saveInProgress()) {
+                // saved to its file, nothing to recover
+                entry.journal.delete();
+            }
+            return;
+        }
+        if (!entry.changed || doc.isLoading()) {
+            return;
+        }
+        entry.changed = false;
+        final StringWriter html = new StringWriter();
+        final Exception[] error = new Exception[1];
+        doc.render(new Runnable() {
+            public void run() {
+                try {
+                    new SHTMLWriter(html, doc).write();
+                }
+                catch (final Exception e) {
+                    error[0] = e;
+                }
+            }
+        });
+        if (error[0] != null) {
+            entry.changed = true;
+            throw error[0];
+        }
+        if (entry.removed) {
+            // closed meanwhile, its journal is removed next
+            return;
+        }
+        entry.journal.save(html.toString(), entry.dp.getSource(), entry.dp.getDocumentName());
+    }
+
+    /**
+     * read the documents found in the journals of crashed sessions and show
+     * them, the journals are removed once the documents are shown
+     */
+    void recover() {
+        final Set<String> sessions = new HashSet<String>();
+        for (final String id : RecoveryJournal.list(dir)) {
+            sessions.add(getSession(id));
+        }
+        final String[] names = dir.list();
+        if (names != null) {
+            for (final String name : names) {
+                if (name.endsWith(LOCK)) {
+                    sessions.add(name.substring(0, name.length() - LOCK.length()));
+                }
+            }
+        }
+        sessions.remove(session);
+        for (final String session : sessions) {
+            final FileLock lock = tryLock(new File(dir, session + LOCK));
+            if (lock == null) {
+                // still running
+                continue;
+            }
+            boolean recovered = false;
+            for (final String id : RecoveryJournal.list(dir)) {
+                if (getSession(id).equals(session)) {
+                    recover(new RecoveryJournal(dir, id));
+                    recovered = true;
+                }
+            }
+            if (recovered) {
+                // keep other instances from recovering the journals until they are removed
+                recoveredLocks.addElement(lock);
+            }
+            else {
+                release(lock);
+                new File(dir, session + LOCK).delete();
+            }
+        }
+    }
+
+    /**
+     * read the document found in a journal and show it, the journal is
+     * removed once the document is shown
+     */
+    private void recover(final RecoveryJournal journal) {
+        try {
+            final URL source = journal.getSource();
+            final SHTMLEditorKit kit = new SHTMLEditorKit();
+            final SHTMLDocument doc = (SHTMLDocument) kit.createEmptyDocument();
+            doc.putProperty("IgnoreCharsetDirective", Boolean.TRUE);
+            if (source != null) {
+                doc.setBase(source);
+            }
+            kit.read(new StringReader(journal.replay()), doc, 0);
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run() {
+                    panel.openRecoveredDocument(doc, source);
+                    executor.execute(new Runnable() {
+                        public void run() {
+                            journal.delete();
+                        }
+                    });
+                }
+            });
+        }
+        catch (final Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * get the session a journal was written by
+     */
+    private static String getSession(final String id) {
+        final int dash = id.lastIndexOf('-');
+        return dash < 0 ? id : id.substring(0, dash);
+    }
+
+    /**
+     * choose the name of this session and lock its journals, so that other
+     * instances do not take them for the journals of a crashed session. The
+     * lock is held until the application ends.
+     *
+     * <p>A session whose lock file can not be locked is given another
+     * name, as the name may be taken by another instance.</p>
+     */
+    private static synchronized void lockSession(final File dir) {
+        if (session == null) {
+            dir.mkdirs();
+            for (int i = 0; i < 3 && sessionLock == null; i++) {
+                session = UUID.randomUUID().toString().replace("-", "");
+                sessionLock = tryLock(new File(dir, session + LOCK));
+            }
+        }
+    }
+
+    /**
+     * lock a file
+     *
+     * @return the lock or null, if the file is locked by another instance or
+     * by this one already
+     */
+    private static FileLock tryLock(final File file) {
+        try {
+            final FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+            try {
+                final FileLock lock = channel.tryLock();
+                if (lock != null) {
+                    return lock;
+                }
+            }
+            catch (final OverlappingFileLockException e) {
+                // locked by this instance
+            }
+            channel.close();
+        }
+        catch (final IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    private static void release(final FileLock lock) {
+        try {
+            lock.channel().close();
+        }
+        catch (final IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * A document saved periodically together with its journal.
+     */
+    private static class Entry implements DocumentListener {
+        Entry(final DocumentPane dp, final RecoveryJournal journal) {
+            this.dp = dp;
+            this.journal = journal;
+            setDocument(dp.getDocument());
+        }
+
+        /**
+         * watch another document for changes
+         */
+        void setDocument(final SHTMLDocument newDoc) {
+            if (doc != null) {
+                doc.removeDocumentListener(this);
+            }
+            doc = newDoc;
+            if (doc != null) {
+                doc.addDocumentListener(this);
+            }
+            changed = true;
+        }
+
+        public void insertUpdate(final DocumentEvent e) {
+            changed = true;
+        }
+
+        public void removeUpdate(final DocumentEvent e) {
+            changed = true;
+        }
+
+        public void changedUpdate(final DocumentEvent e) {
+            changed = true;
+        }
+
+        /** the pane showing the document */
+        final DocumentPane dp;
+        /** the journal the document is saved to */
+        final RecoveryJournal journal;
+        /** the document watched for changes */
+        volatile SHTMLDocument doc;
+        /** indicates that the document changed since it was saved last */
+        volatile boolean changed;
+        /** indicates that the document was closed, it is not saved anymore */
+        volatile boolean removed;
+    }
+
+    /** the name of the directory journals are kept in */
+    private static final String RECOVERY_DIR = "recovery";
+    /** the prefix of the journals of this session, chosen by lockSession */
+    private static String session;
+    /** the extension of the lock file of a session */
+    private static final String LOCK = ".lock";
+    /** the lock held by this session */
+    private static FileLock sessionLock;
+    /** the panel to open recovered documents in */
+    private final SHTMLPanelMultipleDocImpl panel;
+    /** the directory journals are kept in */
+    private final File dir;
+    /** the thread doing all saves */
+    private final ScheduledExecutorService executor;
+    /** the locks of crashed sessions whose journals were recovered */
+    private final Vector<FileLock> recoveredLocks = new Vector<FileLock>();
+    /** the documents saved periodically */
+    private final Vector<Entry> entries = new Vector<Entry>();
+    /** the number of journals created in this session */
+    private int journalCount = 0;
+}
@@ -0,0 +1,148 @@
+/*
+ * SimplyHTML, a word processor based on Java, HTML and CSS
+ * Copyright (C) 2003 Ulrich Hilger
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.github.geniot.shtml;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.Element;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.html.HTML;
+
+/**
+ * Keeps the HTML written for the children of the BODY element of a
+ * document.
+ *
+ * <p><code>SHTMLWriter</code> records the HTML of each child of the body
+ * while it writes a whole document and writes the recorded HTML of
+ * unchanged children instead of serializing them again. Changes of the
+ * document discard the HTML of the children they touch, so writing the
+ * document again only serializes the changed children.</p>
+ *
+ * <p>Entries are kept by element, elements replaced by a change simply
+ * are not found anymore and are dropped once they are garbage.</p>
+ *
+ * @see SHTMLDocument#getBlockHtmlCache
+ */
+class BlockHtmlCache implements DocumentListener {
+
+    BlockHtmlCache(final SHTMLDocument doc) {
+        this.doc = doc;
+        doc.addDocumentListener(this);
+    }
+
+    /**
+     * get the HTML recorded for an element
+     *
+     * @return the HTML or null, if there is none
+     */
+    synchronized String get(final Element e) {
+        return html.get(e);
+    }
+
+    /**
+     * record the HTML written for an element
+     */
+    synchronized void put(final Element e, final String s) {
+        html.put(e, s);
+    }
+
+    /**
+     * indicates whether or not the HTML of an element can be recorded.
+     *
+     * <p>That is the case for elements written separately except for the
+     * last child of the body, as the end of the document is not written.</p>
+     */
+    static boolean isCacheable(final Element e) {
+        if (!isWrittenSeparately(e)) {
+            return false;
+        }
+        final Element parent = e.getParentElement();
+        return parent.getElement(parent.getElementCount() - 1) != e;
+    }
+
+    /**
+     * indicates whether or not an element is a child of the BODY element
+     * written with its own tags, following a sibling written with its own
+     * tags, if any, so that its HTML starts at the beginning of a line with
+     * no tags left open.
+     */
+    static boolean isWrittenSeparately(final Element e) {
+        final Element parent = e.getParentElement();
+        if (parent == null || !isTag(parent, HTML.Tag.BODY) || isTag(e, HTML.Tag.IMPLIED)) {
+            return false;
+        }
+        final int index = parent.getElementIndex(e.getStartOffset());
+        if (parent.getElement(index) != e) {
+            return false;
+        }
+        return index == 0 || !isTag(parent.getElement(index - 1), HTML.Tag.IMPLIED);
+    }
+
+    public void insertUpdate(final DocumentEvent e) {
+        invalidate(e.getOffset() - 1, e.getOffset() + e.getLength());
+    }
+
+    public void removeUpdate(final DocumentEvent e) {
+        invalidate(e.getOffset() - 1, e.getOffset());
+    }
+
+    public void changedUpdate(final DocumentEvent e) {
+        invalidate(e.getOffset() - 1, e.getOffset() + e.getLength());
+    }
+
+    /**
+     * discard the HTML of all children of the body touching a range of the document
+     */
+    private synchronized void invalidate(final int start, final int end) {
+        if (html.isEmpty()) {
+            return;
+        }
+        final Element body = getBody();
+        if (body == null) {
+            html.clear();
+            return;
+        }
+        final int last = body.getElementIndex(Math.min(end, doc.getLength()));
+        for (int i = body.getElementIndex(Math.max(start, 0)); i <= last && i < body.getElementCount(); i++) {
+            html.remove(body.getElement(i));
+        }
+    }
+
+    private Element getBody() {
+        final Element root = doc.getDefaultRootElement();
+        for (int i = 0; i < root.getElementCount(); i++) {
+            if (isTag(root.getElement(i), HTML.Tag.BODY)) {
+                return root.getElement(i);
+            }
+        }
+        return null;
+    }
+
+    private static boolean isTag(final Element e, final HTML.Tag tag) {
+        return e.getAttributes().getAttribute(StyleConstants.NameAttribute) == tag;
+    }
+
+    /** the document the HTML is kept for */
+    private final SHTMLDocument doc;
+    /** the HTML written for the children of the body */
+    private final Map<Element, String> html = new WeakHashMap<Element, String>();
+}
@@ -69,12 +69,6 @@ class CSSWriter {
         final Enumeration rules = styleSheet.getStyleNames();
         while (rules.hasMoreElements()) {
             writeRule((String) rules.nextElement());
-            try {
-                Thread.currentThread();
-                Thread.sleep(0, 1);
-            }
-            catch (final Exception e) {
-            }
         }
     }
 
@@ -0,0 +1,174 @@
+/*
+ * SimplyHTML, a word processor based on Java, HTML and CSS
+ * Copyright (C) 2003 Ulrich Hilger
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.github.geniot.shtml;
+
+import java.util.Map;
+import java.util.Vector;
+import java.util.WeakHashMap;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.Element;
+import javax.swing.text.MutableAttributeSet;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.html.HTML;
+import javax.swing.text.html.StyleSheet;
+
+/**
+ * Keeps the attributes applying to the elements of a document, as
+ * combined from the element tree and the style sheet of the document
+ * by <code>SHTMLPanelImpl.getMaxAttributes</code>.
+ *
+ * <p>The attributes of an element are combined from the attributes
+ * found for its parent, which are kept as well, and the style and
+ * attributes of the element itself. Finding the attributes for another
+ * element at the caret therefore only looks at the elements not seen
+ * before, usually a single character element.</p>
+ *
+ * <p>All attributes kept are discarded when attributes of elements of
+ * the document or the styles of its style sheet change. Elements
+ * replaced by other changes simply are not found anymore and are dropped
+ * once they are garbage.</p>
+ *
+ * @see SHTMLDocument#getComputedStyleCache
+ */
+class ComputedStyleCache implements DocumentListener {
+
+    ComputedStyleCache(final SHTMLDocument doc) {
+        this.doc = doc;
+        doc.addDocumentListener(this);
+    }
+
+    /**
+     * get the attributes applying to an element of the document
+     *
+     * @param e  the element to get the attributes for
+     *
+     * @return the attributes, which must not be changed
+     */
+    synchronized AttributeSet get(final Element e) {
+        final StyleSheet styles = doc.getStyleSheet();
+        if (!(styles instanceof ScaledStyleSheet)) {
+            // changes of the styles can not be told
+            return getAttributes(e, styles);
+        }
+        final long modificationCount = ((ScaledStyleSheet) styles).getModificationCount();
+        if (modificationCount != styleSheetModificationCount) {
+            clear();
+            styleSheetModificationCount = modificationCount;
+        }
+        AttributeSet a = attributes.get(e);
+        if (a == null) {
+            final SimpleAttributeSet set = new SimpleAttributeSet(getInherited(e));
+            set.addAttributes(e.getAttributes());
+            a = new AttributeMapper(set).getMappedAttributes(AttributeMapper.toJava);
+            attributes.put(e, a);
+        }
+        return a;
+    }
+
+    /**
+     * get the attributes applying to an element without keeping them
+     *
+     * @param e  the element to get the attributes for, may be null
+     * @param s  the style sheet to combine the attributes of the elements with
+     *
+     * @return the attributes
+     */
+    static MutableAttributeSet getAttributes(final Element e, final StyleSheet s) {
+        final SimpleAttributeSet a = new SimpleAttributeSet();
+        final Vector<Element> elements = new Vector<Element>();
+        for (Element parent = e; parent != null; parent = parent.getParentElement()) {
+            elements.insertElementAt(parent, 0);
+        }
+        for (final Element element : elements) {
+            addAttributes(a, element, s);
+        }
+        if (e != null) {
+            a.addAttributes(e.getAttributes());
+        }
+        return (MutableAttributeSet) new AttributeMapper(a).getMappedAttributes(AttributeMapper.toJava);
+    }
+
+    /**
+     * get the attributes combined from an element and all its parents
+     */
+    private AttributeSet getInherited(final Element e) {
+        AttributeSet a = inherited.get(e);
+        if (a == null) {
+            final Element parent = e.getParentElement();
+            final MutableAttributeSet set = parent == null ? new SimpleAttributeSet() : new SimpleAttributeSet(
+                getInherited(parent));
+            addAttributes(set, e, doc.getStyleSheet());
+            a = set;
+            inherited.put(e, a);
+        }
+        return a;
+    }
+
+    /**
+     * add the attributes of an element and of its style in a style sheet
+     * to a set of attributes
+     */
+    static void addAttributes(final MutableAttributeSet a, final Element e, final StyleSheet s) {
+        final Object classAttr = e.getAttributes().getAttribute(HTML.Attribute.CLASS);
+        final String elemName = e.getName();
+        String styleName = elemName;
+        if (classAttr != null) {
+            styleName = elemName + "." + classAttr.toString();
+            a.addAttribute(HTML.Attribute.CLASS, classAttr);
+        }
+        AttributeSet attrs = s.getStyle(styleName);
+        if (attrs != null) {
+            a.addAttributes(Util.resolveAttributes(attrs));
+        }
+        else {
+            attrs = s.getStyle(elemName);
+            if (attrs != null) {
+                a.addAttributes(Util.resolveAttributes(attrs));
+            }
+        }
+        a.addAttributes(Util.resolveAttributes(e.getAttributes()));
+    }
+
+    private synchronized void clear() {
+        attributes.clear();
+        inherited.clear();
+    }
+
+    public void insertUpdate(final DocumentEvent e) {
+    }
+
+    public void removeUpdate(final DocumentEvent e) {
+    }
+
+    public void changedUpdate(final DocumentEvent e) {
+        clear();
+    }
+
+    /** the document the attributes are kept for */
+    private final SHTMLDocument doc;
+    /** the attributes applying to elements */
+    private final Map<Element, AttributeSet> attributes = new WeakHashMap<Element, AttributeSet>();
+    /** the attributes combined from elements and all their parents */
+    private final Map<Element, AttributeSet> inherited = new WeakHashMap<Element, AttributeSet>();
+    /** the modification count of the style sheet the attributes were found with */
+    private long styleSheetModificationCount = -1;
+}
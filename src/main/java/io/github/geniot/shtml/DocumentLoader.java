@@ -0,0 +1,216 @@
+/*
+ * SimplyHTML, a word processor based on Java, HTML and CSS
+ * Copyright (C) 2003 Ulrich Hilger
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.github.geniot.shtml;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.net.URLConnection;
+
+import javax.swing.JProgressBar;
+import javax.swing.SwingUtilities;
+
+/**
+ * Reads an HTML file into a <code>SHTMLDocument</code>.
+ *
+ * <p>Started as a thread, the document is parsed on that thread while
+ * it already is shown in an editor. The reader of the document inserts
+ * the parsed content in chunks growing in size, so the beginning of the
+ * document is shown after the first few chunks while the rest of the
+ * file still is being parsed.</p>
+ *
+ * <p>The number of bytes read is shown in a progress bar and loading
+ * can be cancelled. The document is marked as loading meanwhile, so the
+ * inserted content does not become part of the undo history.</p>
+ *
+ * @see DocumentPane#loadDocumentInBackground
+ */
+class DocumentLoader extends Thread {
+
+    /**
+     * construct a <code>DocumentLoader</code>
+     *
+     * @param dp  the <code>DocumentPane</code> to notify when loading is done
+     * @param kit  the editor kit to read the document with
+     * @param doc  the empty document to read into
+     * @param url  the location of the file to read
+     * @param progressBar  the progress bar to show the progress in or null
+     */
+    DocumentLoader(final DocumentPane dp, final SHTMLEditorKit kit, final SHTMLDocument doc, final URL url,
+                   final JProgressBar progressBar) {
+        super("DocumentLoader");
+        setPriority(Thread.MIN_PRIORITY);
+        this.dp = dp;
+        this.kit = kit;
+        this.doc = doc;
+        this.url = url;
+        this.progressBar = progressBar;
+    }
+
+    /**
+     * read the document and let the <code>DocumentPane</code> know on the
+     * event dispatch thread
+     */
+    public void run() {
+        try {
+            load();
+        }
+        catch (final Exception e) {
+            exception = e;
+        }
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                dp.documentLoaded(DocumentLoader.this);
+            }
+        });
+    }
+
+    /**
+     * read the document on the current thread
+     */
+    void load() throws Exception {
+        doc.setLoading(true);
+        try {
+            final URLConnection connection = url.openConnection();
+            final int length = connection.getContentLength();
+            if (progressBar != null) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        if (length > 0) {
+                            progressBar.setMaximum(length);
+                        }
+                        else {
+                            progressBar.setIndeterminate(true);
+                        }
+                    }
+                });
+            }
+            try (final InputStream in = new ProgressInputStream(connection.getInputStream(), length)) {
+                kit.read(Util.createHtmlReader(in), doc, 0);
+            }
+        }
+        finally {
+            doc.setLoading(false);
+        }
+    }
+
+    /**
+     * stop reading, the document keeps the content read so far
+     */
+    void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * indicates whether or not loading was cancelled
+     */
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * get the exception loading failed with, if any
+     */
+    Exception getException() {
+        return cancelled ? null : exception;
+    }
+
+    SHTMLDocument getDocument() {
+        return doc;
+    }
+
+    URL getUrl() {
+        return url;
+    }
+
+    /**
+     * An input stream counting the bytes read and failing once
+     * loading is cancelled, which lets the parser stop.
+     */
+    private class ProgressInputStream extends FilterInputStream {
+        ProgressInputStream(final InputStream in, final int length) {
+            super(in);
+            step = Math.max(length / 100, 1);
+        }
+
+        public int read() throws IOException {
+            checkCancelled();
+            final int c = super.read();
+            if (c >= 0) {
+                count(1);
+            }
+            return c;
+        }
+
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            checkCancelled();
+            final int n = super.read(b, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        private void checkCancelled() throws InterruptedIOException {
+            if (cancelled) {
+                throw new InterruptedIOException("loading cancelled");
+            }
+        }
+
+        /**
+         * show the progress whenever another percent of the file has been read
+         */
+        private void count(final int n) {
+            bytesRead += n;
+            if (progressBar != null && bytesRead - bytesShown >= step) {
+                bytesShown = bytesRead;
+                final int value = bytesRead;
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        progressBar.setValue(value);
+                    }
+                });
+            }
+        }
+
+        /** number of bytes making up one percent of the file */
+        private final int step;
+        /** number of bytes read so far */
+        private int bytesRead = 0;
+        /** number of bytes shown in the progress bar */
+        private int bytesShown = 0;
+    }
+
+    /** the pane to notify when loading is done */
+    private final DocumentPane dp;
+    /** the kit to read with */
+    private final SHTMLEditorKit kit;
+    /** the document to read into */
+    private final SHTMLDocument doc;
+    /** the location to read from */
+    private final URL url;
+    /** the progress bar to show the number of bytes read in, may be null */
+    private final JProgressBar progressBar;
+    /** the exception reading failed with */
+    private Exception exception;
+    /** indicates that loading shall stop */
+    private volatile boolean cancelled = false;
+}
@@ -23,15 +23,21 @@ import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
 import javax.swing.text.Document;
 import javax.swing.text.html.HTMLDocument;
 import javax.swing.text.html.StyleSheet;
 import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.io.*;
+import java.lang.reflect.InvocationTargetException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Enumeration;
 import java.util.EventObject;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.Vector;
 
 /**
@@ -73,11 +79,13 @@ public class DocumentPane extends JPanel implements DocumentListener, ChangeList
     /** the editor displaying the document in HTML code view */
     private final SyntaxPane sourceEditorPane;
     /** the save thread, if a save operation is in progress */
-    public Thread saveThread = null;
+    public volatile Thread saveThread = null;
     /** indicator if a save operation was succesful */
-    public boolean saveSuccessful = false;
+    public volatile boolean saveSuccessful = false;
+    /** indicates that a snapshot was taken which is not saved so far */
+    private volatile boolean savePending = false;
     /** indicates if the document text has changed */
-    private boolean documentChanged = false;
+    private volatile boolean documentChanged = false;
     /** in Simple Mode we do not need to save the document to a temporary file */
     private boolean isComponent = false;
 
@@ -124,6 +132,14 @@ public class DocumentPane extends JPanel implements DocumentListener, ChangeList
     private boolean loadedFromFile = false;
     /** default document name */
     private String DEFAULT_DOC_NAME = "Untitled";
+    /** the style sheet file the styles of the document were saved to last */
+    private File savedStyleSheet;
+    /** the modification count of the styles when they were saved last */
+    private long savedStyleSheetModificationCount;
+    /** the time the style sheet file was written last, to notice writes by others */
+    private long savedStyleSheetTime;
+    /** held while a style sheet is saved */
+    private static final Object STYLE_SHEET_LOCK = new Object();
     /** default name for style sheet, when saved */
     public static String DEFAULT_STYLE_SHEET_NAME = "style.css";
     /** number for title of a new document */
@@ -190,9 +206,28 @@ public class DocumentPane extends JPanel implements DocumentListener, ChangeList
      * existing document shall be loaded, this number is ignored
      */
     public DocumentPane(final URL docToLoad, final int newDocNo, boolean isComponent/*, int renderMode*/) {
+        this(docToLoad, newDocNo, isComponent, false);
+    }
+
+    /**
+     * construct a new DocumentPane with either a new Document or an exisiting
+     * Document that is to be loaded into the DocumentPane upon construction.
+     *
+     * @param docToLoad the document to be loaded. If this is null, a new
+     *      Document is created upon construction of the DocumentPane
+     * @param newDocNo  the number a new document shall have in the
+     * title as long as it is not saved (such as in 'Untitled1'). If an
+     * existing document shall be loaded, this number is ignored
+     * @param loadInBackground  true, if the document shall be loaded on a
+     * separate thread while it is shown already
+     */
+    public DocumentPane(final URL docToLoad, final int newDocNo, boolean isComponent, final boolean loadInBackground) {
         this(isComponent/*renderMode*/);
         DEFAULT_DOC_NAME = Util.getResourceString("defaultDocName");
-        if (docToLoad != null) {
+        if (docToLoad != null && loadInBackground) {
+            loadDocumentInBackground(docToLoad);
+        }
+        else if (docToLoad != null) {
             loadDocument(docToLoad);
         }
         else {
@@ -296,7 +331,7 @@ public class DocumentPane extends JPanel implements DocumentListener, ChangeList
             doc.putProperty("IgnoreCharsetDirective", new Boolean(true));
             doc.setBase(url); // set the doc base
             try (final InputStream in = url.openStream()){
-                kit.read(in, doc, 0); // ..and read the document contents from it
+                kit.read(Util.createHtmlReader(in), doc, 0); // ..and read the document contents from it
             }
             doc.addDocumentListener(this); // listen to changes
             editorPane.setDocument(doc); // let the document be edited in our editor
@@ -309,6 +344,128 @@ public class DocumentPane extends JPanel implements DocumentListener, ChangeList
         }
     }
 
+    /**
+     * show a document recovered after a crash. The document is regarded as
+     * changed, so that it is saved when closed.
+     *
+     * @param doc  the recovered document
+     * @param source  the URL the document was loaded from or null for a
+     * document not saved so far
+     */
+    public void setRecoveredDocument(final SHTMLDocument doc, final URL source) {
+        if (source != null) {
+            deleteTempDir();
+            setDocument(doc);
+            updateFileName();
+            loadedFromFile = true;
+        }
+        else {
+            doc.setBase(getDocumentUrl());
+            setDocument(doc);
+        }
+        setDocumentChanged(true);
+    }
+
+    /**
+     * load a document found at a certain URL on a separate thread.
+     *
+     * <p>The document is shown while it is being read. Below the editor a
+     * progress bar shows how much of the file has been read and a button
+     * allows to cancel loading. Until loading is done, the document can
+     * not be edited. A document which was not loaded completely remains
+     * read only.</p>
+     *
+     * @param url the URL to look for the document
+     */
+    public void loadDocumentInBackground(final URL url) {
+        try {
+            final SHTMLEditorKit kit = (SHTMLEditorKit) editorPane.getEditorKit();
+            final SHTMLDocument doc = (SHTMLDocument) kit.createEmptyDocument();
+            doc.putProperty("IgnoreCharsetDirective", Boolean.TRUE);
+            doc.setBase(url); // set the doc base
+            editorPane.setDocument(doc); // show the document while it is read
+            editableBeforeLoading = editorPane.isEditable();
+            editorPane.setEditable(false);
+            updateFileName(); // remember where the document came from
+            loadedFromFile = true;
+            partiallyLoaded = false;
+            final JProgressBar progressBar = new JProgressBar();
+            progressBar.setStringPainted(true);
+            final JButton cancelButton = new JButton(Util.getResourceString("cancelBtnName"));
+            cancelButton.addActionListener(new ActionListener() {
+                public void actionPerformed(final ActionEvent e) {
+                    cancelLoading();
+                }
+            });
+            loadProgressPanel = new JPanel(new BorderLayout());
+            loadProgressPanel.add(progressBar, BorderLayout.CENTER);
+            loadProgressPanel.add(cancelButton, BorderLayout.EAST);
+            add(loadProgressPanel, BorderLayout.SOUTH);
+            loader = new DocumentLoader(this, kit, doc, url, progressBar);
+            loader.start();
+        }
+        catch (final Exception ex) {
+            Util.errMsg(this, "An exception occurred while loading the file", ex);
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * stop loading the document, the part read so far remains shown
+     */
+    public void cancelLoading() {
+        if (loader != null) {
+            loader.cancel();
+        }
+    }
+
+    /**
+     * indicates whether or not the document still is being loaded
+     *
+     * @return true, if a load process is going on, else false
+     */
+    public boolean loadInProgress() {
+        return loader != null;
+    }
+
+    /**
+     * indicates whether or not loading the document was cancelled or
+     * failed, so that only a part of it is shown
+     *
+     * @return true, if the document was not loaded completely, else false
+     */
+    public boolean isPartiallyLoaded() {
+        return partiallyLoaded;
+    }
+
+    /**
+     * called by the <code>DocumentLoader</code> on the event dispatch thread
+     * when loading has ended
+     */
+    void documentLoaded(final DocumentLoader finishedLoader) {
+        if (finishedLoader != loader) {
+            return;
+        }
+        loader = null;
+        remove(loadProgressPanel);
+        loadProgressPanel = null;
+        revalidate();
+        repaint();
+        final Exception ex = finishedLoader.getException();
+        partiallyLoaded = ex != null || finishedLoader.isCancelled();
+        if (ex != null) {
+            Util.errMsg(this, "An exception occurred while loading the file", ex);
+        }
+        else if (!partiallyLoaded) {
+            finishedLoader.getDocument().addDocumentListener(this); // listen to changes
+            editorPane.setEditable(editableBeforeLoading);
+        }
+        final SHTMLPanelImpl panel = SHTMLPanelImpl.getOwnerSHTMLPanel(this);
+        if (panel != null) {
+            panel.updateActions(StateDependentAction.DOCUMENT | StateDependentAction.SAVE);
+        }
+    }
+
     /**
      * load the rules from a given style sheet file into a new <code>StyleSheet</code> object.
      *
@@ -344,31 +501,19 @@ public class DocumentPane extends JPanel implements DocumentListener, ChangeList
             try {
                     /* write the HTML document */
                     if (getSelectedTab() == VIEW_TAB_HTML) {
-                        editorPane.setText(sourceEditorPane.getText());
+                        updateLayoutFromSource();
                     }
                     final SHTMLDocument doc = (SHTMLDocument) getDocument();
-                    try (final OutputStream os = new FileOutputStream(targetUrl.getPath());
-                    final OutputStreamWriter osw = new OutputStreamWriter(os)) {
-                    final SHTMLWriter hw = new SHTMLWriter(osw, doc);
+                    try (final AtomicFileWriter w = new AtomicFileWriter(new File(targetUrl.getPath()))) {
+                        final SHTMLWriter hw = new SHTMLWriter(w, doc);
                         hw.write();
+                        w.commit();
                     }
-                    /* write the style sheet */
-                    if (doc.hasStyleRef()) {
-                        saveStyleSheet(targetUrl);
-                    }
-                    /*
-                      copy image directory,
-                      if new document or saved from different location
-                    */
-                    saveImages(targetUrl);
+                    saveResources(targetUrl);
                     /* clean up */
                     //System.out.println("DocumentPane textChanged = false");
                     setDocumentChanged(false); // indicate no changes pending anymore after the save
-                    ((HTMLDocument) getDocument()).setBase(targetUrl); // set the doc base
-                    updateFileName();
-                    deleteTempDir();
-                    //System.out.println("DocumentPane saveSuccessful = true");
-                    saveSuccessful = true; // signal that saving was successful
+                    saved(targetUrl);
             }
              catch (final Exception e) {
                 Util.errMsg(this, "An exception occurred while saving the file", e);
@@ -376,8 +521,126 @@ public class DocumentPane extends JPanel implements DocumentListener, ChangeList
             saveThread = null;
         }
     }
-    
-    
+
+    /**
+     * get the document in its current state for saving it with
+     * <code>saveSnapshot</code>. The document is regarded as saved from now
+     * on, until it changes again or saving the snapshot fails.
+     *
+     * <p>Besides the HTML, the snapshot holds the style sheet of the
+     * document as CSS, merged with the one it is saved to where applicable,
+     * as the styles may only be read and changed here.</p>
+     *
+     * <p>This method has to be called on the event dispatch thread.</p>
+     *
+     * @return the snapshot of the document
+     */
+    Snapshot takeSnapshot() throws IOException, BadLocationException {
+        if (getSelectedTab() == VIEW_TAB_HTML) {
+            updateLayoutFromSource();
+        }
+        final SHTMLDocument doc = getDocument();
+        final StringWriter html = new StringWriter();
+        final Exception[] error = new Exception[1];
+        doc.render(new Runnable() {
+            public void run() {
+                try {
+                    new SHTMLWriter(html, doc).write();
+                }
+                catch (final Exception e) {
+                    error[0] = e;
+                }
+            }
+        });
+        if (error[0] instanceof IOException) {
+            throw (IOException) error[0];
+        }
+        if (error[0] != null) {
+            throw (BadLocationException) error[0];
+        }
+        final Snapshot snapshot = new Snapshot(html.toString(), getSource());
+        if (doc.hasStyleRef()) {
+            prepareStyleSheet(snapshot);
+        }
+        setDocumentChanged(false);
+        saveSuccessful = false;
+        savePending = true;
+        return snapshot;
+    }
+
+    /**
+     * save a snapshot of the document taken with <code>takeSnapshot</code>
+     * together with its style sheet and images. Other than
+     * <code>saveDocument</code>, this method may be called on any thread
+     * while the document is edited.
+     *
+     * <p>The document is regarded as being saved from the time the
+     * snapshot was taken until this method returns, so that it is not
+     * closed meanwhile.</p>
+     *
+     * @param snapshot  the snapshot of the document
+     */
+    void saveSnapshot(final Snapshot snapshot) throws IOException {
+        saveThread = Thread.currentThread();
+        final URL targetUrl = snapshot.targetUrl;
+        try {
+            try (final AtomicFileWriter w = new AtomicFileWriter(new File(targetUrl.getPath()))) {
+                w.write(snapshot.html);
+                w.commit();
+            }
+            writeStyleSheet(snapshot);
+            saveImages(targetUrl);
+            // the document and its listeners are changed on the event dispatch thread only
+            EventQueue.invokeAndWait(new Runnable() {
+                public void run() {
+                    saved(targetUrl);
+                }
+            });
+        }
+        catch (final IOException | RuntimeException e) {
+            setDocumentChanged(true); // the snapshot still needs saving
+            throw e;
+        }
+        catch (final InvocationTargetException e) {
+            setDocumentChanged(true);
+            throw new IOException(e.getCause());
+        }
+        catch (final InterruptedException e) {
+            setDocumentChanged(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        finally {
+            saveThread = null;
+            savePending = false;
+        }
+    }
+
+    /**
+     * save the style sheet and images of the document
+     */
+    private void saveResources(final URL targetUrl) throws IOException {
+        /* write the style sheet */
+        if (getDocument().hasStyleRef()) {
+            saveStyleSheet(targetUrl);
+        }
+        /*
+          copy image directory,
+          if new document or saved from different location
+        */
+        saveImages(targetUrl);
+    }
+
+    /**
+     * remember the location a document was saved to
+     */
+    private void saved(final URL targetUrl) {
+        ((HTMLDocument) getDocument()).setBase(targetUrl); // set the doc base
+        updateFileName();
+        deleteTempDir();
+        //System.out.println("DocumentPane saveSuccessful = true");
+        saveSuccessful = true; // signal that saving was successful
+    }
 
     private File getImageDir() {
         return getDocument().getImageDirectory();
@@ -391,19 +654,27 @@ public class DocumentPane extends JPanel implements DocumentListener, ChangeList
         final File destDir = SHTMLDocument.getImageDirectory(targetUrl);
         try {
             if (srcDir.exists()) {
-                final ExampleFileFilter filter = new ExampleFileFilter();
-                filter.addExtension("gif");
-                filter.addExtension("jpg");
-                filter.addExtension("jpeg");
-                final File[] imgFiles = srcDir.listFiles();
-                for (int i = 0; i < imgFiles.length; i++) {
-                    Util.copyFile(imgFiles[i],
-                        new File(destDir.getAbsolutePath() + File.separator + imgFiles[i].getName()));
-                }
+                new ImageDirectorySync(srcDir, destDir).sync(getDocument().getImageFileNames(srcDir));
             }
         }
         catch (final Exception e) {
-            Util.errMsg(this, e.getMessage(), e);
+            showError(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * show an error message on the event dispatch thread
+     */
+    private void showError(final String msg, final Exception e) {
+        if (EventQueue.isDispatchThread()) {
+            Util.errMsg(this, msg, e);
+        }
+        else {
+            EventQueue.invokeLater(new Runnable() {
+                public void run() {
+                    Util.errMsg(DocumentPane.this, msg, e);
+                }
+            });
         }
     }
 
@@ -414,7 +685,7 @@ public class DocumentPane extends JPanel implements DocumentListener, ChangeList
      */
     public boolean saveInProgress() {
         //System.out.println("DocumentPane.saveInProgress=" + (saveThread != null) + " for document " + getDocumentName());
-        return saveThread != null;
+        return saveThread != null || savePending;
     }
 
     /**
@@ -425,50 +696,99 @@ public class DocumentPane extends JPanel implements DocumentListener, ChangeList
      * styles in the already existing style sheet.</p>
      */
     public void saveStyleSheet(URL targetUrl) throws IOException {
-        final SHTMLDocument doc = (SHTMLDocument) getDocument();
-        final StyleSheet styles = doc.getStyleSheet();
+        final Snapshot snapshot = new Snapshot(null, targetUrl);
+        prepareStyleSheet(snapshot);
+        writeStyleSheet(snapshot);
+    }
+
+    /**
+     * get the style sheet of this document as CSS into a snapshot, merged
+     * with the existing one at the location it is saved to where applicable.
+     * The CSS is left out when the style sheet file is up to date.
+     *
+     * <p>This method changes the styles of the document and has to be
+     * called on the event dispatch thread.</p>
+     */
+    private void prepareStyleSheet(final Snapshot snapshot) throws IOException {
+        final StyleSheet styles = getDocument().getStyleSheet();
         final URL styleSheetName = getStyleSheetName();
         if (styleSheetName != null) {
             final File styleSheetFile = new File(styleSheetName.getFile());
-            if (!styleSheetFile.exists()) {
-                // no styles present at save location, create new style sheet
-                styleSheetFile.createNewFile();
-            }
-            else {
-                if (loadedFromFile) {
-                    if ((!getDocumentUrl().getPath().equals(targetUrl.getPath()))) {
+            // documents in the same directory may share their style sheet
+            synchronized (STYLE_SHEET_LOCK) {
+                if (isStyleSheetSaved(styles, styleSheetFile)) {
+                    return; // nothing changed since the last save
+                }
+                if (styleSheetFile.exists()) {
+                    if (loadedFromFile) {
+                        if ((!getDocumentUrl().getPath().equals(snapshot.targetUrl.getPath()))) {
+                            /*
+                                this style sheet was loaded from somewhere else and now is
+                                being saved at a new location where a style sheet exists
+                                havig the same name --> merge
+                            */
+                            mergeStyleSheets(loadStyleSheet(styleSheetFile), styles);
+                        }
                         /*
-                            this style sheet was loaded from somewhere else and now is
-                            being saved at a new location where a style sheet exists
-                            havig the same name --> merge
+                            else same location where styles originally came
+                            from, overwrite existing styles with new version
                         */
-                        mergeStyleSheets(loadStyleSheet(styleSheetFile), styles);
                     }
                     else {
                         /*
-                            same location where styles originally came
-                            from, overwrite existing styles with new version
+                            this style sheet was newly created and now is
+                            being saved at a location where a style sheet exists
+                            havig the same name --> merge
                         */
-                        styleSheetFile.delete();
-                        styleSheetFile.createNewFile();
+                        mergeStyleSheets(loadStyleSheet(styleSheetFile), styles);
                     }
                 }
-                else {
-                    /*
-                        this style sheet was newly created and now is
-                        being saved at a location where a style sheet exists
-                        havig the same name --> merge
-                    */
-                    mergeStyleSheets(loadStyleSheet(styleSheetFile), styles);
-                }
             }
-            try (final OutputStreamWriter osw = new OutputStreamWriter(new FileOutputStream(styleSheetFile))) {
-                CSSWriter cssWriter = new CSSWriter(osw, styles);
-                cssWriter.write();
+            final StringWriter css = new StringWriter();
+            new CSSWriter(css, styles).write();
+            snapshot.styleSheetFile = styleSheetFile;
+            snapshot.styleModificationCount = getModificationCount(styles);
+            snapshot.css = css.toString();
+        }
+    }
+
+    /**
+     * write the CSS of a snapshot to its style sheet file, if any.
+     * This method may be called on any thread.
+     */
+    private void writeStyleSheet(final Snapshot snapshot) throws IOException {
+        if (snapshot.css != null) {
+            synchronized (STYLE_SHEET_LOCK) {
+                try (final AtomicFileWriter w = new AtomicFileWriter(snapshot.styleSheetFile)) {
+                    w.write(snapshot.css);
+                    w.commit();
+                }
+                savedStyleSheet = snapshot.styleSheetFile;
+                savedStyleSheetModificationCount = snapshot.styleModificationCount;
+                savedStyleSheetTime = snapshot.styleSheetFile.lastModified();
             }
         }
     }
 
+    /**
+     * indicates whether or not a style sheet file still holds the styles
+     * last saved to it by this <code>DocumentPane</code>, i.e. neither the
+     * styles nor the file changed since
+     */
+    private boolean isStyleSheetSaved(final StyleSheet styles, final File styleSheetFile) {
+        final long modificationCount = getModificationCount(styles);
+        return modificationCount >= 0 && styleSheetFile.equals(savedStyleSheet)
+                && modificationCount == savedStyleSheetModificationCount
+                && styleSheetFile.lastModified() == savedStyleSheetTime;
+    }
+
+    /**
+     * get the number of changes made to a style sheet, -1 if not known
+     */
+    private static long getModificationCount(final StyleSheet styles) {
+        return styles instanceof ScaledStyleSheet ? ((ScaledStyleSheet) styles).getModificationCount() : -1;
+    }
+
     /**
      * Merges two style sheets by adding all the rules found
      * in the source style sheet that are not contained
@@ -483,14 +803,17 @@ public class DocumentPane extends JPanel implements DocumentListener, ChangeList
         String name;
         Object elem;
         final Vector srcNames = Util.getStyleNames(sourceStyleSheet);
-        final Vector destNames = Util.getStyleNames(destinationStyleSheet);
+        final Set<Object> destNames = new HashSet<Object>();
+        for (final Object destName : Util.getStyleNames(destinationStyleSheet)) {
+            destNames.add(destName);
+        }
         final StringWriter sw = new StringWriter();
         final StringBuffer buf = sw.getBuffer();
         final CSSWriter cssWriter = new CSSWriter(sw, null);
         for (int i = 0; i < srcNames.size(); i++) {
             elem = srcNames.get(i);
             name = elem.toString();
-            if (destNames.indexOf(elem) < 0) {
+            if (!destNames.contains(elem)) {
                 buf.delete(0, buf.length());
                 cssWriter.writeRule(name, sourceStyleSheet.getStyle(name));
                 destinationStyleSheet.removeStyle(name);
@@ -623,18 +946,25 @@ public class DocumentPane extends JPanel implements DocumentListener, ChangeList
         try {
             editorPane.getDocument().removeDocumentListener(this);
             final StringWriter stringWriter = new StringWriter();
-            if (isHtmlChanged()) {
-                editorPane.getEditorKit().write(stringWriter, editorPane.getDocument(), 0,
-                    editorPane.getDocument().getLength());
-                String newText = stringWriter.toString();
+            // without a source map, the text was read as a whole, write it again
+            // so that the next change in the HTML view is applied in place
+            if (isHtmlChanged() || sourceMap == null) {
+                final SHTMLDocument doc = editorPane.getDocument();
+                final HTMLSourceMap map = new HTMLSourceMap(doc);
+                final SHTMLWriter writer = new SHTMLWriter(stringWriter, doc);
+                writer.setSourceMap(map);
+                writer.write();
+                final String writtenText = stringWriter.toString();
+                String newText = writtenText;
                 if (!Util.preferenceIsTrue("writeHead", "true")) {
-                    newText = newText.replaceAll("(?ims)<head>.*?(<body)", "$1");
+                    newText = newText.replaceFirst("(?ims)<head>.*?(<body)", "$1");
                 }
                 sourceEditorPane.setText(newText);
+                map.setSource(sourceEditorPane.getText(), writtenText);
+                sourceMap = map;
                 setHtmlChanged(false);
             }
             sourceEditorPane.getDocument().addDocumentListener(this);
-            sourceEditorPane.addCaretListener(sourceEditorPane);
             setHtmlChanged(false);
         }
         catch (final Exception ex) {
@@ -647,9 +977,8 @@ public class DocumentPane extends JPanel implements DocumentListener, ChangeList
      */
     private void setLayoutView() {
         sourceEditorPane.getDocument().removeDocumentListener(this);
-        sourceEditorPane.removeCaretListener(sourceEditorPane);
         if (isHtmlChanged()) {
-            editorPane.setText(sourceEditorPane.getText());
+            updateLayoutFromSource();
             setHtmlChanged(false);
         }
         editorPane.setCaretPosition(0);
@@ -657,13 +986,35 @@ public class DocumentPane extends JPanel implements DocumentListener, ChangeList
         editorPane.requestFocus();
     }
 
+    /**
+     * Brings the document up to date with the text of the HTML view.
+     *
+     * <p>The text is compared with the HTML written when switching to the
+     * HTML view and only the elements the changed part was written from are
+     * replaced, so undo history and the rest of the layout are kept. If the
+     * change can not be mapped to elements, the whole text is read.</p>
+     */
+    private void updateLayoutFromSource() {
+        final String text = sourceEditorPane.getText();
+        try {
+            if (sourceMap != null && sourceMap.getDocument() == editorPane.getDocument() && sourceMap.apply(text)) {
+                return;
+            }
+        }
+        catch (final Exception e) {
+            // the whole text is read below
+        }
+        sourceMap = null;
+        editorPane.setText(text);
+    }
+
     /**
      * Convenience method for obtaining the document text
      * @return returns the document text as string.
      */
     String getDocumentText() {
         if (getSelectedTab() == VIEW_TAB_HTML) {
-            editorPane.setText(sourceEditorPane.getText());
+            updateLayoutFromSource();
         }
         return editorPane.getText();
     }
@@ -675,6 +1026,7 @@ public class DocumentPane extends JPanel implements DocumentListener, ChangeList
         switch (getSelectedTab()) {
             case VIEW_TAB_LAYOUT:
                 editorPane.setText(sText);
+                sourceMap = null;
                 break;
             case VIEW_TAB_HTML:
                 sourceEditorPane.setText(sText);
@@ -701,7 +1053,7 @@ public class DocumentPane extends JPanel implements DocumentListener, ChangeList
                     break;
             }
         }
-        SHTMLPanelImpl.getOwnerSHTMLPanel(this).updateActions();
+        SHTMLPanelImpl.getOwnerSHTMLPanel(this).updateActions(StateDependentAction.DOCUMENT);
     }
 
     /* ----------------- changeListener implementation end ------------------------ */
@@ -755,6 +1107,16 @@ public class DocumentPane extends JPanel implements DocumentListener, ChangeList
         }
     }
 
+    /** the positions of the elements in the text of the HTML view */
+    private HTMLSourceMap sourceMap;
+    /** the loader of a document being loaded in the background */
+    private DocumentLoader loader;
+    /** indicates that loading the document was cancelled or failed */
+    private boolean partiallyLoaded;
+    /** progress bar and cancel button shown while loading in the background */
+    private JPanel loadProgressPanel;
+    /** the editable state of the editor to restore after loading */
+    private boolean editableBeforeLoading;
     /** listeners for DocumentPaneEvents */
     private final Vector dpListeners = new Vector();
     private File docTempDir;
@@ -827,4 +1189,33 @@ public class DocumentPane extends JPanel implements DocumentListener, ChangeList
         }
     }
     /* -------- DocumentPaneListener definition end --------------- */
+
+    /**
+     * A document and its style sheet in the state they were in when saving
+     * them began, ready to be written on any thread.
+     */
+    static class Snapshot {
+
+        /**
+         * construct a <code>Snapshot</code>
+         *
+         * @param html  the HTML of the document
+         * @param targetUrl  the location to save the document to
+         */
+        Snapshot(final String html, final URL targetUrl) {
+            this.html = html;
+            this.targetUrl = targetUrl;
+        }
+
+        /** the HTML of the document */
+        final String html;
+        /** the location to save the document to */
+        final URL targetUrl;
+        /** the style sheet as CSS, null if it needs no saving */
+        String css;
+        /** the file to save the style sheet to */
+        File styleSheetFile;
+        /** the modification count of the styles the CSS was written from */
+        long styleModificationCount;
+    }
 }
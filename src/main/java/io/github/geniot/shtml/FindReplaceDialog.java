@@ -32,6 +32,8 @@ import java.awt.event.ActionEvent;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.LinkedList;
 import java.util.List;
@@ -45,13 +47,20 @@ import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
 import javax.swing.JDialog;
 import javax.swing.JEditorPane;
+import javax.swing.DefaultListModel;
 import javax.swing.JLabel;
+import javax.swing.JList;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JRadioButton;
+import javax.swing.JScrollPane;
 import javax.swing.JTextField;
+import javax.swing.ListSelectionModel;
 import javax.swing.MutableComboBoxModel;
 import javax.swing.border.TitledBorder;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
+import javax.swing.text.BadLocationException;
 import javax.swing.text.Document;
 
 import io.github.geniot.shtml.PseudoDamerauLevenshtein.Alignment;
@@ -76,6 +85,11 @@ import io.github.geniot.shtml.PseudoDamerauLevenshtein.Alignment;
  * <p>Initially FindReplaceDialog notifies the listener that the first document
  * in the group shall be loaded into the editor.</p>
  *
+ * <p>If the listener also implements <code>ProjectSearch.DocumentGroup</code>,
+ * the dialog offers to find or replace all occurrences in all documents of
+ * the group at once. The documents are searched in parallel and the hits
+ * are listed in the dialog as they are found.</p>
+ *
  * <p>After loading the first document and resuming the find or replace
  * operation, the listener gets informed that the end of a document has been
  * reached. A handling method for that event should cause the editor to
@@ -199,8 +213,8 @@ public class FindReplaceDialog extends JDialog {
      */
     public FindReplaceDialog(final Frame owner, final JEditorPane editor, final FindReplaceListener listener) {
         setEditor(editor);
-        setMode(MODE_PROJECT);
         addFindReplaceListener(listener);
+        setMode(MODE_PROJECT);
         try {
             jbInit();
             initDialogContents();
@@ -361,10 +375,45 @@ public class FindReplaceDialog extends JDialog {
      * normal.
      */
     private void jbtnCancel_actionPerformed(final ActionEvent e) {
+        if (projectSearch != null) {
+            projectSearch.cancel();
+        }
         toggleState(STATE_UNLOCKED);
         jbtnReplace.setEnabled(true);
     }
 
+    /**
+     * find all occurrences in all documents, when button 'find all' is pressed
+     */
+    private void jbtnFindAll_actionPerformed(final ActionEvent e) {
+        startProjectSearch(false);
+    }
+
+    /**
+     * replace all occurrences in all documents, when button 'replace all' is pressed
+     */
+    private void jbtnReplaceAll_actionPerformed(final ActionEvent e) {
+        startProjectSearch(true);
+    }
+
+    /**
+     * select a hit in its document, when it is selected in the list of hits
+     */
+    private void hitList_valueChanged(final ListSelectionEvent e) {
+        final ProjectSearch.Hit hit = hitList.getSelectedValue();
+        final ProjectSearch.DocumentGroup group = getDocumentGroup();
+        if (e.getValueIsAdjusting() || hit == null || group == null || findInProgress) {
+            return;
+        }
+        final JEditorPane hitEditor = group.showDocument(hit.getDocument());
+        if (hitEditor != null) {
+            setEditor(hitEditor);
+            hitEditor.setCaretPosition(hit.getStart());
+            hitEditor.moveCaretPosition(hit.getEnd());
+            hitEditor.getCaret().setSelectionVisible(true);
+        }
+    }
+
     /**
      * When Close is pressed, store the pressed button in the result
      * of this dialog and dispose the dialog.
@@ -409,6 +458,38 @@ public class FindReplaceDialog extends JDialog {
         else {
             jcbProject.setVisible(false);
         }
+        showGroupSearch();
+    }
+
+    /**
+     * show the components for searching all documents of a group at once,
+     * if there is a group of documents
+     */
+    private void showGroupSearch() {
+        final boolean groupSearch = getDocumentGroup() != null;
+        jbtnFindAll.setVisible(groupSearch);
+        jbtnReplaceAll.setVisible(groupSearch);
+        jspHits.setVisible(groupSearch);
+    }
+
+    /**
+     * get the listener providing the group of documents to search in
+     *
+     * @return the listener or null, if the dialog is not in mode MODE_PROJECT
+     *      or no listener provides a group of documents
+     */
+    private ProjectSearch.DocumentGroup getDocumentGroup() {
+        if (mode != MODE_PROJECT) {
+            return null;
+        }
+        final Enumeration<?> listenerList = listeners.elements();
+        while (listenerList.hasMoreElements()) {
+            final Object listener = listenerList.nextElement();
+            if (listener instanceof ProjectSearch.DocumentGroup) {
+                return (ProjectSearch.DocumentGroup) listener;
+            }
+        }
+        return null;
     }
     
 	public void setSearchingBusyCursor()
@@ -435,12 +516,7 @@ public class FindReplaceDialog extends JDialog {
     private void initFind() {
     	//System.out.format("initFind(findInProgress=%s)\n", findInProgress);
         if (!findInProgress) {
-            try {
-                searchText = doc.getText(0, doc.getLength());
-            }
-            catch (final Exception e) {
-                e.printStackTrace();
-            }
+            searchIndex = SearchIndex.getInstance(doc);
             searchTerm = (String)jcomboSearchTerm.getEditor().getItem();
             //System.out.format("initFind(): searchTerm='%s'\n", searchTerm);
             
@@ -451,10 +527,6 @@ public class FindReplaceDialog extends JDialog {
             replacementText = jtfReplace.getText();
             replaceDiff = replacementText.length() - searchTerm.length();
             offset = 0;
-            if (!jcbMatchCase.isSelected()) {
-                searchTerm = searchTerm.toLowerCase();
-                searchText = searchText.toLowerCase();
-            }
             
             if (jcbMatchApprox.isSelected())
             {
@@ -484,7 +556,7 @@ public class FindReplaceDialog extends JDialog {
 
 	private void initApproximateSearch() {
 	    PseudoDamerauLevenshtein PDL = new PseudoDamerauLevenshtein();
-	    PDL.init(searchTerm, searchText, true, jcbMatchCase.isSelected());
+	    PDL.init(searchTerm, searchIndex.getText(), true, jcbMatchCase.isSelected());
 	    
 	    // get the approximate search threshold parameter (0.65 by default)
 	    // (see http://freeplane.sourceforge.net/wiki/index.php/Approximate_search)
@@ -494,7 +566,16 @@ public class FindReplaceDialog extends JDialog {
 	    try
 	    {
 	    	setSearchingBusyCursor();
-	    	currentApproximateMatches = PDL.computeAlignments(threshold);
+	    	final int maxErrors = PDL.getMaxErrors(threshold);
+	    	if (maxErrors < 0)
+	    	{
+	    		currentApproximateMatches = new ArrayList<Alignment>();
+	    	}
+	    	else
+	    	{
+	    		currentApproximateMatches = PDL.computeAlignments(threshold,
+	    				searchIndex.getApproximateRegions(searchTerm, maxErrors));
+	    	}
 	    }
 	    finally
 	    {
@@ -571,7 +652,7 @@ public class FindReplaceDialog extends JDialog {
         }
         if (start >= 0) { // we found a match!
             lastPosition = start;
-            if (jrbDown.isSelected()) {
+            if (jcbMatchApprox.isSelected() && jrbDown.isSelected()) {
                 start += offset;
             }
             editor.setCaretPosition(start);
@@ -587,7 +668,10 @@ public class FindReplaceDialog extends JDialog {
     private int getMatchLength()
     {
     	if (jcbMatchApprox.isSelected())
-    		return currentApproximateMatches.get(currentApproximateMatchIndex).getMatch().length();
+    	{
+    		final Alignment ali = currentApproximateMatches.get(currentApproximateMatchIndex);
+    		return ali.getMatchEnd() - ali.getMatchStart();
+    	}
     	else
     		return searchTerm.length();
     }
@@ -619,20 +703,21 @@ public class FindReplaceDialog extends JDialog {
     		return -1;
     	
         int start = -1; // -1 means not found.
+        final boolean matchCase = jcbMatchCase.isSelected();
         if (jrbUp.isSelected()) {
             if (lastPosition < doc.getLength()) {
-                start = searchText.lastIndexOf(searchTerm, lastPosition - 1);
+                start = searchIndex.lastIndexOf(searchTerm, lastPosition - 1, matchCase);
             }
             else {
-                start = searchText.lastIndexOf(searchTerm, lastPosition);
+                start = searchIndex.lastIndexOf(searchTerm, lastPosition, matchCase);
             }
         }
         else {
             if (lastPosition >= 0) {
-                start = searchText.indexOf(searchTerm, lastPosition + searchTerm.length());
+                start = searchIndex.indexOf(searchTerm, lastPosition + searchTerm.length(), matchCase);
             }
             else {
-                start = searchText.indexOf(searchTerm, lastPosition);
+                start = searchIndex.indexOf(searchTerm, lastPosition, matchCase);
             }
         }
         return start;
@@ -649,14 +734,72 @@ public class FindReplaceDialog extends JDialog {
      */
     private int findWholeWords(int start) {
         while ((start > 0)
-                && ((!isSeparator(searchText.charAt(start - 1))) || (!isSeparator(searchText.charAt(start
-                        + searchTerm.length()))))) {
+                && ((!isSeparatorAt(start - 1)) || (!isSeparatorAt(start + searchTerm.length())))) {
             lastPosition = start;
             start = findNext();
         }
         return start;
     }
 
+    /**
+     * Find all occurrences of the search phrase in all documents of the
+     * group of documents and list them or replace them.
+     *
+     * @param replace  true, if the occurrences shall be replaced
+     */
+    private void startProjectSearch(final boolean replace) {
+        final ProjectSearch.DocumentGroup group = getDocumentGroup();
+        searchTerm = (String)jcomboSearchTerm.getEditor().getItem();
+        if (group == null || findInProgress || searchTerm.length() == 0) {
+            return;
+        }
+        rememberSearchTerm(searchTerm, jcomboSearchTerm);
+        matchCaseSetting.getAndSet(jcbMatchCase.isSelected());
+        matchApproxSetting.getAndSet(jcbMatchApprox.isSelected());
+        replacementText = jtfReplace.getText();
+        double threshold = -1;
+        if (jcbMatchApprox.isSelected()) {
+            threshold = Double.parseDouble(Util.getPreference("approximate_search_threshold", ""));
+        }
+        hitListModel.clear();
+        toggleState(STATE_LOCKED);
+        jbtnReplace.setEnabled(false);
+        setSearchingBusyCursor();
+        final int[] hitCount = new int[1];
+        projectSearch = new ProjectSearch(searchTerm, jcbMatchCase.isSelected(), jcbWholeWords.isSelected(), threshold);
+        projectSearch.start(group, new ProjectSearch.HitListener() {
+            public void hitsFound(final Vector<ProjectSearch.Hit> hits) {
+                hitCount[0] += hits.size();
+                if (replace) {
+                    ProjectSearch.replaceAll(hits, replacementText);
+                }
+                else {
+                    for (final ProjectSearch.Hit hit : hits) {
+                        hitListModel.addElement(hit);
+                    }
+                }
+            }
+
+            public void searchFinished() {
+                setSearchingDefaultCursor();
+                if (projectSearch == null || !findInProgress) {
+                    // cancelled
+                    projectSearch = null;
+                    return;
+                }
+                projectSearch = null;
+                toggleState(STATE_UNLOCKED);
+                jbtnReplace.setEnabled(true);
+                if (hitCount[0] == 0) {
+                    message(Util.getResourceString(SHTMLPanel.getResources(), "noMoreOccurrencesFound"));
+                }
+                else if (replace) {
+                    message(Util.getResourceString(SHTMLPanel.getResources(), "allOccurrencesReplaced"));
+                }
+            }
+        });
+    }
+
     /* ----------- Find implementation end ------- */
     /* ----------- Replace implementation start ------- */
     /**
@@ -674,12 +817,12 @@ public class FindReplaceDialog extends JDialog {
                     replaceOne();
                     break;
                 case RO_ALL:
-                    replaceOne();
-                    while (doFind()) {
-                        replaceOne();
-                    }
+                    replaceAll();
                     break;
             }
+            if (replaceChoice == RO_ALL) {
+                break;
+            }
         }
         if (mode == MODE_PROJECT && jcbProject.isSelected() && listeners.size() > 0) {
             switch (replaceChoice) {
@@ -716,8 +859,102 @@ public class FindReplaceDialog extends JDialog {
      * Replace the currently selected occurrence of the search phrase
      */
     private void replaceOne() {
+        final int matchLength = getMatchLength();
         editor.replaceSelection(replacementText);
-        offset += replaceDiff;
+        if (jcbMatchApprox.isSelected()) {
+            // approximate matches were found in the text before any replacement
+            offset += replacementText.length() - matchLength;
+        }
+        else {
+            // exact matches are found in the current text, continue after the replacement
+            lastPosition += replaceDiff;
+        }
+    }
+
+    /**
+     * Replace the currently selected occurrence and all further occurrences
+     * of the search phrase, undoable as a single edit.
+     */
+    private void replaceAll() {
+        if (doc instanceof SHTMLDocument) {
+            ((SHTMLDocument) doc).startCompoundEdit();
+        }
+        try {
+            replaceOne();
+            replaceRemaining();
+        }
+        finally {
+            if (doc instanceof SHTMLDocument) {
+                ((SHTMLDocument) doc).endCompoundEdit();
+            }
+        }
+    }
+
+    /**
+     * Replace all further occurrences of the search phrase at once.
+     *
+     * <p>All occurrences are looked up first, without selecting them in the
+     * editor, and then replaced by one call to
+     * <code>SHTMLDocument.replaceAll</code>. Occurrences overlapping the
+     * occurrence found before, e.g. of a search phrase overlapping itself
+     * when searching upwards, are skipped, as they are gone once the other
+     * one is replaced.</p>
+     */
+    private void replaceRemaining() {
+        final Vector<int[]> ranges = new Vector<int[]>();
+        final int replaced = editor.getCaretPosition();
+        int[] previous = new int[] { replaced - replacementText.length(), replaced };
+        int start;
+        while (true) {
+            if (jcbMatchApprox.isSelected()) {
+                start = findNextApproximately();
+            }
+            else {
+                start = findNext();
+                if (jcbWholeWords.isSelected()) {
+                    start = findWholeWords(start);
+                }
+            }
+            if (start < 0) {
+                break;
+            }
+            lastPosition = start;
+            if (jcbMatchApprox.isSelected() && jrbDown.isSelected()) {
+                start += offset;
+            }
+            final int[] range = new int[] { start, start + getMatchLength() };
+            if (jrbUp.isSelected() ? range[1] > previous[0] : range[0] < previous[1]) {
+                continue;
+            }
+            ranges.addElement(range);
+            previous = range;
+        }
+        if (ranges.isEmpty()) {
+            return;
+        }
+        if (jrbUp.isSelected()) {
+            Collections.reverse(ranges);
+        }
+        final int[] starts = new int[ranges.size()];
+        final int[] ends = new int[ranges.size()];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = ranges.elementAt(i)[0];
+            ends[i] = ranges.elementAt(i)[1];
+        }
+        try {
+            if (doc instanceof SHTMLDocument) {
+                ((SHTMLDocument) doc).replaceAll(starts, ends, replacementText);
+            }
+            else {
+                for (int i = starts.length - 1; i >= 0; i--) {
+                    editor.select(starts[i], ends[i]);
+                    editor.replaceSelection(replacementText);
+                }
+            }
+        }
+        catch (final BadLocationException e) {
+            e.printStackTrace();
+        }
     }
 
     /* ----------- Replace implementation end ------- */
@@ -786,14 +1023,25 @@ public class FindReplaceDialog extends JDialog {
         jrbUp.setEnabled(unlocked);
         jrbDown.setEnabled(unlocked);
         jcbProject.setEnabled(unlocked);
+        jbtnFindAll.setEnabled(unlocked);
+        jbtnReplaceAll.setEnabled(unlocked);
         findInProgress = !unlocked;
     }
 
+    /**
+     * method for determining whether or not the character at a given
+     * position of the document is a word separator, positions outside
+     * of the document count as separators.
+     */
+    private boolean isSeparatorAt(final int pos) {
+        return pos < 0 || pos >= searchIndex.length() || isSeparator(searchIndex.charAt(pos));
+    }
+
     /**
      * method for determining whether or not a character is a
      * word separator.
      */
-    private boolean isSeparator(final char ch) {
+    static boolean isSeparator(final char ch) {
         int i = 0;
         while ((i < WORD_SEPARATORS.length) && (ch != WORD_SEPARATORS[i])) {
             i++;
@@ -906,14 +1154,42 @@ public class FindReplaceDialog extends JDialog {
             }
         });
         jcbProject.setText(Util.getResourceString(SHTMLPanel.getResources(), "searchWholeProject"));
+        jbtnFindAll.setText(Util.getResourceString(SHTMLPanel.getResources(), "findAll"));
+        jbtnFindAll.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(final ActionEvent e) {
+                jbtnFindAll_actionPerformed(e);
+            }
+        });
+        jbtnFindAll.addKeyListener(escapeKeyListender);
+        jbtnReplaceAll.setText(Util.getResourceString(SHTMLPanel.getResources(), "replaceAllOccurrences"));
+        jbtnReplaceAll.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(final ActionEvent e) {
+                jbtnReplaceAll_actionPerformed(e);
+            }
+        });
+        jbtnReplaceAll.addKeyListener(escapeKeyListender);
+        hitList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        hitList.setVisibleRowCount(8);
+        hitList.addListSelectionListener(new ListSelectionListener() {
+            public void valueChanged(final ListSelectionEvent e) {
+                hitList_valueChanged(e);
+            }
+        });
+        jspHits.setPreferredSize(new Dimension(400, 160));
+        showGroupSearch();
         this.getContentPane().add(jpnlMain, BorderLayout.NORTH);
+        this.getContentPane().add(jspHits, BorderLayout.CENTER);
         jpnlBtn.add(jbtnFindNext, new GridBagConstraints(0, 0, 1, 1, 0.0, 0.0, GridBagConstraints.NORTH,
             GridBagConstraints.HORIZONTAL, new Insets(4, 4, 0, 4), 0, 0));
-        jpnlBtn.add(jbtnClose, new GridBagConstraints(0, 3, 1, 1, 0.0, 0.0, GridBagConstraints.NORTH,
+        jpnlBtn.add(jbtnFindAll, new GridBagConstraints(0, 1, 1, 1, 0.0, 0.0, GridBagConstraints.NORTH,
+            GridBagConstraints.HORIZONTAL, new Insets(4, 4, 0, 4), 0, 0));
+        jpnlBtn.add(jbtnClose, new GridBagConstraints(0, 5, 1, 1, 0.0, 0.0, GridBagConstraints.NORTH,
             GridBagConstraints.HORIZONTAL, new Insets(0, 4, 4, 4), 0, 0));
-        jpnlBtn.add(jbtnReplace, new GridBagConstraints(0, 1, 1, 1, 0.0, 0.0, GridBagConstraints.NORTH,
+        jpnlBtn.add(jbtnReplace, new GridBagConstraints(0, 2, 1, 1, 0.0, 0.0, GridBagConstraints.NORTH,
             GridBagConstraints.HORIZONTAL, new Insets(4, 4, 4, 4), 0, 0));
-        jpnlBtn.add(jbtnCancel, new GridBagConstraints(0, 2, 1, 1, 0.0, 0.0, GridBagConstraints.NORTH,
+        jpnlBtn.add(jbtnReplaceAll, new GridBagConstraints(0, 3, 1, 1, 0.0, 0.0, GridBagConstraints.NORTH,
+            GridBagConstraints.HORIZONTAL, new Insets(0, 4, 4, 4), 0, 0));
+        jpnlBtn.add(jbtnCancel, new GridBagConstraints(0, 4, 1, 1, 0.0, 0.0, GridBagConstraints.NORTH,
             GridBagConstraints.HORIZONTAL, new Insets(4, 4, 4, 4), 0, 0));
         jpnlMain.add(jpnlFind, new GridBagConstraints(0, 0, 1, 1, 1.0, 1.0, GridBagConstraints.NORTHWEST,
             GridBagConstraints.HORIZONTAL, new Insets(4, 4, 4, 4), 0, 0));
@@ -954,8 +1230,8 @@ public class FindReplaceDialog extends JDialog {
     private JEditorPane editor;
     /** Document to search in */
     private Document doc;
-    /** search text from the document */
-    private String searchText;
+    /** search index of the document */
+    private SearchIndex searchIndex;
     /** search phrase to find */
     private String searchTerm;
     /** new phrase to replace the searched phrase with */
@@ -970,6 +1246,10 @@ public class FindReplaceDialog extends JDialog {
     /** two fields to correct position differences during replace operations */
     private int offset;
     private int replaceDiff;
+    /** search in all documents of a group, while in progress */
+    private ProjectSearch projectSearch;
+    /** hits of the last search in all documents of a group */
+    private final DefaultListModel<ProjectSearch.Hit> hitListModel = new DefaultListModel<ProjectSearch.Hit>();
     /** indicates if a find is already in progress */
     private boolean findInProgress = false;
     /** indicates the current operation */
@@ -1026,6 +1306,10 @@ public class FindReplaceDialog extends JDialog {
     private final JButton jbtnReplace = new JButton();
     private final JButton jbtnCancel = new JButton();
     private final JCheckBox jcbProject = new JCheckBox();
+    private final JButton jbtnFindAll = new JButton();
+    private final JButton jbtnReplaceAll = new JButton();
+    private final JList<ProjectSearch.Hit> hitList = new JList<ProjectSearch.Hit>(hitListModel);
+    private final JScrollPane jspHits = new JScrollPane(hitList);
     /* ---- GUI elements end ---------*/
     
     public static synchronized void rememberSearchTerm(final String searchTerm, final JComboBox searchTermCombo)
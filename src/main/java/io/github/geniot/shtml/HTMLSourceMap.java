@@ -0,0 +1,192 @@
+/*
+ * SimplyHTML, a word processor based on Java, HTML and CSS
+ * Copyright (C) 2003 Ulrich Hilger
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.github.geniot.shtml;
+
+import java.io.IOException;
+import java.util.Vector;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+
+/**
+ * Maps the HTML source of a document shown in the HTML view to the
+ * children of the BODY element the source was written from.
+ *
+ * <p>While a <code>SHTMLWriter</code> writes the source, it records the
+ * position of each child of the body written separately. When the source
+ * has been edited, <code>apply</code> compares it with the source written
+ * and replaces only the children of the body covering the changed part,
+ * instead of reading the whole document again.</p>
+ *
+ * @see SHTMLWriter#setSourceMap
+ * @see DocumentPane
+ */
+class HTMLSourceMap {
+
+    /**
+     * construct a <code>HTMLSourceMap</code>
+     *
+     * @param doc  the document the source is written from
+     */
+    HTMLSourceMap(final SHTMLDocument doc) {
+        this.doc = doc;
+    }
+
+    SHTMLDocument getDocument() {
+        return doc;
+    }
+
+    /**
+     * record the position a child of the body was written at
+     */
+    void addBlock(final Element e, final int offset) {
+        blocks.addElement(e);
+        offsets.addElement(offset);
+    }
+
+    /**
+     * set the source the positions refer to.
+     *
+     * <p>The source shown may differ from the source written at its
+     * beginning, e.g. when the head has been removed. All positions are
+     * moved accordingly. If the shown source differs from the written
+     * source after the first block, the map is cleared.</p>
+     *
+     * @param source  the source as shown
+     * @param written  the source as written
+     */
+    void setSource(final String source, final String written) {
+        this.source = source;
+        if (blocks.isEmpty()) {
+            return;
+        }
+        final int shift = source.length() - written.length();
+        final int first = offsets.elementAt(0);
+        if (first + shift < 0 || !source.regionMatches(first + shift, written, first, written.length() - first)) {
+            blocks.clear();
+            offsets.clear();
+            return;
+        }
+        for (int i = 0; i < offsets.size(); i++) {
+            offsets.setElementAt(offsets.elementAt(i) + shift, i);
+        }
+    }
+
+    /**
+     * apply an edited source to the document by replacing the children of
+     * the body the edited part was written from.
+     *
+     * @param edited  the edited source
+     *
+     * @return true, if the document reflects the edited source, false if the
+     * change could not be mapped and the document still has to be read from
+     * the edited source
+     */
+    boolean apply(final String edited) throws BadLocationException, IOException {
+        if (source == null) {
+            return false;
+        }
+        final int length = Math.min(source.length(), edited.length());
+        int prefix = 0;
+        while (prefix < length && source.charAt(prefix) == edited.charAt(prefix)) {
+            prefix++;
+        }
+        if (prefix == source.length() && prefix == edited.length()) {
+            return true;
+        }
+        int suffix = 0;
+        while (suffix < length - prefix
+                && source.charAt(source.length() - 1 - suffix) == edited.charAt(edited.length() - 1 - suffix)) {
+            suffix++;
+        }
+        final int changeEnd = source.length() - suffix;
+
+        // the blocks enclosing the change
+        int first = -1;
+        int last = -1;
+        for (int i = 0; i < offsets.size(); i++) {
+            final int offset = offsets.elementAt(i);
+            if (offset <= prefix) {
+                first = i;
+            }
+            else if (offset >= changeEnd) {
+                last = i;
+                break;
+            }
+        }
+        if (first < 0 || last < 0) {
+            return false;
+        }
+        final Element firstBlock = blocks.elementAt(first);
+        final Element nextBlock = blocks.elementAt(last);
+        final Element body = firstBlock.getParentElement();
+        if (body == null || nextBlock.getParentElement() != body) {
+            return false;
+        }
+        final int index = body.getElementIndex(firstBlock.getStartOffset());
+        final int nextIndex = body.getElementIndex(nextBlock.getStartOffset());
+        if (body.getElement(index) != firstBlock || body.getElement(nextIndex) != nextBlock) {
+            return false;
+        }
+
+        final int shift = edited.length() - source.length();
+        final String html = edited.substring(offsets.elementAt(first), offsets.elementAt(last) + shift);
+        final String trimmed = html.trim();
+        if (trimmed.length() > 0 && (!trimmed.startsWith("<") || !trimmed.endsWith(">"))) {
+            // text outside of tags might become part of a neighbouring block
+            return false;
+        }
+        final int count = body.getElementCount();
+        if (trimmed.length() == 0) {
+            doc.removeElements(body, index, nextIndex - index);
+        }
+        else {
+            doc.replaceHTML(firstBlock, nextIndex - index, html);
+        }
+        if (nextBlock.getParentElement() != body) {
+            return false;
+        }
+
+        // the blocks replaced now are the blocks read from the edited part
+        final int added = body.getElementCount() - count + nextIndex - index;
+        final int start = offsets.elementAt(first);
+        for (int i = first; i < last; i++) {
+            blocks.removeElementAt(first);
+            offsets.removeElementAt(first);
+        }
+        if (added > 0) {
+            blocks.insertElementAt(body.getElement(index), first);
+            offsets.insertElementAt(start, first);
+        }
+        for (int i = first + (added > 0 ? 1 : 0); i < offsets.size(); i++) {
+            offsets.setElementAt(offsets.elementAt(i) + shift, i);
+        }
+        source = edited;
+        return true;
+    }
+
+    /** the document the source is written from */
+    private final SHTMLDocument doc;
+    /** the children of the body written separately, in the order written */
+    private final Vector<Element> blocks = new Vector<Element>();
+    /** the positions in the source the blocks start at */
+    private final Vector<Integer> offsets = new Vector<Integer>();
+    /** the source the positions refer to */
+    private String source;
+}
@@ -0,0 +1,122 @@
+/*
+ * SimplyHTML, a word processor based on Java, HTML and CSS
+ * Copyright (C) 2003 Ulrich Hilger
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.github.geniot.shtml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the text of an HTML file saved in UTF-8, or in the platform
+ * encoding by earlier versions.
+ *
+ * <p>The file is decoded as UTF-8 up to the first byte which is not valid
+ * UTF-8, the rest of the file is decoded in the platform encoding. As files
+ * in the platform encoding mostly have plain ASCII text before their first
+ * other character, which reads the same in both encodings, such a file is
+ * read as a whole in the platform encoding, wherever that character is.
+ * Other than finding out the encoding before reading, this does not hold
+ * back the text until the whole file is read.</p>
+ */
+class HtmlFileReader extends Reader {
+
+    /**
+     * construct an <code>HtmlFileReader</code>
+     *
+     * @param in  the stream to read the file from
+     */
+    HtmlFileReader(final InputStream in) {
+        this.in = in;
+        bytes.flip();
+        chars.flip();
+    }
+
+    public int read(final char[] cbuf, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!chars.hasRemaining()) {
+            decode();
+            if (!chars.hasRemaining()) {
+                return -1;
+            }
+        }
+        final int n = Math.min(len, chars.remaining());
+        chars.get(cbuf, off, n);
+        return n;
+    }
+
+    /**
+     * decode the next characters of the file, none at its end
+     */
+    private void decode() throws IOException {
+        chars.clear();
+        while (!flushed) {
+            final CoderResult result = decoder.decode(bytes, chars, eof);
+            if (result.isError()) {
+                // not UTF-8, a file saved in the platform encoding
+                decoder = Charset.defaultCharset().newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+                continue;
+            }
+            if (eof && result.isUnderflow()) {
+                decoder.flush(chars);
+                flushed = true;
+            }
+            if (chars.position() > 0) {
+                break;
+            }
+            bytes.compact();
+            final int n = in.read(bytes.array(), bytes.position(), bytes.remaining());
+            if (n < 0) {
+                eof = true;
+            }
+            else {
+                bytes.position(bytes.position() + n);
+            }
+            bytes.flip();
+        }
+        chars.flip();
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /** the stream to read the file from */
+    private final InputStream in;
+    /** the bytes read but not decoded yet */
+    private final ByteBuffer bytes = ByteBuffer.allocate(8192);
+    /** the characters decoded but not read yet */
+    private final CharBuffer chars = CharBuffer.allocate(8192);
+    /** the decoder for the encoding of the file */
+    private CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(CodingErrorAction.REPORT);
+    /** indicates that the end of the stream was reached */
+    private boolean eof;
+    /** indicates that all of the text was decoded */
+    private boolean flushed;
+}
@@ -0,0 +1,167 @@
+/*
+ * SimplyHTML, a word processor based on Java, HTML and CSS
+ * Copyright (C) 2003 Ulrich Hilger
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.github.geniot.shtml;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Copies the images of a document from one image directory to another.
+ *
+ * <p>The destination directory keeps a manifest of the images copied to
+ * it, with size, modification time and hash of each source file. An image
+ * is copied only if it is new or its source changed since it was copied
+ * last, so that saving a document repeatedly costs time proportional to
+ * the changed images only. Images recorded in the manifest which are no
+ * longer referenced by the document are removed from the destination
+ * directory, as long as their source still exists. Nothing is removed
+ * when both directories are the same, as the document may get the image
+ * back by an undo. Files not recorded in the manifest are never
+ * touched.</p>
+ */
+class ImageDirectorySync {
+
+    /**
+     * construct an <code>ImageDirectorySync</code>
+     *
+     * @param srcDir  the directory the images of the document are kept in
+     * @param destDir  the directory to copy the images to
+     */
+    ImageDirectorySync(final File srcDir, final File destDir) {
+        this.srcDir = srcDir;
+        this.destDir = destDir;
+    }
+
+    /**
+     * bring the destination directory up to date
+     *
+     * @param names  the names of the images in the source directory
+     * referenced by the document
+     */
+    void sync(final Set<String> names) throws IOException {
+        final File manifestFile = new File(destDir, MANIFEST);
+        final Properties manifest = new Properties();
+        if (manifestFile.exists()) {
+            try (final Reader r = new InputStreamReader(new FileInputStream(manifestFile), StandardCharsets.UTF_8)) {
+                manifest.load(r);
+            }
+        }
+        final String source = srcDir.getCanonicalPath();
+        final boolean sameSource = source.equals(manifest.getProperty(SOURCE));
+        final boolean sameDir = source.equals(destDir.getCanonicalPath());
+        boolean changed = !sameSource;
+        manifest.setProperty(SOURCE, source);
+
+        for (final String name : names) {
+            final File src = new File(srcDir, name);
+            if (sameDir || !src.isFile()) {
+                continue;
+            }
+            final File dest = new File(destDir, name);
+            final String[] entry = split(manifest.getProperty(name));
+            final String size = Long.toString(src.length());
+            final String time = Long.toString(src.lastModified());
+            final boolean copied = entry != null && dest.exists();
+            if (copied && sameSource && entry[0].equals(size) && entry[1].equals(time)) {
+                continue;
+            }
+            final String hash = hash(src);
+            if (!copied || !entry[2].equals(hash)) {
+                destDir.mkdirs();
+                Files.copy(src.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            manifest.setProperty(name, size + SEPARATOR + time + SEPARATOR + hash);
+            changed = true;
+        }
+
+        // images copied before which are not referenced anymore, unless the
+        // copy is the only one left, e.g. of an image an undo may bring back
+        for (final String name : new HashSet<String>(manifest.stringPropertyNames())) {
+            if (!sameDir && !name.equals(SOURCE) && !names.contains(name) && new File(srcDir, name).isFile()) {
+                new File(destDir, name).delete();
+                manifest.remove(name);
+                changed = true;
+            }
+        }
+
+        if (manifest.size() == 1) {
+            manifestFile.delete();
+        }
+        else if (changed) {
+            try (final AtomicFileWriter w = new AtomicFileWriter(manifestFile)) {
+                manifest.store(w, null);
+                w.commit();
+            }
+        }
+    }
+
+    /**
+     * split a manifest entry into size, modification time and hash
+     */
+    private static String[] split(final String entry) {
+        if (entry == null) {
+            return null;
+        }
+        final String[] parts = entry.split(SEPARATOR);
+        return parts.length == 3 ? parts : null;
+    }
+
+    /**
+     * get the hash of the contents of a file as a hexadecimal string
+     */
+    static String hash(final File file) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (final NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        final byte[] buf = new byte[8192];
+        try (final InputStream in = new FileInputStream(file)) {
+            int n;
+            while ((n = in.read(buf)) >= 0) {
+                digest.update(buf, 0, n);
+            }
+        }
+        return Util.toHexString(digest.digest());
+    }
+
+    /** the name of the manifest file in the destination directory */
+    static final String MANIFEST = ".images";
+    /** the key of the source directory in the manifest */
+    private static final String SOURCE = ".source";
+    private static final String SEPARATOR = ",";
+    /** the directory the images of the document are kept in */
+    private final File srcDir;
+    /** the directory to copy the images to */
+    private final File destDir;
+}
@@ -0,0 +1,194 @@
+/*
+ * SimplyHTML, a word processor based on Java, HTML and CSS
+ * Copyright (C) 2003 Ulrich Hilger
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.github.geniot.shtml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Stores copies of external images in the image directory of a document
+ * under a name derived from a hash of their contents.
+ *
+ * <p>The same image copied repeatedly, e.g. pasted many times, is stored
+ * only once. An image is read from its source once per document, later
+ * copies from the same source are taken from the index of sources already
+ * stored, unless the source is a local file whose size or modification
+ * time changed since. An image from a different source with the same
+ * contents is read again to compute its hash, but not stored another
+ * time.</p>
+ *
+ * <p>Images can be read on a small pool of background threads, so that
+ * reading them does not hold up editing.</p>
+ */
+class ImageStore {
+
+    /**
+     * construct an <code>ImageStore</code>
+     *
+     * @param dir  the directory to store images in
+     */
+    ImageStore(final File dir) {
+        this.dir = dir;
+    }
+
+    File getDirectory() {
+        return dir;
+    }
+
+    /**
+     * get the name of the stored copy of an image
+     *
+     * @param source  the location of the image
+     *
+     * @return the name of the stored file within the directory or null, if
+     * the image has not been stored so far
+     */
+    String getStored(final URL source) {
+        final String[] entry;
+        synchronized (stored) {
+            entry = stored.get(source.toString());
+        }
+        if (entry == null || !new File(dir, entry[0]).exists()) {
+            return null;
+        }
+        final String stamp = getStamp(source);
+        return stamp != null && stamp.equals(entry[1]) ? entry[0] : null;
+    }
+
+    /**
+     * get the size and modification time of an image which is a local file.
+     * Images from other sources are assumed not to change.
+     *
+     * @return the stamp of the image, or null if it can not be told
+     */
+    private static String getStamp(final URL source) {
+        if (!"file".equals(source.getProtocol())) {
+            return "";
+        }
+        try {
+            final File file = new File(source.toURI());
+            return file.length() + "," + file.lastModified();
+        }
+        catch (final URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * store a copy of an image, if not stored already
+     *
+     * @param source  the location of the image
+     * @param extension  the extension of the image file name, including the dot
+     *
+     * @return the name of the stored file within the directory
+     */
+    String store(final URL source, final String extension) throws IOException {
+        String name = getStored(source);
+        if (name != null) {
+            return name;
+        }
+        final String stamp = getStamp(source);
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (final NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        dir.mkdirs();
+        final File copy = File.createTempFile(PREFIX, extension, dir);
+        try {
+            try (final InputStream in = new DigestInputStream(source.openStream(), digest)) {
+                Files.copy(in, copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            name = PREFIX + Util.toHexString(digest.digest()).substring(0, HASH_LENGTH) + extension;
+            final File image = new File(dir, name);
+            if (!image.exists()) {
+                try {
+                    Files.move(copy.toPath(), image.toPath());
+                }
+                catch (final FileAlreadyExistsException e) {
+                    // stored by another thread meanwhile
+                }
+            }
+        }
+        finally {
+            copy.delete();
+        }
+        synchronized (stored) {
+            stored.put(source.toString(), new String[] { name, stamp });
+        }
+        return name;
+    }
+
+    /**
+     * store a copy of an image on a background thread
+     *
+     * @param source  the location of the image
+     * @param extension  the extension of the image file name, including the dot
+     *
+     * @return the name of the stored file within the directory, once stored
+     */
+    CompletableFuture<String> storeLater(final URL source, final String extension) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return store(source, extension);
+            }
+            catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, FETCHER);
+    }
+
+    /** the threads reading images from their sources */
+    private static final ExecutorService FETCHER = Executors.newFixedThreadPool(4, new ThreadFactory() {
+        public Thread newThread(final Runnable r) {
+            final Thread t = new Thread(r, "ImageFetcher");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+    /** the prefix of the names of stored images */
+    private static final String PREFIX = "image-";
+    /** the number of hexadecimal digits of the hash used in file names */
+    private static final int HASH_LENGTH = 32;
+    /** the directory images are stored in */
+    private final File dir;
+    /**
+     * the names of the stored images and the stamps of their sources by the
+     * location they were copied from
+     */
+    private final Map<String, String[]> stored = new HashMap<String, String[]>();
+}
@@ -0,0 +1,323 @@
+/*
+ * SimplyHTML, a word processor based on Java, HTML and CSS
+ * Copyright (C) 2003 Ulrich Hilger
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.github.geniot.shtml;
+
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.JEditorPane;
+import javax.swing.SwingUtilities;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Position;
+import javax.swing.text.StyledDocument;
+
+import io.github.geniot.shtml.PseudoDamerauLevenshtein.Alignment;
+
+/**
+ * Finds all occurrences of a phrase in a group of documents.
+ *
+ * <p>Each document is searched by its own task on a
+ * <code>ForkJoinPool</code> while the read lock of the document is held,
+ * so documents are searched in parallel and the event dispatch thread
+ * is not blocked. The text is read from the <code>SearchIndex</code> of
+ * the document instead of a copy of the text.</p>
+ *
+ * <p>The hits of each document are handed to a <code>HitListener</code>
+ * on the event dispatch thread as soon as the document is searched.</p>
+ *
+ * @see FindReplaceDialog
+ */
+class ProjectSearch {
+
+    /**
+     * Interface to be implemented by the provider of the documents a
+     * <code>FindReplaceDialog</code> searches in mode MODE_PROJECT, to
+     * allow searching all of them at once.
+     */
+    interface DocumentGroup {
+        /**
+         * get the number of documents in the group
+         */
+        int getDocumentCount();
+
+        /**
+         * get a document of the group
+         */
+        Document getDocument(int index);
+
+        /**
+         * get the title of a document of the group
+         */
+        String getDocumentTitle(int index);
+
+        /**
+         * show a document of the group
+         *
+         * @return the editor showing the document
+         */
+        JEditorPane showDocument(Document doc);
+    }
+
+    /**
+     * Listener for the results of a <code>ProjectSearch</code>, its methods
+     * are called on the event dispatch thread.
+     */
+    interface HitListener {
+        /**
+         * the hits of one document have been found
+         *
+         * @param hits  the hits in the order of their positions
+         */
+        void hitsFound(Vector<Hit> hits);
+
+        /**
+         * all documents have been searched or the search was cancelled
+         */
+        void searchFinished();
+    }
+
+    /**
+     * construct a <code>ProjectSearch</code>
+     *
+     * @param searchTerm  the phrase to find
+     * @param matchCase  true, if case matters
+     * @param wholeWords  true, if only whole words shall be found
+     * @param threshold  the minimum score of approximate matches or a
+     *      negative value for finding exact matches only
+     */
+    ProjectSearch(final String searchTerm, final boolean matchCase, final boolean wholeWords, final double threshold) {
+        this.searchTerm = searchTerm;
+        this.matchCase = matchCase;
+        this.wholeWords = wholeWords;
+        this.threshold = threshold;
+    }
+
+    /**
+     * start searching a group of documents
+     *
+     * @param group  the documents to search
+     * @param listener  the listener to report hits to
+     */
+    void start(final DocumentGroup group, final HitListener listener) {
+        final int count = group.getDocumentCount();
+        if (count == 0) {
+            listener.searchFinished();
+            return;
+        }
+        final AtomicInteger remaining = new AtomicInteger(count);
+        for (int i = 0; i < count; i++) {
+            final Document doc = group.getDocument(i);
+            final String title = group.getDocumentTitle(i);
+            ForkJoinPool.commonPool().execute(new Runnable() {
+                public void run() {
+                    final Vector<Hit> hits = new Vector<Hit>();
+                    if (!cancelled) {
+                        try {
+                            search(doc, title, hits);
+                        }
+                        catch (final Exception e) {
+                            e.printStackTrace();
+                        }
+                    }
+                    final boolean last = remaining.decrementAndGet() == 0;
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run() {
+                            if (!cancelled && hits.size() > 0) {
+                                listener.hitsFound(hits);
+                            }
+                            if (last) {
+                                listener.searchFinished();
+                            }
+                        }
+                    });
+                }
+            });
+        }
+    }
+
+    /**
+     * stop reporting hits, documents not searched yet are skipped
+     */
+    void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * replace the hits of one document with a given text as one undoable edit
+     *
+     * @param hits  the hits to replace, all in the same document
+     * @param replacement  the text to replace the hits with
+     */
+    static void replaceAll(final List<Hit> hits, final String replacement) {
+        if (hits.isEmpty()) {
+            return;
+        }
+        final Document doc = hits.get(0).getDocument();
+        try {
+            if (doc instanceof SHTMLDocument) {
+                final int[] starts = new int[hits.size()];
+                final int[] ends = new int[hits.size()];
+                for (int i = 0; i < starts.length; i++) {
+                    starts[i] = hits.get(i).getStart();
+                    ends[i] = hits.get(i).getEnd();
+                }
+                ((SHTMLDocument) doc).replaceAll(starts, ends, replacement);
+            }
+            else {
+                // replace from the end so that earlier hits keep their offsets
+                for (int i = hits.size() - 1; i >= 0; i--) {
+                    final Hit hit = hits.get(i);
+                    final int start = hit.getStart();
+                    AttributeSet a = null;
+                    if (doc instanceof StyledDocument) {
+                        a = ((StyledDocument) doc).getCharacterElement(start).getAttributes().copyAttributes();
+                    }
+                    ((AbstractDocument) doc).replace(start, hit.getEnd() - start, replacement, a);
+                }
+            }
+        }
+        catch (final BadLocationException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * search one document, to be called on a worker thread
+     */
+    private void search(final Document doc, final String title, final Vector<Hit> hits) {
+        doc.render(new Runnable() {
+            public void run() {
+                final SearchIndex index = SearchIndex.getInstance(doc);
+                try {
+                    if (threshold < 0) {
+                        findExact(doc, title, index, hits);
+                    }
+                    else {
+                        findApproximate(doc, title, index, hits);
+                    }
+                }
+                catch (final BadLocationException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    private void findExact(final Document doc, final String title, final SearchIndex index, final Vector<Hit> hits)
+            throws BadLocationException {
+        final int length = searchTerm.length();
+        if (length == 0) {
+            return;
+        }
+        int start = index.indexOf(searchTerm, 0, matchCase);
+        while (start >= 0 && !cancelled) {
+            if (!wholeWords || (isSeparatorAt(index, start - 1) && isSeparatorAt(index, start + length))) {
+                hits.addElement(new Hit(doc, title, index.getText(), start, start + length));
+                start = index.indexOf(searchTerm, start + length, matchCase);
+            }
+            else {
+                start = index.indexOf(searchTerm, start + 1, matchCase);
+            }
+        }
+    }
+
+    private void findApproximate(final Document doc, final String title, final SearchIndex index,
+                                 final Vector<Hit> hits) throws BadLocationException {
+        final PseudoDamerauLevenshtein pdl = new PseudoDamerauLevenshtein();
+        pdl.init(searchTerm, index.getText(), true, matchCase);
+        final int maxErrors = pdl.getMaxErrors(threshold);
+        if (maxErrors < 0) {
+            return;
+        }
+        for (final Alignment ali : pdl.computeAlignments(threshold, index.getApproximateRegions(searchTerm, maxErrors))) {
+            hits.addElement(new Hit(doc, title, index.getText(), ali.getMatchStart(), ali.getMatchEnd()));
+        }
+    }
+
+    private static boolean isSeparatorAt(final SearchIndex index, final int pos) {
+        return pos < 0 || pos >= index.length() || FindReplaceDialog.isSeparator(index.charAt(pos));
+    }
+
+    /**
+     * an occurrence of the search phrase, its positions follow changes of the document
+     */
+    static class Hit {
+        Hit(final Document doc, final String title, final CharSequence text, final int start, final int end)
+                throws BadLocationException {
+            this.doc = doc;
+            this.start = doc.createPosition(start);
+            this.end = doc.createPosition(end);
+            final StringBuilder sb = new StringBuilder(title);
+            sb.append(": ");
+            if (start > CONTEXT_LENGTH) {
+                sb.append("...");
+            }
+            for (int i = Math.max(0, start - CONTEXT_LENGTH); i < Math.min(text.length(), end + CONTEXT_LENGTH); i++) {
+                final char ch = text.charAt(i);
+                sb.append(Character.isWhitespace(ch) ? ' ' : ch);
+            }
+            if (end + CONTEXT_LENGTH < text.length()) {
+                sb.append("...");
+            }
+            description = sb.toString();
+        }
+
+        Document getDocument() {
+            return doc;
+        }
+
+        int getStart() {
+            return start.getOffset();
+        }
+
+        int getEnd() {
+            return end.getOffset();
+        }
+
+        public String toString() {
+            return description;
+        }
+
+        /** number of characters shown before and after a hit */
+        private static final int CONTEXT_LENGTH = 30;
+        /** the document the hit was found in */
+        private final Document doc;
+        /** start and end of the hit */
+        private final Position start;
+        private final Position end;
+        /** the document title and the text around the hit */
+        private final String description;
+    }
+
+    /** the phrase to find */
+    private final String searchTerm;
+    /** true, if case matters */
+    private final boolean matchCase;
+    /** true, if only whole words are to be found */
+    private final boolean wholeWords;
+    /** minimum score of approximate matches, negative for exact matches */
+    private final double threshold;
+    /** indicates that hits are no longer wanted */
+    private volatile boolean cancelled = false;
+}
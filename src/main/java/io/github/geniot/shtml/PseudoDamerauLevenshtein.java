@@ -24,7 +24,8 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
-import java.util.Stack;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Pseudo-Damerau-Levenshtein (aka "Optimal String Distance")
@@ -43,24 +44,31 @@ import java.util.Stack;
  */
 public class PseudoDamerauLevenshtein {
 	public enum Type { Global, SemiGlobal };
+	private static final int INFINITY = Integer.MAX_VALUE / 2;
 	private int[][] matrix;
 	private String searchTerm;
-	private String searchText;
+	/** text to search in, read through textChar() which folds the case if needed */
+	private CharSequence searchText;
+	private boolean caseSensitive;
 	private final int costIndel = 1;
 	private final int costMismatch = 1;
 	private final int costTranspos = 1;
 	private Type type;
-	private Stack<Alignment> alignmentsInProgress;
+	/** band of the matrix around a candidate alignment, (searchTerm.length()+1) rows of bandWidth cells */
+	private int[] band;
+	private boolean[] bandReached;
+	private int bandWidth;
+	/** column of the first cell of row 0 of the band */
+	private int bandBase;
+	/** column of the text region being searched, it takes the role of column 0 */
+	private int regionStart;
 	private ArrayList<Alignment> alignmentsDone;
 	
 	public class Alignment implements Comparable<Alignment>
 	{
-		private final String searchTermString;
-		private final String searchTextString;
 		private final double prob;
 		private final int matchStart;
 		private final int matchEnd;
-		private final int r, c;
 		
 		public int getMatchStart()
 		{
@@ -84,21 +92,11 @@ public class PseudoDamerauLevenshtein {
 			final int prime = 31;
 			int result = 1;
 			result = prime * result + getOuterType().hashCode();
-			result = prime * result + c;
 			result = prime * result + matchEnd;
 			result = prime * result + matchStart;
 			long temp;
 			temp = Double.doubleToLongBits(prob);
 			result = prime * result + (int) (temp ^ (temp >>> 32));
-			result = prime * result + r;
-			result = prime
-					* result
-					+ ((searchTermString == null) ? 0 : searchTermString
-							.hashCode());
-			result = prime
-					* result
-					+ ((searchTextString == null) ? 0 : searchTextString
-							.hashCode());
 			return result;
 		}
 
@@ -117,9 +115,6 @@ public class PseudoDamerauLevenshtein {
 			if (!getOuterType().equals(other.getOuterType())) {
 				return false;
 			}
-			if (c != other.c) {
-				return false;
-			}
 			if (matchEnd != other.matchEnd) {
 				return false;
 			}
@@ -130,23 +125,6 @@ public class PseudoDamerauLevenshtein {
 					.doubleToLongBits(other.prob)) {
 				return false;
 			}
-			if (r != other.r) {
-				return false;
-			}
-			if (searchTermString == null) {
-				if (other.searchTermString != null) {
-					return false;
-				}
-			} else if (!searchTermString.equals(other.searchTermString)) {
-				return false;
-			}
-			if (searchTextString == null) {
-				if (other.searchTextString != null) {
-					return false;
-				}
-			} else if (!searchTextString.equals(other.searchTextString)) {
-				return false;
-			}
 			return true;
 		}
 
@@ -154,25 +132,25 @@ public class PseudoDamerauLevenshtein {
 
 		public String getMatch()
 		{
-			return searchText.substring(matchStart, matchEnd);
+			return searchText.subSequence(matchStart, matchEnd).toString();
 		}
 		
 		public int compareTo(final Alignment other)
 		{
 			if (prob == other.prob)
 			{
-				return new Integer(getMatch().length()).compareTo(new Integer(other.getMatch().length())); 
+				return Integer.compare(matchEnd - matchStart, other.matchEnd - other.matchStart); 
 			}
 			else
 			{
-				return new Double(prob).compareTo(new Double(other.prob));
+				return Double.compare(prob, other.prob);
 			}
 		}
 		
 		public void print()
 		{
-			System.out.format("Alignment@%x[%.2f]:\n%s\n%s\n=> matches '%s' [%d,%d]\n",
-					hashCode(), prob, searchTermString, searchTextString, getMatch(),
+			System.out.format("Alignment@%x[%.2f]:\n=> matches '%s' [%d,%d]\n",
+					hashCode(), prob, getMatch(),
 					matchStart,matchEnd);
 		}
 		
@@ -182,16 +160,11 @@ public class PseudoDamerauLevenshtein {
 			return String.format("Ali@%x[%s,%.2f,%d,%d]", hashCode(), getMatch(), prob, matchStart, matchEnd);
 		}
 		
-		public Alignment(final String searchTermString, final String searchTextString, final double prob,
-				final int matchStart, final int matchEnd, final int r, final int c)
+		public Alignment(final double prob, final int matchStart, final int matchEnd)
 		{
-			this.searchTermString = searchTermString;
-			this.searchTextString = searchTextString;
 			this.prob = prob;
 			this.matchStart = matchStart;
 			this.matchEnd = matchEnd;
-			this.r = r;
-			this.c = c;
 		}
 
 
@@ -201,16 +174,43 @@ public class PseudoDamerauLevenshtein {
 		}
 	}
 	
+	private char textChar(int j)
+	{
+		final char ch = searchText.charAt(j);
+		return caseSensitive ? ch : Character.toLowerCase(ch);
+	}
+	
+	/**
+	 * fold the case of a search term the same way as the text is folded by
+	 * textChar(), character by character and independent of the locale
+	 */
+	private static String toLowerCase(final String term)
+	{
+		final char[] folded = term.toCharArray();
+		for (int i = 0; i < folded.length; i++)
+		{
+			folded[i] = Character.toLowerCase(folded[i]);
+		}
+		return new String(folded);
+	}
+	
 	private boolean isMatch(int i, int j) 
 	{
 		char col = searchTerm.charAt(i-1);
-		char row = searchText.charAt(j-1);
+		char row = textChar(j-1);
 		if (col == row || row == '-')
 			return true;
 		else
 			return false;
 	}
 	
+	private boolean isTransposition(int i, int j)
+	{
+		return i >= 2 && j >= 2 &&
+			searchTerm.charAt(i-2) == textChar(j-1) &&
+			searchTerm.charAt(i-1) == textChar(j-2);
+	}
+	
 	public int distance() {
 		
 		matrix = new int[searchTerm.length()+1][searchText.length()+1]; // [row][col]
@@ -240,9 +240,7 @@ public class PseudoDamerauLevenshtein {
 				int cost_del = matrix[i][j-1] + costIndel;
 				matrix[i][j] = Math.min(cost_try_match, Math.min(cost_ins, cost_del));
 				
-				if (i >= 2 && j >= 2 &&
-					    searchTerm.charAt(i-2) == searchText.charAt(j-1) &&
-					    searchTerm.charAt(i-1) == searchText.charAt(j-2))
+				if (isTransposition(i, j))
 				{
 					matrix[i][j] = Math.min(matrix[i][j], matrix[i-2][j-2] + costTranspos);
 				}
@@ -279,40 +277,72 @@ public class PseudoDamerauLevenshtein {
 	
 	public List<Alignment> computeAlignments(final double minProb)
 	{
-		alignmentsInProgress = new Stack<Alignment>();
+		return computeAlignments(minProb, null);
+	}
+	
+	/**
+	 * Compute the alignments, looking at some regions of the text only
+	 * (semi-global alignments only).
+	 * 
+	 * @param minProb minimum score (prob) of an alignment
+	 * @param regions pairs of start and end positions of the regions of the text that
+	 *        can contain matches, in ascending order, or null to search the whole text
+	 *        (see SearchIndex.getApproximateRegions())
+	 * @return the non-overlapping alignments, sorted by start positions
+	 */
+	public List<Alignment> computeAlignments(final double minProb, int[] regions)
+	{
 		alignmentsDone = new ArrayList<Alignment>();
-		
-		int dist = distance(); // this computes the Dynamic Programming matrix according to Levenshtein
-		
-		if (type == Type.Global && getMatchProb(dist) > minProb)
+		if (regions == null)
 		{
-			alignmentsInProgress.push(new Alignment("", "", getMatchProb(dist), 0, searchText.length(),
-					searchTerm.length(), searchText.length()));
+			regions = new int[] { 0, searchText.length() };
 		}
-		else
+		
+		if (type == Type.Global)
 		{
-			// semi-global "substring" alignment
-			StringBuilder searchTermSuffix = new StringBuilder();
-			StringBuilder searchTextSuffix = new StringBuilder();
-			for (int c = searchText.length() + 1; c >= 1; c--)
+			// global alignments start at 0, so they only differ in their end positions
+			int dist = distance(); // this computes the Dynamic Programming matrix according to Levenshtein
+			if (getMatchProb(dist) > minProb)
 			{
-				if (c <= searchText.length())
-				{
-					searchTermSuffix.append('-');
-					searchTextSuffix.insert(0, searchText.charAt(c-1));
-				}
-				double prob = getMatchProb(matrix[searchTerm.length()][c-1]); 
-				if (prob > minProb)
+				alignmentsDone.add(new Alignment(getMatchProb(dist), 0, searchText.length()));
+			}
+			else
+			{
+				// prefixes of searchText matching searchTerm
+				for (int c = 0; c <= searchText.length(); c++)
 				{
-					alignmentsInProgress.push(new Alignment(searchTermSuffix.toString(), searchTextSuffix.toString(),
-							prob, 0, searchText.length() - searchTextSuffix.length(), searchTerm.length(), c - 1));
+					final float prob = getMatchProb(matrix[searchTerm.length()][c]);
+					if (prob > minProb)
+					{
+						alignmentsDone.add(new Alignment(prob, 0, c));
+					}
 				}
 			}
 		}
-		
-		while (!alignmentsInProgress.isEmpty())
+		else if (searchTerm.length() > 0)
 		{
-			developAlignment(alignmentsInProgress.pop());
+			// semi-global "substring" alignment:
+			// find candidate end positions with the bit-parallel matcher and
+			// trace back only the band of the matrix around each of them
+			for (int r = 0; r < regions.length; r += 2)
+			{
+				regionStart = regions[r];
+				final BitParallelMatcher matcher = new BitParallelMatcher(searchTerm);
+				for (int c = regionStart; c <= regions[r+1]; c++)
+				{
+					if (c > regionStart)
+					{
+						matcher.advance(textChar(c-1));
+					}
+					final int dist = matcher.getDistance();
+					final float prob = getMatchProb(dist);
+					if (prob > minProb)
+					{
+						addAlignmentsEndingAt(c, dist, prob);
+					}
+				}
+			}
+			regionStart = 0;
 		}
 		
 		// filter (overlapping) alignments
@@ -329,6 +359,8 @@ public class PseudoDamerauLevenshtein {
 		*/
 		
 		matrix = null;
+		band = null;
+		bandReached = null;
 		
 		//return alignmentsDone.toArray(new Alignment[alignmentsDone.size()]);
 		return alignmentsDone;
@@ -336,46 +368,35 @@ public class PseudoDamerauLevenshtein {
 	
 	/**
 	 * Keep only non-overlapping matches (alignments) while preferring alignments with high score (prob)
+	 * and long matches: alignments are visited best first and kept if they don't overlap an alignment
+	 * kept before. The kept alignments are disjoint, so only the kept neighbours (by start position)
+	 * of an alignment need to be checked, which takes O(n log n) for n alignments.
 	 * TODO: this is a heuristic, is the problem NP complete?
 	 * 
 	 * @param alignments alignments list to filter
-	 * @return filtered alignment list
+	 * @return filtered alignment list, sorted by start positions
 	 */
 	static ArrayList<Alignment> filterAlignments(final ArrayList<Alignment> alignments)
 	{
-		if (alignments.isEmpty())
-			return new ArrayList<Alignment>();
-		
 		// sort by score and match length (see Alignment.compareTo()) 
 		Collections.sort(alignments, Collections.reverseOrder());
 		
-		ArrayList<Alignment> clusters = new ArrayList<Alignment>(alignments.size());
-		// start with a single cluster
-		clusters.add(alignments.get(0));
-		alignments.remove(0);
-		
-		// assign alignments to clusters
+		final TreeMap<Integer, Alignment> kept = new TreeMap<Integer, Alignment>();
 		for (Alignment ali: alignments)
 		{
-			boolean found_cluster = false;
-			for (int j = 0; j < clusters.size(); j++)
+			final Map.Entry<Integer, Alignment> before = kept.floorEntry(ali.matchStart);
+			if (before != null && ali.overlapsWith(before.getValue()))
 			{
-				if (ali.overlapsWith(clusters.get(j)))
-				{
-					found_cluster = true;
-					// keep either current cluster center or set to 'ali'
-					if (ali.compareTo(clusters.get(j)) > 0)
-					{
-						clusters.set(j, ali);
-					}
-				}
+				continue;
 			}
-			if (!found_cluster)
+			final Map.Entry<Integer, Alignment> after = kept.higherEntry(ali.matchStart);
+			if (after != null && ali.overlapsWith(after.getValue()))
 			{
-				clusters.add(ali);
+				continue;
 			}
+			kept.put(ali.matchStart, ali);
 		}
-		return clusters;
+		return new ArrayList<Alignment>(kept.values());
 	}	
 	
 	/**
@@ -388,114 +409,217 @@ public class PseudoDamerauLevenshtein {
 				{
 
 					public int compare(Alignment o1, Alignment o2) {
-						return new Integer(o1.matchStart).compareTo(o2.matchStart);
+						return Integer.compare(o1.matchStart, o2.matchStart);
 					}
 			
 				});
 	}
 	
-//	private void printAlignmentsFrom(final String searchTermSuffix, final String searchTextSuffix, final int r, final int c,
-//			double prob, int matchStart, int matchEnd)
-	private void developAlignment(final Alignment ali)
+	/**
+	 * Add one semi-global alignment for each distinct start position of the optimal
+	 * alignments ending at column 'end'.
+	 * 
+	 * A cell (i,c) on such an alignment satisfies |(end-c) - (searchTerm.length()-i)| <= dist,
+	 * so only the band of 2*dist+1 diagonals around the one through (searchTerm.length(), end)
+	 * is computed. Cells on optimal alignments get their exact values in the band, so tracing
+	 * back inside of the band finds the same start positions as the full matrix would.
+	 * The traceback marks reachable cells instead of following each path separately.
+	 */
+	private void addAlignmentsEndingAt(final int end, final int dist, final float prob)
 	{
-//		System.out.format("developAlignment(term=%s, text=%s, r=%d, c=%d)",
-//				ali.searchTermString, ali.searchTextString, ali.r, ali.c);
-		
-		if (ali.r == 0 && ali.c == 0)
+		final int m = searchTerm.length();
+		bandWidth = 2 * dist + 1;
+		bandBase = end - m - dist;
+		final int size = (m + 1) * bandWidth;
+		if (band == null || band.length < size)
 		{
-			alignmentsDone.add(ali);
-//			System.out.println();
-//			ali.print();
+			band = new int[size];
+			bandReached = new boolean[size];
 		}
-		else
+		
+		// compute the band row by row, cell k of row i is column bandBase+i+k
+		for (int i = 0; i <= m; i++)
 		{
-			// TODO: comments!!
-			
-			// match/mismatch
-			if (ali.r >= 1 && ali.c >= 1 && matrix[ali.r][ali.c] == matrix[ali.r-1][ali.c-1] + (isMatch(ali.r,ali.c) ? 0 : costMismatch))
+			for (int k = 0; k < bandWidth; k++)
 			{
-//				System.out.format("=> match/mismatch\n");
-				
-				alignmentsInProgress.push(new Alignment(
-						/*searchTerm.charAt(ali.r-1) + ali.searchTermString*/ null,
-						/*searchText.charAt(ali.c-1) + ali.searchTextString*/ null,
-						ali.prob, ali.matchStart, ali.matchEnd, ali.r - 1, ali.c - 1)
-						);
-			}
-
-			/*
-			// free insertions at the beginning of the searchTerm
-			if (ali.c >= 1 && type == Type.SemiGlobal && ali.r == 0 && matrix[ali.r][ali.c-1] == 0)
-			{
-				System.out.format("=> insertion at beginning\n");
-				
-				alignmentsInProgress.push(new Alignment(
-						"-" + ali.searchTermString,
-						searchText.charAt(ali.c-1) + ali.searchTextString,
-						ali.prob, ali.matchStart + 1, ali.matchEnd, ali.r, ali.c - 1)
-						);
+				final int c = bandBase + i + k;
+				int v;
+				if (c < regionStart || c > end)
+					v = INFINITY;
+				else if (i == 0)
+					v = 0;
+				else if (c == regionStart)
+					v = i*costIndel;
+				else
+				{
+					v = bandCell(i-1, k) + (isMatch(i,c) ? 0 : costMismatch);
+					v = Math.min(v, bandCell(i-1, k+1) + costIndel);
+					v = Math.min(v, bandCell(i, k-1) + costIndel);
+					if (isTransposition(i, c))
+					{
+						v = Math.min(v, bandCell(i-2, k) + costTranspos);
+					}
+				}
+				band[i * bandWidth + k] = v;
 			}
-			*/
-			if (type == Type.SemiGlobal && ali.r == 0)
+		}
+		
+		// trace back from (m, end): mark all predecessors on optimal paths
+		Arrays.fill(bandReached, 0, size, false);
+		bandReached[m * bandWidth + dist] = true;
+		for (int i = m; i >= 0; i--)
+		{
+			for (int k = bandWidth - 1; k >= 0; k--)
 			{
-//				System.out.format("=> insertions at beginning\n");
-				int c = ali.c, matchStart = ali.matchStart;
-				StringBuilder searchTermPrefix = new StringBuilder();
-				StringBuilder searchTextPrefix = new StringBuilder();
-				while (c > 0)
+				if (!bandReached[i * bandWidth + k])
+					continue;
+				final int c = bandBase + i + k;
+				if (i == 0)
 				{
-					//searchTermPrefix.append('-');
-					//searchTextPrefix.insert(0, searchText.charAt(c-1));
-					matchStart += 1;
-					c--;
+					// free insertions at the beginning of the searchTerm
+					alignmentsDone.add(new Alignment(prob, c, end));
+					continue;
 				}
-				alignmentsInProgress.push(new Alignment(
-						/*searchTermPrefix.toString() + ali.searchTermString*/ null,
-						/*searchTextPrefix.toString() + ali.searchTextString*/ null,
-						ali.prob, matchStart, ali.matchEnd, 0, 0)
-						);
+				final int v = band[i * bandWidth + k];
+				// match/mismatch
+				if (c > regionStart && v == bandCell(i-1, k) + (isMatch(i,c) ? 0 : costMismatch))
+					bandReached[(i-1) * bandWidth + k] = true;
+				// insertion
+				if (v == bandCell(i, k-1) + costIndel)
+					bandReached[i * bandWidth + k-1] = true;
+				// deletion
+				if (v == bandCell(i-1, k+1) + costIndel)
+					bandReached[(i-1) * bandWidth + k+1] = true;
+				// Damerau-Extension (transpositions)
+				if (isTransposition(i, c) && v == bandCell(i-2, k) + costTranspos)
+					bandReached[(i-2) * bandWidth + k] = true;
 			}
+		}
+	}
+	
+	/**
+	 * @return the value of cell k of row i of the band, INFINITY outside of the band
+	 */
+	private int bandCell(final int i, final int k)
+	{
+		if (k < 0 || k >= bandWidth)
+			return INFINITY;
+		return band[i * bandWidth + k];
+	}
 
-			// insertion
-			if (ali.c >= 1 && matrix[ali.r][ali.c] == matrix[ali.r][ali.c-1] + costIndel)
+	/**
+	 * Bit-parallel computation of the last row of the semi-global matrix, one column at a time,
+	 * using Myers' algorithm with Hyyroe's extension for transpositions
+	 * (H. Hyyroe: "A bit-vector algorithm for computing Levenshtein and Damerau edit distances").
+	 * 
+	 * Bit i of the vectors stands for row i+1 of the matrix, each column takes
+	 * O(searchTerm.length()/64) time and the memory needed is O(searchTerm.length()).
+	 * A '-' in the text matches any character of the term, like in isMatch().
+	 */
+	private static class BitParallelMatcher
+	{
+		private final int blocks;
+		private final long lastBit;
+		/** distinct characters of the term (sorted) and their match vectors */
+		private final char[] chars;
+		private final long[][] peq;
+		private final long[] noMatch;
+		private final long[] anyMatch;
+		/** vertical positive/negative deltas and diagonal zero deltas of the current column */
+		private final long[] vp;
+		private final long[] vn;
+		private final long[] d0;
+		/** exact match vector of the previous text character (for transpositions) */
+		private long[] prevEq;
+		private int distance;
+		
+		BitParallelMatcher(final String term)
+		{
+			final int m = term.length();
+			blocks = (m + 63) / 64;
+			lastBit = 1L << ((m - 1) % 64);
+			final char[] sorted = term.toCharArray();
+			Arrays.sort(sorted);
+			int n = 0;
+			for (int i = 0; i < sorted.length; i++)
 			{
-//				System.out.format("=> insertion\n");
-
-				alignmentsInProgress.push(new Alignment(
-						/*"-" + ali.searchTermString*/ null,
-						/* searchText.charAt(ali.c-1) + ali.searchTextString*/ null,
-						ali.prob, ali.matchStart, ali.matchEnd, ali.r, ali.c - 1)
-						);
+				if (n == 0 || sorted[n-1] != sorted[i])
+				{
+					sorted[n++] = sorted[i];
+				}
 			}
-						
-			// deletion
-			if (ali.r >= 1 && matrix[ali.r][ali.c] == matrix[ali.r-1][ali.c] + costIndel)
+			chars = Arrays.copyOf(sorted, n);
+			peq = new long[n][blocks];
+			for (int i = 0; i < m; i++)
 			{
-//				System.out.format("=> deletion\n");
-				
-				alignmentsInProgress.push(new Alignment(
-						/*searchTerm.charAt(ali.r-1) + ali.searchTermString*/ null,
-						/*"-" + ali.searchTextString*/ null,
-						ali.prob, ali.matchStart, ali.matchEnd, ali.r - 1, ali.c)
-						);
+				peq[Arrays.binarySearch(chars, term.charAt(i))][i / 64] |= 1L << (i % 64);
 			}
-			
-			// Damerau-Extension (transpositions)
-			if (ali.r >= 2 && ali.c >= 2 && matrix[ali.r][ali.c] == matrix[ali.r-2][ali.c-2] + costTranspos &&
-			    searchTerm.charAt(ali.r-2) == searchText.charAt(ali.c-1) &&
-			    searchTerm.charAt(ali.r-1) == searchText.charAt(ali.c-2))
+			noMatch = new long[blocks];
+			anyMatch = new long[blocks];
+			Arrays.fill(anyMatch, -1L);
+			vp = new long[blocks];
+			Arrays.fill(vp, -1L);
+			vn = new long[blocks];
+			d0 = new long[blocks];
+			Arrays.fill(d0, -1L);
+			prevEq = noMatch;
+			distance = m;
+		}
+		
+		/**
+		 * @return the distance of the term to the best match ending at the current column
+		 */
+		int getDistance()
+		{
+			return distance;
+		}
+		
+		/**
+		 * move to the next column of the matrix
+		 * @param ch the text character of the next column
+		 */
+		void advance(final char ch)
+		{
+			final int slot = Arrays.binarySearch(chars, ch);
+			final long[] exactEq = slot >= 0 ? peq[slot] : noMatch;
+			final long[] eq = ch == '-' ? anyMatch : exactEq;
+			long addCarry = 0, tcCarry = 0, hpCarry = 0, hnCarry = 0;
+			for (int b = 0; b < blocks; b++)
 			{
-//				System.out.format("=> transposition\n");
-				
-				alignmentsInProgress.push(new Alignment(
-						/*searchTerm.substring(ali.r - 2, ali.r) + ali.searchTermString*/ null,
-						/*searchText.substring(ali.c - 2, ali.c) + ali.searchTextString*/ null,
-						ali.prob, ali.matchStart, ali.matchEnd, ali.r - 2, ali.c - 2)
-						);
+				final long e = eq[b];
+				final long p = vp[b];
+				final long n = vn[b];
+				// transpositions
+				final long tcRaw = ~d0[b] & exactEq[b];
+				final long tc = ((tcRaw << 1) | tcCarry) & prevEq[b];
+				tcCarry = tcRaw >>> 63;
+				// ((e & p) + p) with the carry of the lower block
+				final long x = e & p;
+				final long sum = x + p + addCarry;
+				addCarry = (Long.compareUnsigned(sum, x) < 0 || (addCarry != 0 && sum == x)) ? 1 : 0;
+				final long d = (sum ^ p) | e | n | tc;
+				final long hp = n | ~(d | p);
+				final long hn = d & p;
+				if (b == blocks - 1)
+				{
+					if ((hp & lastBit) != 0)
+						distance++;
+					else if ((hn & lastBit) != 0)
+						distance--;
+				}
+				// row 0 is all zeros (free start), so nothing is shifted into the first block
+				final long hps = (hp << 1) | hpCarry;
+				final long hns = (hn << 1) | hnCarry;
+				hpCarry = hp >>> 63;
+				hnCarry = hn >>> 63;
+				vp[b] = hns | ~(d | hps);
+				vn[b] = hps & d;
+				d0[b] = d;
 			}
+			prevEq = exactEq;
 		}
 	}
-
+	
 	private float getMatchProb(final int distance)
 	{
 		if (type == Type.SemiGlobal)
@@ -508,6 +632,20 @@ public class PseudoDamerauLevenshtein {
 		}
 	}
 	
+	/**
+	 * @return the maximum distance a semi-global alignment with a score above minProb can have,
+	 *         -1 if there is none
+	 */
+	public int getMaxErrors(final double minProb)
+	{
+		int errors = -1;
+		while (errors < searchTerm.length() && getMatchProb(errors + 1) > minProb)
+		{
+			errors++;
+		}
+		return errors;
+	}
+	
 	public float matchProb()
 	{
 		//LogUtils.severe("minMatchProb=" +StringMatchingStrategy.APPROXIMATE_MATCHING_MINPROB);
@@ -521,7 +659,7 @@ public class PseudoDamerauLevenshtein {
 		//LogUtils.severe("minMatchProb=" +StringMatchingStrategy.APPROXIMATE_MATCHING_MINPROB);
 	}
 
-	public void init(String searchTerm, String searchText,
+	public void init(String searchTerm, CharSequence searchText,
 			boolean subStringMatch, boolean caseSensitive) 
 	{
 		if (searchTerm == null || searchText == null)
@@ -529,16 +667,10 @@ public class PseudoDamerauLevenshtein {
 			throw new IllegalArgumentException("Null searchText/searchTerm!");
 		}
 
-		if (caseSensitive)
-		{
-			this.searchTerm = searchTerm;
-			this.searchText = searchText;
-		}
-		else
-		{
-			this.searchTerm = searchTerm.toLowerCase();
-			this.searchText= searchText.toLowerCase();
-		}
+		// the text is folded character by character (see textChar()), so it needs not be copied
+		this.searchText = searchText;
+		this.caseSensitive = caseSensitive;
+		this.searchTerm = caseSensitive ? searchTerm : toLowerCase(searchTerm);
 		this.type = subStringMatch ? Type.SemiGlobal : Type.Global;
 	}
 
@@ -0,0 +1,266 @@
+/*
+ * SimplyHTML, a word processor based on Java, HTML and CSS
+ * Copyright (C) 2003 Ulrich Hilger
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.github.geniot.shtml;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+/**
+ * Keeps the HTML of an open document on disk, so that it can be recovered
+ * after a crash.
+ *
+ * <p>The HTML is stored as a checkpoint, a complete copy of the document,
+ * followed by a journal. Each time the document is saved to the journal,
+ * the part of the HTML changed since the last save is appended to the
+ * journal as a record of the position, the number of characters replaced
+ * and the new characters. After a number of records, or when the journal
+ * grows larger than half of the document, a new checkpoint is written and
+ * the journal starts over.</p>
+ *
+ * <p>The journal starts with the length and hash code of the checkpoint it
+ * belongs to. A journal not matching its checkpoint, which happens after a
+ * crash while a new checkpoint was written, is ignored, as its records are
+ * contained in the checkpoint already. An incomplete record at the end of
+ * the journal is ignored as well.</p>
+ *
+ * <p>The files of a journal are kept in a directory and named after the
+ * id of the journal with the extensions <code>.html</code> for the
+ * checkpoint, <code>.journal</code> for the journal and
+ * <code>.properties</code> for the location and name of the document.</p>
+ */
+class RecoveryJournal {
+
+    /**
+     * construct a <code>RecoveryJournal</code>
+     *
+     * @param dir  the directory to keep the files in
+     * @param id  the name of the files without extension
+     */
+    RecoveryJournal(final File dir, final String id) {
+        this.dir = dir;
+        this.id = id;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    /**
+     * save the HTML of the document
+     *
+     * @param html  the complete HTML of the document
+     * @param source  the location of the document or null for a new document
+     * @param name  the name of the document
+     */
+    void save(final String html, final URL source, final String name) throws IOException {
+        if (saved == null || records >= CHECKPOINT_RECORDS || journalLength > saved.length() / 2) {
+            checkpoint(html, source, name);
+            return;
+        }
+        final int length = Math.min(saved.length(), html.length());
+        int prefix = 0;
+        while (prefix < length && saved.charAt(prefix) == html.charAt(prefix)) {
+            prefix++;
+        }
+        if (prefix == saved.length() && prefix == html.length()) {
+            return;
+        }
+        // the inserted text is encoded, it must not begin or end within a surrogate pair
+        if (prefix > 0 && Character.isHighSurrogate(html.charAt(prefix - 1))) {
+            prefix--;
+        }
+        int suffix = 0;
+        while (suffix < length - prefix
+                && saved.charAt(saved.length() - 1 - suffix) == html.charAt(html.length() - 1 - suffix)) {
+            suffix++;
+        }
+        if (suffix > 0 && Character.isLowSurrogate(html.charAt(html.length() - suffix))) {
+            suffix--;
+        }
+        final byte[] inserted = html.substring(prefix, html.length() - suffix).getBytes(StandardCharsets.UTF_8);
+        try (final FileOutputStream out = new FileOutputStream(getFile(JOURNAL), true)) {
+            final DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(prefix);
+            data.writeInt(saved.length() - suffix - prefix);
+            data.writeInt(inserted.length);
+            data.write(inserted);
+            data.flush();
+            out.getFD().sync();
+        }
+        journalLength += 12 + inserted.length;
+        records++;
+        saved = html;
+    }
+
+    /**
+     * write the complete HTML as a new checkpoint and start a new journal
+     */
+    private void checkpoint(final String html, final URL source, final String name) throws IOException {
+        dir.mkdirs();
+        final Properties info = new Properties();
+        if (source != null) {
+            info.setProperty(SOURCE, source.toString());
+        }
+        info.setProperty(NAME, name);
+        try (final AtomicFileWriter w = new AtomicFileWriter(getFile(INFO))) {
+            info.store(w, null);
+            w.commit();
+        }
+        try (final AtomicFileWriter w = new AtomicFileWriter(getFile(CHECKPOINT))) {
+            w.write(html);
+            w.commit();
+        }
+        try (final FileOutputStream out = new FileOutputStream(getFile(JOURNAL))) {
+            final DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(html.length());
+            data.writeInt(html.hashCode());
+            data.flush();
+            out.getFD().sync();
+        }
+        saved = html;
+        records = 0;
+        journalLength = 0;
+    }
+
+    /**
+     * remove the files of this journal
+     */
+    void delete() {
+        getFile(JOURNAL).delete();
+        getFile(CHECKPOINT).delete();
+        getFile(INFO).delete();
+        saved = null;
+    }
+
+    /**
+     * get the HTML saved last by replaying the journal on the checkpoint
+     */
+    String replay() throws IOException {
+        final String checkpoint = read(getFile(CHECKPOINT));
+        final StringBuilder html = new StringBuilder(checkpoint);
+        try (final DataInputStream data = new DataInputStream(new BufferedInputStream(new FileInputStream(
+            getFile(JOURNAL))))) {
+            if (data.readInt() != checkpoint.length() || data.readInt() != checkpoint.hashCode()) {
+                return checkpoint;
+            }
+            while (true) {
+                final int offset = data.readInt();
+                final int removed = data.readInt();
+                final byte[] inserted = new byte[data.readInt()];
+                data.readFully(inserted);
+                html.replace(offset, offset + removed, new String(inserted, StandardCharsets.UTF_8));
+            }
+        }
+        catch (final EOFException e) {
+            // end of the journal or an incomplete last record
+        }
+        return html.toString();
+    }
+
+    /**
+     * get the location of the document, null for a new document
+     */
+    URL getSource() throws IOException {
+        final String source = readInfo().getProperty(SOURCE);
+        return source == null ? null : new URL(source);
+    }
+
+    /**
+     * get the name of the document
+     */
+    String getName() throws IOException {
+        return readInfo().getProperty(NAME, id);
+    }
+
+    private Properties readInfo() throws IOException {
+        final Properties info = new Properties();
+        try (final Reader r = new InputStreamReader(new FileInputStream(getFile(INFO)), StandardCharsets.UTF_8)) {
+            info.load(r);
+        }
+        return info;
+    }
+
+    /**
+     * get the ids of the journals kept in a directory
+     */
+    static String[] list(final File dir) {
+        final String[] names = dir.list();
+        if (names == null) {
+            return new String[0];
+        }
+        int count = 0;
+        for (final String name : names) {
+            if (name.endsWith(INFO) && new File(dir, name.substring(0, name.length() - INFO.length()) + CHECKPOINT)
+                .exists()) {
+                names[count++] = name.substring(0, name.length() - INFO.length());
+            }
+        }
+        final String[] ids = new String[count];
+        System.arraycopy(names, 0, ids, 0, count);
+        return ids;
+    }
+
+    private File getFile(final String extension) {
+        return new File(dir, id + extension);
+    }
+
+    private static String read(final File file) throws IOException {
+        final StringBuilder sb = new StringBuilder((int) file.length());
+        try (final Reader r = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            final char[] buf = new char[8192];
+            int n;
+            while ((n = r.read(buf)) >= 0) {
+                sb.append(buf, 0, n);
+            }
+        }
+        return sb.toString();
+    }
+
+    /** the number of records after which a new checkpoint is written */
+    private static final int CHECKPOINT_RECORDS = 50;
+    /** the extension of the checkpoint file */
+    private static final String CHECKPOINT = ".html";
+    /** the extension of the journal file */
+    private static final String JOURNAL = ".journal";
+    /** the extension of the file with the location and name of the document */
+    private static final String INFO = ".properties";
+    private static final String SOURCE = "source";
+    private static final String NAME = "name";
+    /** the directory the files are kept in */
+    private final File dir;
+    /** the name of the files without extension */
+    private final String id;
+    /** the HTML saved last, null if nothing has been saved */
+    private String saved;
+    /** the number of records in the journal */
+    private int records;
+    /** the number of bytes of the records in the journal */
+    private long journalLength;
+}
@@ -21,19 +21,22 @@ package io.github.geniot.shtml;
 
 import java.awt.Color;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.channels.Channels;
-import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.prefs.Preferences;
-import java.util.stream.Stream;
 
+import javax.swing.SwingUtilities;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.UndoableEditEvent;
 import javax.swing.text.AbstractDocument;
@@ -41,8 +44,10 @@ import javax.swing.text.AttributeSet;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.Document;
 import javax.swing.text.Element;
+import javax.swing.text.ElementIterator;
 import javax.swing.text.GapContent;
 import javax.swing.text.MutableAttributeSet;
+import javax.swing.text.Position;
 import javax.swing.text.SimpleAttributeSet;
 import javax.swing.text.StyleConstants;
 import javax.swing.text.html.HTML;
@@ -76,6 +81,23 @@ public class SHTMLDocument extends HTMLDocument {
     private boolean inSetParagraphAttributes = false;
     private final boolean keepSpanTag = Util.preferenceIsTrue("keepSpanTag");
     private CopiedImageSources copiedExternalImagesSources = CopiedImageSources.NONE;
+    private volatile boolean loading = false;
+    /** maximum number of ElementSpecs inserted at once while a new document is read */
+    public static final int DEFAULT_SPEC_BATCH_SIZE = 100000;
+    /** number of ElementSpecs inserted by the first batch, so that the beginning shows early */
+    private static final int INITIAL_SPEC_BATCH_SIZE = 1000;
+    private int specBatchSize = DEFAULT_SPEC_BATCH_SIZE;
+    /** ElementSpecs handed over by the reader but not inserted yet */
+    private Vector<ElementSpec> specBatch = new Vector<ElementSpec>();
+    /** the offset to insert specBatch at */
+    private int specBatchOffset;
+    /** the number of ElementSpecs after which specBatch is inserted */
+    private int specBatchLimit;
+    private boolean batchingSpecs = false;
+    private BlockHtmlCache blockHtmlCache;
+    private ComputedStyleCache computedStyleCache;
+    /** the copies of external images made for this document */
+    private ImageStore imageStore;
 
     /**
      * Constructs an SHTMLDocument.
@@ -174,6 +196,129 @@ public class SHTMLDocument extends HTMLDocument {
         }
     }
 
+    /**
+     * Inserts child elements described by ElementSpecs.
+     *
+     * <p>Works like <code>insertHTML</code> of <code>HTMLDocument</code>,
+     * but takes the ElementSpecs the HTML would be read into, so that
+     * elements can be inserted without writing and reading HTML.</p>
+     *
+     * @param parent  the element to insert child elements into
+     * @param index  the index of the child element to insert before, the
+     *        number of child elements to append
+     * @param specs  the ElementSpecs of the elements to insert, starting
+     *        and ending at the level of the children of parent
+     *
+     * @return the offset the elements were inserted at
+     */
+    public int insertElements(final Element parent, final int index, final ElementSpec[] specs)
+            throws BadLocationException {
+        int offset;
+        if (index < parent.getElementCount()) {
+            offset = parent.getElement(index).getStartOffset();
+        }
+        else {
+            offset = parent.getEndOffset();
+            if (parent.getElement(parent.getElementIndex(offset - 1)).isLeaf()
+                    && getText(offset - 1, 1).charAt(0) == '\n') {
+                offset--;
+            }
+        }
+        final int lastOffset = Math.max(0, offset - 1);
+        Element commonParent = parent;
+        int push = 0;
+        while (commonParent != null && commonParent.getStartOffset() > lastOffset) {
+            commonParent = commonParent.getParentElement();
+            push++;
+        }
+        if (commonParent == null) {
+            throw new BadLocationException("No common parent", offset);
+        }
+        int pop = 0;
+        for (Element e = getCharacterElement(lastOffset); e != null && e != commonParent; e = e.getParentElement()) {
+            pop++;
+        }
+        final Vector<ElementSpec> data = new Vector<ElementSpec>(pop + push + specs.length);
+        for (int i = 1; i < pop; i++) {
+            data.addElement(new ElementSpec(null, ElementSpec.EndTagType));
+        }
+        for (int i = 0; i < push; i++) {
+            final ElementSpec spec = new ElementSpec(null, ElementSpec.StartTagType);
+            spec.setDirection(ElementSpec.JoinNextDirection);
+            data.addElement(spec);
+        }
+        data.addAll(Arrays.asList(specs));
+        insert(offset, data.toArray(new ElementSpec[data.size()]));
+        return offset;
+    }
+
+    /**
+     * Inserts copies of elements as child elements of another element. The
+     * copies are made from the elements and their text directly, so the time
+     * taken depends on the size of the copied elements only.
+     *
+     * @param parent  the element to insert the copies into
+     * @param index  the index of the child element to insert before, the
+     *        number of child elements to append
+     * @param elements  the elements to copy
+     */
+    public void insertElementCopies(final Element parent, final int index, final Element[] elements)
+            throws BadLocationException {
+        final Vector<ElementSpec> specs = new Vector<ElementSpec>();
+        for (final Element e : elements) {
+            addElementSpecs(specs, e);
+        }
+        insertElements(parent, index, specs.toArray(new ElementSpec[specs.size()]));
+    }
+
+    /**
+     * Adds the ElementSpecs of a copy of an element and its text to a list
+     * of ElementSpecs.
+     *
+     * @param specs  the list to add to
+     * @param e  the element to copy
+     */
+    void addElementSpecs(final Vector<ElementSpec> specs, final Element e) throws BadLocationException {
+        if (e.isLeaf()) {
+            final int start = e.getStartOffset();
+            final char[] text = getText(start, Math.min(e.getEndOffset(), getLength()) - start).toCharArray();
+            specs.addElement(new ElementSpec(e.getAttributes().copyAttributes(), ElementSpec.ContentType, text, 0,
+                text.length));
+        }
+        else {
+            specs.addElement(new ElementSpec(e.getAttributes().copyAttributes(), ElementSpec.StartTagType));
+            for (int i = 0; i < e.getElementCount(); i++) {
+                addElementSpecs(specs, e.getElement(i));
+            }
+            specs.addElement(new ElementSpec(null, ElementSpec.EndTagType));
+        }
+    }
+
+    /**
+     * Moves a child element to another place among its siblings, e.g. a
+     * table row up or down.
+     *
+     * @param parent  the parent of the element to move
+     * @param index  the index of the element to move
+     * @param newIndex  the index of the child element to move it before, the
+     *        number of child elements to move it to the end
+     */
+    public void moveElement(final Element parent, final int index, final int newIndex) throws BadLocationException {
+        if (newIndex == index || newIndex == index + 1) {
+            return;
+        }
+        final Element e = parent.getElement(index);
+        try {
+            startCompoundEdit();
+            insertElementCopies(parent, newIndex, new Element[] {e});
+            final Element currentParent = e.getParentElement();
+            removeElements(currentParent, currentParent.getElementIndex(e.getStartOffset()), 1);
+        }
+        finally {
+            endCompoundEdit();
+        }
+    }
+
     /* (non-Javadoc)
      * @see javax.swing.text.html.HTMLDocument#setOuterHTML(javax.swing.text.Element, java.lang.String)
      */
@@ -274,28 +419,132 @@ public class SHTMLDocument extends HTMLDocument {
         }
     }
 
+    /**
+     * Inserts ElementSpecs. While a new document is read, the ElementSpecs
+     * handed over by the reader are collected and inserted in batches
+     * instead, which saves a <code>DocumentEvent</code> and a pass through
+     * the element structure for each flush of the reader.
+     *
+     * <p>The reader keeps passing the same offset as long as the document
+     * does not grow, so consecutive ElementSpecs simply are appended to the
+     * batch. The first batch is small to show the beginning of the document
+     * early, following batches grow up to the size set with
+     * <code>setSpecBatchSize</code>.</p>
+     */
     @Override
     protected void insert(int offset, ElementSpec[] data) throws BadLocationException {
-        copyExternalImages(data);
+        if (specBatch.size() > 0 && offset != specBatchOffset) {
+            final int oldLength = getLength();
+            insertSpecBatch();
+            if (offset > specBatchOffset) {
+                offset += getLength() - oldLength;
+            }
+        }
+        if (specBatch.size() > 0 || batchingSpecs) {
+            if (specBatch.size() == 0) {
+                specBatchOffset = offset;
+            }
+            specBatch.addAll(Arrays.asList(data));
+            if (!batchingSpecs || specBatch.size() >= specBatchLimit) {
+                specBatchLimit = Math.min(specBatchLimit * 4, specBatchSize);
+                insertSpecBatch();
+            }
+            return;
+        }
+        final Vector<ExternalImage> images = copyExternalImages(data, offset);
         super.insert(offset, data);
+        copyExternalImagesLater(images);
     }
 
-    private void copyExternalImages(ElementSpec[] data) {
-        if(copiedExternalImagesSources == CopiedImageSources.NONE)
+    /**
+     * get the HTML recorded for the children of the body by the
+     * <code>SHTMLWriter</code>s having written this document
+     */
+    synchronized BlockHtmlCache getBlockHtmlCache() {
+        if (blockHtmlCache == null) {
+            blockHtmlCache = new BlockHtmlCache(this);
+        }
+        return blockHtmlCache;
+    }
+
+    /**
+     * get the attributes kept for the elements of this document, as
+     * combined from the element tree and the style sheet
+     */
+    synchronized ComputedStyleCache getComputedStyleCache() {
+        if (computedStyleCache == null) {
+            computedStyleCache = new ComputedStyleCache(this);
+        }
+        return computedStyleCache;
+    }
+
+    /**
+     * set the maximum number of ElementSpecs inserted at once while a new
+     * document is read
+     *
+     * @param size  the number of ElementSpecs, 1 to insert them as they are read
+     */
+    public void setSpecBatchSize(final int size) {
+        specBatchSize = Math.max(size, 1);
+    }
+
+    public int getSpecBatchSize() {
+        return specBatchSize;
+    }
+
+    /**
+     * start or stop collecting ElementSpecs in batches. When stopped, the
+     * collected ElementSpecs are inserted together with the next ones
+     * handed over by the reader.
+     */
+    void setBatchingSpecs(final boolean batchingSpecs) {
+        if (batchingSpecs && !this.batchingSpecs) {
+            specBatchLimit = Math.min(INITIAL_SPEC_BATCH_SIZE, specBatchSize);
+        }
+        this.batchingSpecs = batchingSpecs;
+    }
+
+    /**
+     * stop collecting ElementSpecs and insert the ones collected so far
+     */
+    void endSpecBatch() throws BadLocationException {
+        batchingSpecs = false;
+        insertSpecBatch();
+    }
+
+    private void insertSpecBatch() throws BadLocationException {
+        if (specBatch.size() == 0) {
             return;
+        }
+        final ElementSpec[] data = specBatch.toArray(new ElementSpec[specBatch.size()]);
+        specBatch.clear();
+        final Vector<ExternalImage> images = copyExternalImages(data, specBatchOffset);
+        super.insert(specBatchOffset, data);
+        copyExternalImagesLater(images);
+    }
+
+    private Vector<ExternalImage> copyExternalImages(ElementSpec[] data, int offset) {
+        final Vector<ExternalImage> images = new Vector<ExternalImage>();
+        if(copiedExternalImagesSources == CopiedImageSources.NONE)
+            return images;
         URL base = getBase();
         if(base == null || ! base.getProtocol().equalsIgnoreCase("file"))
-            return;
+            return images;
         try {
-            Stream.of(data).forEach(this::copyExternalImagesForElementSpec);
+            for (ElementSpec spec : data) {
+                copyExternalImagesForElementSpec(spec, offset, images);
+                if (spec.getType() == ElementSpec.ContentType) {
+                    offset += spec.getLength();
+                }
+            }
         }
         catch (final UnknownDocumentBaseException e) {
             Util.errMsg(null, e.getMessage(), null);
         }
-        
+        return images;
     }
     
-    private void copyExternalImagesForElementSpec(ElementSpec data) {
+    private void copyExternalImagesForElementSpec(ElementSpec data, int offset, Vector<ExternalImage> images) {
         AttributeSet attributes = data.getAttributes();
         if(!(attributes instanceof MutableAttributeSet) || !HTML.Tag.IMG.equals(attributes.getAttribute(StyleConstants.NameAttribute))) {
          return;   
@@ -319,15 +568,14 @@ public class SHTMLDocument extends HTMLDocument {
                     return;
                 }
             }
-            String imageExtension = source.substring(extensionIndex);
-            imageDirectory.mkdirs();
-            File imageCopy = File.createTempFile("image-", imageExtension, imageDirectory);
-            try(
-                    ReadableByteChannel rbc = Channels.newChannel(sourceUrl.openStream());
-                    FileOutputStream fos = new FileOutputStream(imageCopy)){
-                fos.getChannel().transferFrom(rbc, 0, Long.MAX_VALUE);
-                ((MutableAttributeSet)attributes).addAttribute(HTML.Attribute.SRC, imageDirectory.getName() + '/' + imageCopy.getName());
+            ImageStore store = getImageStore(imageDirectory);
+            String imageName = store.getStored(sourceUrl);
+            if(imageName != null) {
+                ((MutableAttributeSet)attributes).addAttribute(HTML.Attribute.SRC, imageDirectory.getName() + '/' + imageName);
+                return;
             }
+            // the image is shown from its source until it is copied
+            images.add(new ExternalImage(offset, source, sourceUrl, source.substring(extensionIndex), store));
         }
         catch (UnknownDocumentBaseException e) {
             ((MutableAttributeSet)attributes).addAttribute(HTML.Attribute.SRC, "");
@@ -338,6 +586,108 @@ public class SHTMLDocument extends HTMLDocument {
         }
     }
 
+    /**
+     * copy the external images inserted just now on background threads.
+     * Once all of them are copied, their elements are changed to refer to
+     * the copies.
+     */
+    private void copyExternalImagesLater(final Vector<ExternalImage> images) throws BadLocationException {
+        if (images.isEmpty()) {
+            return;
+        }
+        final Map<String, CompletableFuture<String>> copies = new LinkedHashMap<String, CompletableFuture<String>>();
+        for (ExternalImage image : images) {
+            image.position = createPosition(image.offset);
+            image.copy = copies.get(image.url.toString());
+            if (image.copy == null) {
+                image.copy = image.store.storeLater(image.url, image.extension);
+                copies.put(image.url.toString(), image.copy);
+            }
+        }
+        CompletableFuture.allOf(copies.values().toArray(new CompletableFuture<?>[copies.size()]))
+            .whenComplete((result, e) -> SwingUtilities.invokeLater(() -> setExternalImageSources(images)));
+    }
+
+    /**
+     * let the elements of external images refer to their copies, all in
+     * one change of the document
+     */
+    private void setExternalImageSources(final Vector<ExternalImage> images) {
+        int start = Integer.MAX_VALUE;
+        int end = -1;
+        writeLock();
+        try {
+            for (ExternalImage image : images) {
+                final String imageName;
+                try {
+                    imageName = image.copy.join();
+                }
+                catch (CompletionException e) {
+                    e.getCause().printStackTrace();
+                    continue;
+                }
+                final int offset = image.position.getOffset();
+                final Element e = getCharacterElement(offset);
+                final AttributeSet a = e.getAttributes();
+                if (e.getStartOffset() != offset || !HTML.Tag.IMG.equals(a.getAttribute(StyleConstants.NameAttribute))
+                        || !image.source.equals(a.getAttribute(HTML.Attribute.SRC))) {
+                    continue; // removed meanwhile
+                }
+                ((MutableAttributeSet) a).addAttribute(HTML.Attribute.SRC,
+                    image.store.getDirectory().getName() + '/' + imageName);
+                start = Math.min(start, offset);
+                end = Math.max(end, offset + 1);
+            }
+            if (end > start) {
+                final DefaultDocumentEvent changes = new DefaultDocumentEvent(start, end - start,
+                    DocumentEvent.EventType.CHANGE);
+                changes.end();
+                fireChangedUpdate(changes);
+            }
+        }
+        finally {
+            writeUnlock();
+        }
+    }
+
+    /**
+     * An external image inserted into the document, which is copied to the
+     * image directory of the document in the background.
+     */
+    private static class ExternalImage {
+        ExternalImage(final int offset, final String source, final URL url, final String extension,
+                      final ImageStore store) {
+            this.offset = offset;
+            this.source = source;
+            this.url = url;
+            this.extension = extension;
+            this.store = store;
+        }
+
+        /** the offset the image is inserted at */
+        final int offset;
+        /** the source of the image as inserted */
+        final String source;
+        final URL url;
+        final String extension;
+        /** the store the copy is made in */
+        final ImageStore store;
+        /** the position of the image after it was inserted */
+        Position position;
+        /** the name of the copy, once it is made */
+        CompletableFuture<String> copy;
+    }
+
+    /**
+     * get the store for copies of external images in the given directory
+     */
+    private ImageStore getImageStore(final File imageDirectory) {
+        if (imageStore == null || !imageStore.getDirectory().equals(imageDirectory)) {
+            imageStore = new ImageStore(imageDirectory);
+        }
+        return imageStore;
+    }
+
     /** */
     public void replaceHTML(final Element firstElement, final int number, final String htmlText)
             throws BadLocationException, IOException {
@@ -376,7 +726,22 @@ public class SHTMLDocument extends HTMLDocument {
         }
     }
 
+    /**
+     * indicate whether or not the document is being loaded, changes made
+     * while loading are not undoable
+     */
+    void setLoading(final boolean loading) {
+        this.loading = loading;
+    }
+
+    boolean isLoading() {
+        return loading;
+    }
+
     protected void fireUndoableEditUpdate(final UndoableEditEvent e) {
+        if (loading) {
+            return;
+        }
         if (compoundEditDepth == 0) {
             super.fireUndoableEditUpdate(e);
         }
@@ -388,6 +753,160 @@ public class SHTMLDocument extends HTMLDocument {
         }
     }
 
+    /**
+     * Replace a number of ranges of the document by a given text as one
+     * undoable edit.
+     *
+     * <p>If no range spans more than one paragraph, all ranges are replaced
+     * under one write lock and listeners are notified once at the end: by a
+     * removal of the text from the start of the first range to the end of the
+     * last one, carrying the changes of all paragraphs touched, and by an
+     * insertion of the replaced text. Otherwise the ranges are replaced one
+     * by one.</p>
+     *
+     * @param starts  the start offsets of the ranges in ascending order
+     * @param ends  the end offsets of the ranges, ranges must not overlap
+     * @param replacement  the text to replace the ranges with
+     */
+    public void replaceAll(final int[] starts, final int[] ends, final String replacement)
+            throws BadLocationException {
+        final int count = starts.length;
+        if (count == 0) {
+            return;
+        }
+        writeLock();
+        startCompoundEdit();
+        try {
+            if (canReplaceInParagraphs(starts, ends, replacement)) {
+                replaceInParagraphs(starts, ends, replacement);
+            }
+            else {
+                for (int i = count - 1; i >= 0; i--) {
+                    replace(starts[i], ends[i] - starts[i], replacement, getCharacterAttributesAt(starts[i]));
+                }
+            }
+        }
+        finally {
+            endCompoundEdit();
+            writeUnlock();
+        }
+    }
+
+    /**
+     * check whether or not the ranges given to replaceAll can be replaced
+     * without notifying listeners about each single replacement
+     *
+     * @throws IllegalArgumentException if the ranges are not ascending or overlap
+     */
+    private boolean canReplaceInParagraphs(final int[] starts, final int[] ends, final String replacement) {
+        int previousEnd = 0;
+        boolean inParagraphs = true;
+        for (int i = 0; i < starts.length; i++) {
+            if (starts[i] < previousEnd || ends[i] < starts[i] || ends[i] > getLength()) {
+                throw new IllegalArgumentException("ranges must be ascending and must not overlap");
+            }
+            if (ends[i] >= getParagraphElement(starts[i]).getEndOffset()) {
+                inParagraphs = false;
+            }
+            previousEnd = ends[i];
+        }
+        if (!inParagraphs || getDocumentFilter() != null) {
+            return false;
+        }
+        if (!Boolean.TRUE.equals(getProperty("i18n"))) {
+            // text which might need bidirectional or complex layout turns on i18n
+            // in AbstractDocument.insertString, leave that to the regular path
+            for (int i = 0; i < replacement.length(); i++) {
+                if (replacement.charAt(i) >= '\u0590') {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * replace ranges within paragraphs, collecting the element changes
+     * of all replacements for one notification
+     */
+    private void replaceInParagraphs(final int[] starts, final int[] ends, final String replacement)
+            throws BadLocationException {
+        final int count = starts.length;
+        final Map<Element, Element[]> oldChildren = new LinkedHashMap<Element, Element[]>();
+        final int rangeStart = starts[0];
+        final int rangeLength = ends[count - 1] - rangeStart;
+        int lengthChange = 0;
+        // replace from the end so that the offsets of the other ranges stay valid
+        for (int i = count - 1; i >= 0; i--) {
+            final int start = starts[i];
+            final int length = ends[i] - start;
+            for (Element e = getParagraphElement(start); e != null && !oldChildren.containsKey(e); e = e.getParentElement()) {
+                oldChildren.put(e, getChildren(e));
+            }
+            final AttributeSet a = getCharacterAttributesAt(start);
+            if (length > 0) {
+                final DefaultDocumentEvent removal = new DefaultDocumentEvent(start, length,
+                    DocumentEvent.EventType.REMOVE);
+                removeUpdate(removal);
+                final UndoableEdit removed = getContent().remove(start, length);
+                if (removed != null) {
+                    removal.addEdit(removed);
+                }
+                postRemoveUpdate(removal);
+                removal.end();
+                fireUndoableEditUpdate(new UndoableEditEvent(this, removal));
+            }
+            if (replacement.length() > 0) {
+                final DefaultDocumentEvent insertion = new DefaultDocumentEvent(start, replacement.length(),
+                    DocumentEvent.EventType.INSERT);
+                final UndoableEdit inserted = getContent().insertString(start, replacement);
+                if (inserted != null) {
+                    insertion.addEdit(inserted);
+                }
+                insertUpdate(insertion, a);
+                insertion.end();
+                fireUndoableEditUpdate(new UndoableEditEvent(this, insertion));
+            }
+            lengthChange += replacement.length() - length;
+        }
+        final DefaultDocumentEvent removal = new DefaultDocumentEvent(rangeStart, rangeLength,
+            DocumentEvent.EventType.REMOVE);
+        final DefaultDocumentEvent insertion = new DefaultDocumentEvent(rangeStart, rangeLength + lengthChange,
+            DocumentEvent.EventType.INSERT);
+        /*
+         * views only pass a removal on to the view at its start offset, so the element
+         * changes go with the insertion, which reaches all views of the replaced text
+         */
+        final DefaultDocumentEvent changes = insertion.getLength() > 0 ? insertion : removal;
+        for (final Map.Entry<Element, Element[]> entry : oldChildren.entrySet()) {
+            final Element e = entry.getKey();
+            final Element[] children = getChildren(e);
+            if (!Arrays.equals(children, entry.getValue())) {
+                changes.addEdit(new ElementEdit(e, 0, entry.getValue(), children));
+            }
+        }
+        removal.end();
+        insertion.end();
+        if (removal.getLength() > 0) {
+            fireRemoveUpdate(removal);
+        }
+        if (insertion.getLength() > 0) {
+            fireInsertUpdate(insertion);
+        }
+    }
+
+    private AttributeSet getCharacterAttributesAt(final int offset) {
+        return getCharacterElement(offset).getAttributes().copyAttributes();
+    }
+
+    private static Element[] getChildren(final Element e) {
+        final Element[] children = new Element[e.getElementCount()];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = e.getElement(i);
+        }
+        return children;
+    }
+
     /* ------------------ custom document title handling start -------------------- */
     /**
      * set the title of this SHTMLDocument
@@ -535,6 +1054,20 @@ public class SHTMLDocument extends HTMLDocument {
             super(offset, 0, 0, null);
             this.newDocument = newDocument;
             inBody = false;
+            if (newDocument) {
+                setBatchingSpecs(true);
+            }
+        }
+
+        /**
+         * Inserts what is left to insert. The ElementSpecs still collected
+         * in a batch go along with the last ones of the reader, so that the
+         * end of the document is adjusted once all of them are inserted.
+         */
+        public void flush() throws BadLocationException {
+            setBatchingSpecs(false);
+            super.flush();
+            endSpecBatch();
         }
 
         /**
@@ -778,6 +1311,47 @@ public class SHTMLDocument extends HTMLDocument {
         return set;
     }
 
+    /**
+     * get the names of the files in a directory referenced by the
+     * <code>IMG</code> elements of this document
+     *
+     * @param dir  the directory
+     *
+     * @return the names of the referenced files in the directory
+     */
+    public Set<String> getImageFileNames(final File dir) throws IOException {
+        final Set<String> names = new HashSet<String>();
+        final String dirPath = dir.getCanonicalPath() + File.separatorChar;
+        final URL base = getBase();
+        readLock();
+        try {
+            final ElementIterator it = new ElementIterator(this);
+            for (Element e = it.first(); e != null; e = it.next()) {
+                final AttributeSet a = e.getAttributes();
+                final Object src = a.getAttribute(HTML.Attribute.SRC);
+                if (src == null || !HTML.Tag.IMG.equals(a.getAttribute(StyleConstants.NameAttribute))) {
+                    continue;
+                }
+                try {
+                    final URL url = new URL(base, src.toString());
+                    if (url.getProtocol().equalsIgnoreCase("file")) {
+                        final String path = new File(url.getPath()).getCanonicalPath();
+                        if (path.startsWith(dirPath) && path.indexOf(File.separatorChar, dirPath.length()) < 0) {
+                            names.add(path.substring(dirPath.length()));
+                        }
+                    }
+                }
+                catch (final MalformedURLException ex) {
+                    // not an image file in the directory
+                }
+            }
+        }
+        finally {
+            readUnlock();
+        }
+        return names;
+    }
+
     public File getImageDirectory() {
         String prefsDir = Preferences.userRoot().get(ImageDialog.PREF_IMG_DIR, null);
         return prefsDir == null ? SHTMLDocument.getImageDirectory(getBase()) : new File(prefsDir);
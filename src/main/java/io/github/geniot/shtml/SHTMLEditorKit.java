@@ -117,6 +117,12 @@ public class SHTMLEditorKit extends HTMLEditorKit {
         doc.setParser(getParser());
         doc.setAsynchronousLoadPriority(-1);
         doc.setTokenThreshold(1);
+        try {
+            doc.setSpecBatchSize(Integer.parseInt(Util.getPreference("spec_batch_size",
+                Integer.toString(SHTMLDocument.DEFAULT_SPEC_BATCH_SIZE)).trim()));
+        }
+        catch (final NumberFormatException e) {
+        }
         return doc;
     }
 
@@ -149,12 +155,22 @@ public class SHTMLEditorKit extends HTMLEditorKit {
                 throw new BadLocationException("Invalid location", pos);
             }
             final ParserCallback receiver = hdoc.getReader(pos);
-            if (doc.getLength() == 0) {
-                final Boolean ignoreCharset = (Boolean) doc.getProperty("IgnoreCharsetDirective");
-                parser.parse(in, receiver, (ignoreCharset == null) ? false : ignoreCharset.booleanValue());
+            try {
+                if (doc.getLength() == 0) {
+                    final Boolean ignoreCharset = (Boolean) doc.getProperty("IgnoreCharsetDirective");
+                    parser.parse(in, receiver, (ignoreCharset == null) ? false : ignoreCharset.booleanValue());
+                }
+                else {
+                    parser.parse(in, receiver, true);
+                }
             }
-            else {
-                parser.parse(in, receiver, true);
+            catch (final IOException e) {
+                hdoc.endSpecBatch(); // keep what was read so far
+                throw e;
+            }
+            catch (final RuntimeException e) {
+                hdoc.endSpecBatch();
+                throw e;
             }
             receiver.flush();
         }
@@ -28,10 +28,17 @@ import java.awt.event.ActionEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.TimerTask;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.prefs.Preferences;
 
 import javax.swing.AbstractAction;
@@ -40,9 +47,12 @@ import javax.swing.JEditorPane;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
+import javax.swing.JTabbedPane;
 import javax.swing.JToggleButton;
+import javax.swing.SwingUtilities;
 import javax.swing.text.AttributeSet;
 import javax.swing.text.DefaultEditorKit;
+import javax.swing.text.Document;
 import javax.swing.text.Element;
 import javax.swing.text.JTextComponent;
 import javax.swing.text.SimpleAttributeSet;
@@ -62,7 +72,7 @@ class SHTMLEditorKitActions {
     /**
      * action to set the style
      */
-    static class SetStyleAction extends AbstractAction implements SHTMLAction {
+    static class SetStyleAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -95,12 +105,16 @@ class SHTMLEditorKitActions {
         public void update() {
         	setEnabled(panel.isWYSIWYGEditorActive());
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT;
+        }
     }
 
     /**
      * append a new table col
      */
-    static class AppendTableColAction extends AbstractAction implements SHTMLAction {
+    static class AppendTableColAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -119,6 +133,10 @@ class SHTMLEditorKitActions {
         public void update() {
         	setEnabled(panel.isWYSIWYGEditorActive() && panel.getSHTMLEditorPane().getCurrentTableCell() != null);
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT | TABLE_CELL;
+        }
     }
 
     /**
@@ -126,7 +144,7 @@ class SHTMLEditorKitActions {
      * based on the paragraph tag previously stored in the tag selector; tag selector
      * is a combo box. If constructed when the tag name passed, it applies that tag. 
      */
-    static class SetTagAction extends AbstractAction implements SHTMLAction {
+    static class SetTagAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -167,12 +185,16 @@ class SHTMLEditorKitActions {
         	setEnabled(panel.isWYSIWYGEditorActive());
         }
 
+        public int getUpdateDependencies() {
+            return DOCUMENT;
+        }
+
     }
 
     /**
      * append a new table row
      */
-    static class AppendTableRowAction extends AbstractAction implements SHTMLAction {
+    static class AppendTableRowAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -191,13 +213,17 @@ class SHTMLEditorKitActions {
         public void update() {
         	setEnabled(panel.isWYSIWYGEditorActive() && panel.getSHTMLEditorPane().getCurrentTableCell() != null);
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT | TABLE_CELL;
+        }
     }
 
     /*
      * Created on 20.08.2006
      * Copyright (C) 2006 Dimitri Polivaev
      */
-    static class BoldAction extends StyledEditorKit.BoldAction implements SHTMLAction, AttributeComponent {
+    static class BoldAction extends StyledEditorKit.BoldAction implements StateDependentAction, AttributeComponent {
         /**
          *
          */
@@ -246,6 +272,10 @@ class SHTMLEditorKitActions {
         	 this.setEnabled(panel.isWYSIWYGEditorActive());
         }
 
+        public int getUpdateDependencies() {
+            return DOCUMENT;
+        }
+
         /**
          * set the value of this <code>AttributeComponent</code>
          *
@@ -305,7 +335,7 @@ class SHTMLEditorKitActions {
     /**
      * Applies a text attribute. (Used to be ToggleAction.)
      */
-    static class ApplyCSSAttributeAction extends AbstractAction implements SHTMLAction, AttributeComponent {
+    static class ApplyCSSAttributeAction extends AbstractAction implements StateDependentAction, AttributeComponent {
         /**
          *
          */
@@ -416,12 +446,16 @@ class SHTMLEditorKitActions {
         public void update() {
         	 this.setEnabled(panel.isWYSIWYGEditorActive());
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT;
+        }
     }
 
     /**
      * delete a table col
      */
-    static class DeleteTableColAction extends AbstractAction implements SHTMLAction {
+    static class DeleteTableColAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -440,6 +474,10 @@ class SHTMLEditorKitActions {
         public void update() {
         	setEnabled(panel.isWYSIWYGEditorActive() && panel.getSHTMLEditorPane().getCurrentTableCell() != null);
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT | TABLE_CELL;
+        }
     }
 
     /**
@@ -489,7 +527,7 @@ class SHTMLEditorKitActions {
     /**
      * delete a table row
      */
-    static class DeleteTableRowAction extends AbstractAction implements SHTMLAction {
+    static class DeleteTableRowAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -508,12 +546,16 @@ class SHTMLEditorKitActions {
         public void update() {
         	setEnabled(panel.isWYSIWYGEditorActive() && panel.getSHTMLEditorPane().getCurrentTableCell() != null);
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT | TABLE_CELL;
+        }
     }
 
     /**
      * toggle list formatting for a given type of list on/off
      */
-    static class ToggleListAction extends AbstractAction implements SHTMLAction {
+    static class ToggleListAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -538,12 +580,16 @@ class SHTMLEditorKitActions {
         public void update() {
         	setEnabled(panel.isWYSIWYGEditorActive());
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT;
+        }
     }
 
     /**
      * set the title of the currently active document
      */
-    static class DocumentTitleAction extends AbstractAction implements SHTMLAction {
+    static class DocumentTitleAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -574,13 +620,17 @@ class SHTMLEditorKitActions {
         public void update() {
         	 this.setEnabled(panel.isWYSIWYGEditorActive());
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT;
+        }
     }
 
     /*
      * Created on 20.08.2006
      * Copyright (C) 2006 Dimitri Polivaev
      */
-    static class UnderlineAction extends StyledEditorKit.UnderlineAction implements SHTMLAction, AttributeComponent {
+    static class UnderlineAction extends StyledEditorKit.UnderlineAction implements StateDependentAction, AttributeComponent {
         /**
          *
          */
@@ -626,6 +676,10 @@ class SHTMLEditorKitActions {
         	setEnabled(panel.isWYSIWYGEditorActive());
         }
 
+        public int getUpdateDependencies() {
+            return DOCUMENT;
+        }
+
         /**
          * set the value of this <code>AttributeComponent</code>
          *
@@ -787,7 +841,7 @@ class SHTMLEditorKitActions {
     /**
        * action to edit anchors inside a document
        */
-    static class EditAnchorsAction extends AbstractAction implements SHTMLAction {
+    static class EditAnchorsAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -812,12 +866,16 @@ class SHTMLEditorKitActions {
         public void update() {
         	 this.setEnabled(panel.isWYSIWYGEditorActive());
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT;
+        }
     }
 
     /**
      * action to edit a link
      */
-    static class EditLinkAction extends AbstractAction implements SHTMLAction {
+    static class EditLinkAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -864,12 +922,16 @@ class SHTMLEditorKitActions {
                 this.setEnabled(false);
             }
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT | SELECTION;
+        }
     }
 
     /**
      * Is an action to open a hyperlink.
      */
-    static class OpenLinkAction extends AbstractAction implements SHTMLAction {
+    static class OpenLinkAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -907,12 +969,16 @@ class SHTMLEditorKitActions {
                 this.setEnabled(false);
             }
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT | SELECTION;
+        }
     }
 
     /**
      * UndoAction for the edit menu
      */
-    static class UndoAction extends AbstractAction implements SHTMLAction {
+    static class UndoAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -943,12 +1009,16 @@ class SHTMLEditorKitActions {
             setEnabled(panel.isWYSIWYGEditorActive() && panel.getUndo().canUndo());
         }
 
+        public int getUpdateDependencies() {
+            return DOCUMENT | UNDO;
+        }
+
     }
 
     /**
      * action to change the paragraph style
      */
-    static class EditNamedStyleAction extends AbstractAction implements SHTMLAction {
+    static class EditNamedStyleAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -974,9 +1044,13 @@ class SHTMLEditorKitActions {
         public void update() {
         	setEnabled(panel.isWYSIWYGEditorActive());
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT;
+        }
     }
 
-	static public class RemoveStyleAttributeAction extends AbstractAction implements SHTMLAction {
+	static public class RemoveStyleAttributeAction extends AbstractAction implements StateDependentAction {
 	    final private Object[] attributes;
 
 	    private final SHTMLPanelImpl panel;
@@ -1005,10 +1079,14 @@ class SHTMLEditorKitActions {
         public void update() {
             this.setEnabled(panel.isWYSIWYGEditorActive());
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT;
+        }
    }
 	
 	
-    static class ClearFormatAction extends AbstractAction implements SHTMLAction {
+    static class ClearFormatAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -1042,12 +1120,17 @@ class SHTMLEditorKitActions {
         public void update() {
         	 this.setEnabled(panel.isWYSIWYGEditorActive());
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT;
+        }
     }
 
     /**
      * action to find and replace a given text
      */
-    static class MultipleDocFindReplaceAction extends AbstractAction implements SHTMLAction, FindReplaceListener {
+    static class MultipleDocFindReplaceAction extends AbstractAction implements StateDependentAction, FindReplaceListener,
+            ProjectSearch.DocumentGroup {
         /**
          *
          */
@@ -1085,6 +1168,10 @@ class SHTMLEditorKitActions {
             }
         }
 
+        public int getUpdateDependencies() {
+            return DOCUMENT;
+        }
+
 
         public void getNextDocument(final FindReplaceEvent e) {
             final FindReplaceDialog frd = (FindReplaceDialog) e.getSource();
@@ -1113,6 +1200,30 @@ class SHTMLEditorKitActions {
             editor.requestFocus();
         }
 
+        public int getDocumentCount() {
+            return panel.getTabbedPaneForDocuments().getTabCount();
+        }
+
+        public Document getDocument(final int index) {
+            return ((DocumentPane) panel.getTabbedPaneForDocuments().getComponentAt(index)).getDocument();
+        }
+
+        public String getDocumentTitle(final int index) {
+            return panel.getTabbedPaneForDocuments().getTitleAt(index);
+        }
+
+        public JEditorPane showDocument(final Document doc) {
+            final JTabbedPane tabbedPane = panel.getTabbedPaneForDocuments();
+            for (int i = 0; i < tabbedPane.getTabCount(); i++) {
+                final DocumentPane docPane = (DocumentPane) tabbedPane.getComponentAt(i);
+                if (docPane.getDocument() == doc) {
+                    tabbedPane.setSelectedIndex(i);
+                    return docPane.getEditor();
+                }
+            }
+            return null;
+        }
+
         private void resumeWithNewEditor(final FindReplaceDialog frd, final int tabNo) {
             panel.getTabbedPaneForDocuments().setSelectedIndex(tabNo);
             final DocumentPane docPane = (DocumentPane) panel.getTabbedPaneForDocuments().getComponentAt(tabNo);
@@ -1129,7 +1240,7 @@ class SHTMLEditorKitActions {
     /**
      * action to find and replace a given text
      */
-    static class SingleDocFindReplaceAction extends AbstractAction implements SHTMLAction {
+    static class SingleDocFindReplaceAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -1162,6 +1273,10 @@ class SHTMLEditorKitActions {
             }
         }
 
+        public int getUpdateDependencies() {
+            return DOCUMENT;
+        }
+
         public void findReplaceTerminated(final FindReplaceEvent e) {
             if (currentDocumentPane.isVisible()) {
                 final JEditorPane editor = currentDocumentPane.getEditor();
@@ -1177,7 +1292,7 @@ class SHTMLEditorKitActions {
     /**
      * Show a dialog to format fonts
      */
-    static class FontAction extends AbstractAction implements SHTMLAction {
+    static class FontAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -1209,12 +1324,16 @@ class SHTMLEditorKitActions {
         public void update() {
         	setEnabled(panel.isWYSIWYGEditorActive());
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT;
+        }
     }
 
     /**
      * change a font family setting
      */
-    static class FontFamilyAction extends AbstractAction implements SHTMLAction {
+    static class FontFamilyAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -1237,12 +1356,16 @@ class SHTMLEditorKitActions {
         public void update() {
         	setEnabled(panel.isWYSIWYGEditorActive());
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT;
+        }
     }
 
     /**
      * change a font size setting
      */
-    static class FontSizeAction extends AbstractAction implements SHTMLAction {
+    static class FontSizeAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -1265,12 +1388,16 @@ class SHTMLEditorKitActions {
         public void update() {
         	setEnabled(panel.isWYSIWYGEditorActive());
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT;
+        }
     }
 
     /**
      * change a font size setting
      */
-    static class ChangeFontSizeAction extends AbstractAction implements SHTMLAction {
+    static class ChangeFontSizeAction extends AbstractAction implements StateDependentAction {
     	enum Change{INCREASE(1), DECREASE(-1);
     		final int changeAmount;
 
@@ -1332,9 +1459,13 @@ class SHTMLEditorKitActions {
 			 this.setEnabled(panel.isWYSIWYGEditorActive());
         }
 
+        public int getUpdateDependencies() {
+            return DOCUMENT;
+        }
+
     }
 
-    static class FormatImageAction extends AbstractAction implements SHTMLAction {
+    static class FormatImageAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -1388,12 +1519,16 @@ class SHTMLEditorKitActions {
                 this.setEnabled(false);
             }
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT | SELECTION;
+        }
     }
 
     /**
      * Change list formatting
      */
-    static class FormatListAction extends AbstractAction implements SHTMLAction {
+    static class FormatListAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -1440,12 +1575,16 @@ class SHTMLEditorKitActions {
         public void update() {
         	setEnabled(panel.isWYSIWYGEditorActive());
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT;
+        }
     }
 
     /**
      * action to change the paragraph style
      */
-    static class FormatParaAction extends AbstractAction implements SHTMLAction {
+    static class FormatParaAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -1476,12 +1615,16 @@ class SHTMLEditorKitActions {
         public void update() {
         	setEnabled(panel.isWYSIWYGEditorActive());
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT;
+        }
     }
 
     /**
      * format table attributes
      */
-    static class FormatTableAction extends AbstractAction implements SHTMLAction {
+    static class FormatTableAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -1524,6 +1667,10 @@ class SHTMLEditorKitActions {
         public void update() {
         	setEnabled(panel.isWYSIWYGEditorActive() && panel.getSHTMLEditorPane().getCurrentTableCell() != null);
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT | TABLE_CELL;
+        }
     }
 
     /**
@@ -1557,7 +1704,7 @@ class SHTMLEditorKitActions {
         }
     }
 
-    static class InsertImageAction extends AbstractAction implements SHTMLAction {
+    static class InsertImageAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -1602,12 +1749,16 @@ class SHTMLEditorKitActions {
                 this.setEnabled(false);
             }
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT;
+        }
     }
 
     /**
      * insert a new table
      */
-    static class InsertTableAction extends AbstractAction implements SHTMLAction {
+    static class InsertTableAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -1638,12 +1789,16 @@ class SHTMLEditorKitActions {
         public void update() {
         	setEnabled(panel.isWYSIWYGEditorActive());
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT;
+        }
     }
 
     /**
      * insert a new table column
      */
-    static class InsertTableColAction extends AbstractAction implements SHTMLAction {
+    static class InsertTableColAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -1662,12 +1817,16 @@ class SHTMLEditorKitActions {
         public void update() {
         	setEnabled(panel.isWYSIWYGEditorActive() && panel.getSHTMLEditorPane().getCurrentTableCell() != null);
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT | TABLE_CELL;
+        }
     }
 
     /**
      * insert a new table row
      */
-    static class InsertTableRowAction extends AbstractAction implements SHTMLAction {
+    static class InsertTableRowAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -1688,12 +1847,16 @@ class SHTMLEditorKitActions {
         public void update() {
         	setEnabled(panel.isWYSIWYGEditorActive() && panel.getSHTMLEditorPane().getCurrentTableCell() != null);
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT | TABLE_CELL;
+        }
     }
 
     /**
      * Move theinsert a new table row
      */
-    static class MoveTableRowUpAction extends AbstractAction implements SHTMLAction {
+    static class MoveTableRowUpAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -1712,12 +1875,16 @@ class SHTMLEditorKitActions {
         public void update() {
         	setEnabled(panel.isWYSIWYGEditorActive() && panel.getSHTMLEditorPane().getCurrentTableCell() != null);
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT | TABLE_CELL;
+        }
     }
 
     /**
      * Moves the the table row up.
      */
-    static class MoveTableRowDownAction extends AbstractAction implements SHTMLAction {
+    static class MoveTableRowDownAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -1736,12 +1903,16 @@ class SHTMLEditorKitActions {
         public void update() {
         	setEnabled(panel.isWYSIWYGEditorActive() && panel.getSHTMLEditorPane().getCurrentTableCell() != null);
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT | TABLE_CELL;
+        }
     }
 
     /**
      * Moves the the table column left.
      */
-    static class MoveTableColumnLeftAction extends AbstractAction implements SHTMLAction {
+    static class MoveTableColumnLeftAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -1760,12 +1931,16 @@ class SHTMLEditorKitActions {
         public void update() {
         	setEnabled(panel.isWYSIWYGEditorActive() && panel.getSHTMLEditorPane().getCurrentTableCell() != null);
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT | TABLE_CELL;
+        }
     }
 
     /**
      * Moves the the table column right.
      */
-    static class MoveTableColumnRightAction extends AbstractAction implements SHTMLAction {
+    static class MoveTableColumnRightAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -1784,12 +1959,16 @@ class SHTMLEditorKitActions {
         public void update() {
         	setEnabled(panel.isWYSIWYGEditorActive() && panel.getSHTMLEditorPane().getCurrentTableCell() != null);
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT | TABLE_CELL;
+        }
     }
 
     /**
      * Turns a table data cell into a table header cell or vice versa.
      */
-    static class ToggleTableHeaderCellAction extends AbstractAction implements SHTMLAction {
+    static class ToggleTableHeaderCellAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -1808,9 +1987,13 @@ class SHTMLEditorKitActions {
         public void update() {
         	setEnabled(panel.isWYSIWYGEditorActive()  && panel.getSHTMLEditorPane().getCurrentTableCell() != null);
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT | TABLE_CELL;
+        }
     }
 
-    static class ItalicAction extends StyledEditorKit.ItalicAction implements SHTMLAction, AttributeComponent {
+    static class ItalicAction extends StyledEditorKit.ItalicAction implements StateDependentAction, AttributeComponent {
         /**
          *
          */
@@ -1854,6 +2037,10 @@ class SHTMLEditorKitActions {
         	setEnabled(panel.isWYSIWYGEditorActive());
         }
 
+        public int getUpdateDependencies() {
+            return DOCUMENT;
+        }
+
         /**
          * set the value of this <code>AttributeComponent</code>
          *
@@ -1906,7 +2093,7 @@ class SHTMLEditorKitActions {
     /**
      * action to move to the next cell in a table
      */
-    static class NextTableCellAction extends AbstractAction implements SHTMLAction {
+    static class NextTableCellAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -1929,12 +2116,16 @@ class SHTMLEditorKitActions {
         public void update() {
         	setEnabled(panel.isWYSIWYGEditorActive() && panel.getSHTMLEditorPane().getCurrentTableCell() != null);
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT | TABLE_CELL;
+        }
     }
 
     /**
      * action to move to the previous cell in a table
      */
-    static class PrevTableCellAction extends AbstractAction implements SHTMLAction {
+    static class PrevTableCellAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -1957,6 +2148,10 @@ class SHTMLEditorKitActions {
         public void update() {
         	setEnabled(panel.isWYSIWYGEditorActive() && panel.getSHTMLEditorPane().getCurrentTableCell() != null);
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT | TABLE_CELL;
+        }
     }
 
     /**
@@ -2008,7 +2203,7 @@ class SHTMLEditorKitActions {
     /**
      * RedoAction for the edit menu
      */
-    static class RedoAction extends AbstractAction implements SHTMLAction {
+    static class RedoAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -2038,10 +2233,14 @@ class SHTMLEditorKitActions {
         public void update() {
         	setEnabled(panel.isWYSIWYGEditorActive() && panel.getUndo().canRedo());
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT | UNDO;
+        }
     }
 
     /** just adds a normal name to the superclasse's action */
-    static class SHTMLEditCopyAction extends DefaultEditorKit.CopyAction implements SHTMLAction {
+    static class SHTMLEditCopyAction extends DefaultEditorKit.CopyAction implements StateDependentAction {
         /**
          *
          */
@@ -2066,10 +2265,14 @@ class SHTMLEditorKitActions {
                 setEnabled(false);
             }
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT;
+        }
     }
 
     /** just adds a normal name to the superclasse's action */
-    static class SHTMLEditCutAction extends DefaultEditorKit.CutAction implements SHTMLAction {
+    static class SHTMLEditCutAction extends DefaultEditorKit.CutAction implements StateDependentAction {
         /**
          *
          */
@@ -2094,10 +2297,14 @@ class SHTMLEditorKitActions {
                 setEnabled(false);
             }
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT;
+        }
     }
 
     /** just adds a normal name to the superclasse's action */
-    static class SHTMLEditPasteAction extends DefaultEditorKit.PasteAction implements SHTMLAction {
+    static class SHTMLEditPasteAction extends DefaultEditorKit.PasteAction implements StateDependentAction {
         /**
          *
          */
@@ -2122,6 +2329,10 @@ class SHTMLEditorKitActions {
                 setEnabled(false);
             }
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT;
+        }
     }
     
     /**
@@ -2129,7 +2340,7 @@ class SHTMLEditorKitActions {
      * @author Felix Natter
      *
      */
-    static class SHTMLEditPasteOtherAction extends DefaultEditorKit.PasteAction implements SHTMLAction {
+    static class SHTMLEditPasteOtherAction extends DefaultEditorKit.PasteAction implements StateDependentAction {
         /**
          *
          */
@@ -2177,6 +2388,10 @@ class SHTMLEditorKitActions {
                 setEnabled(false);
             }
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT;
+        }
     }
 
     static class SHTMLEditPrefsAction extends AbstractAction implements SHTMLAction {
@@ -2212,7 +2427,7 @@ class SHTMLEditorKitActions {
         }
     }
 
-    static class SHTMLEditSelectAllAction extends AbstractAction implements SHTMLAction {
+    static class SHTMLEditSelectAllAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -2242,6 +2457,10 @@ class SHTMLEditorKitActions {
                 this.setEnabled(false);
             }
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT;
+        }
     }
 
     /**
@@ -2254,7 +2473,7 @@ class SHTMLEditorKitActions {
      * action, the close functionality can be shared with action 'close all' or
      * others that might need it.</p>
      */
-    static class SHTMLFileCloseAction extends AbstractAction implements SHTMLAction {
+    static class SHTMLFileCloseAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -2361,6 +2580,7 @@ class SHTMLEditorKitActions {
          */
         private void closeDoc(final DocumentPane dp) {
             try {
+                dp.cancelLoading();
                 dp.deleteTempDir();
                 panel.unregisterDocument();
                 panel.getTabbedPaneForDocuments().remove(dp);
@@ -2407,6 +2627,10 @@ class SHTMLEditorKitActions {
                 this.setEnabled(false);
             }
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT;
+        }
     }
 
     /**
@@ -2415,7 +2639,7 @@ class SHTMLEditorKitActions {
      * <p>This action simply loops through all open documents and uses an instance
      * of SHTMLFileCloseAction to perform the actual closing on each of them.</p>
      */
-    static class SHTMLFileCloseAllAction extends AbstractAction implements SHTMLAction {
+    static class SHTMLFileCloseAllAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -2448,6 +2672,10 @@ class SHTMLEditorKitActions {
                 this.setEnabled(false);
             }
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT;
+        }
     }
 
     /**
@@ -2622,7 +2850,7 @@ class SHTMLEditorKitActions {
             public void run() {
                 try {
                     JOptionPane.getFrameForComponent(panel);
-                    panel.setDocumentPane(new DocumentPane(file.toURL(), 0, false/*, renderMode*/));
+                    panel.setDocumentPane(new DocumentPane(file.toURL(), 0, false, true));
                     if (l != null) {
                         panel.getDocumentPane().addDocumentPaneListener(l);
                     }
@@ -2642,7 +2870,7 @@ class SHTMLEditorKitActions {
     }
 
     /** save a document */
-    static class SHTMLFileSaveAction extends AbstractAction implements SHTMLAction {
+    static class SHTMLFileSaveAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -2695,9 +2923,13 @@ class SHTMLEditorKitActions {
             }
             this.setEnabled(isEnabled && needsSaving && !saveInProgress);
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT | SAVE;
+        }
     }
 
-    static class SHTMLFileSaveAllAction extends AbstractAction implements SHTMLAction {
+    static class SHTMLFileSaveAllAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -2709,16 +2941,105 @@ class SHTMLEditorKitActions {
             SHTMLPanelImpl.configureActionProperties(this, SHTMLPanelMultipleDocImpl.saveAllAction);
         }
 
+        /**
+         * save all changed documents.
+         *
+         * <p>New documents are saved one after another, as a name has to be
+         * asked for each of them. Of all other documents a snapshot is taken
+         * first, the snapshots are then written concurrently by
+         * <code>FileSaver</code>.</p>
+         */
         public void actionPerformed(final ActionEvent ae) {
-            final int count = panel.getTabbedPaneForDocuments().getTabCount();
-            for (int i = 0; i < count; i++) {
-                panel.getTabbedPaneForDocuments().setSelectedIndex(i);
-                panel.setDocumentPane((DocumentPane) panel.getTabbedPaneForDocuments().getSelectedComponent());
-                if (panel.getDocumentPane().needsSaving()) {
-                    panel.dynRes.getAction(SHTMLPanelMultipleDocImpl.saveAction).actionPerformed(ae);
+            final JTabbedPane tabs = panel.getTabbedPaneForDocuments();
+            final int selected = tabs.getSelectedIndex();
+            final Vector<DocumentPane> panes = new Vector<DocumentPane>();
+            final Vector<DocumentPane.Snapshot> snapshots = new Vector<DocumentPane.Snapshot>();
+            final StringBuilder errors = new StringBuilder();
+            for (int i = 0; i < tabs.getTabCount(); i++) {
+                final DocumentPane dp = (DocumentPane) tabs.getComponentAt(i);
+                if (!dp.needsSaving() || dp.saveInProgress()) {
+                    continue;
+                }
+                if (dp.isNewDoc()) {
+                    tabs.setSelectedIndex(i);
+                    panel.setDocumentPane(dp);
+                    panel.dynRes.getAction(SHTMLPanelMultipleDocImpl.saveAsAction).actionPerformed(ae);
+                    continue;
+                }
+                try {
+                    snapshots.addElement(dp.takeSnapshot());
+                    panes.addElement(dp);
+                }
+                catch (final Exception e) {
+                    e.printStackTrace();
+                    errors.append(dp.getDocumentName()).append(": ").append(e.getMessage()).append('\n');
                 }
             }
-            panel.updateActions();
+            if (tabs.getSelectedIndex() != selected) {
+                tabs.setSelectedIndex(selected);
+            }
+            final FileSaver saver = new FileSaver(panes, snapshots, errors);
+            saver.setName("FileSaver");
+            saver.start();
+        }
+
+        /**
+         * Helper class writing the snapshots of documents on a pool of
+         * threads, one per processor at most. When all documents are written,
+         * the actions are updated and the documents which could not be saved
+         * are reported.
+         */
+        class FileSaver extends Thread {
+            final Vector<DocumentPane> panes;
+            final Vector<DocumentPane.Snapshot> snapshots;
+            final StringBuilder errors;
+
+            FileSaver(final Vector<DocumentPane> panes, final Vector<DocumentPane.Snapshot> snapshots, final StringBuilder errors) {
+                setPriority(Thread.MIN_PRIORITY);
+                this.panes = panes;
+                this.snapshots = snapshots;
+                this.errors = errors;
+            }
+
+            public void run() {
+                if (!panes.isEmpty()) {
+                    final ExecutorService pool = Executors.newFixedThreadPool(Math.min(panes.size(), Runtime
+                        .getRuntime().availableProcessors()));
+                    final Vector<Future<?>> results = new Vector<Future<?>>();
+                    for (int i = 0; i < panes.size(); i++) {
+                        final DocumentPane dp = panes.elementAt(i);
+                        final DocumentPane.Snapshot snapshot = snapshots.elementAt(i);
+                        results.addElement(pool.submit(new Callable<Void>() {
+                            public Void call() throws IOException {
+                                dp.saveSnapshot(snapshot);
+                                return null;
+                            }
+                        }));
+                    }
+                    pool.shutdown();
+                    for (int i = 0; i < results.size(); i++) {
+                        try {
+                            results.elementAt(i).get();
+                        }
+                        catch (final ExecutionException e) {
+                            e.getCause().printStackTrace();
+                            errors.append(panes.elementAt(i).getDocumentName()).append(": ")
+                                .append(e.getCause().getMessage()).append('\n');
+                        }
+                        catch (final InterruptedException e) {
+                            return;
+                        }
+                    }
+                }
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        panel.updateActions();
+                        if (errors.length() > 0) {
+                            Util.errMsg(panel, Util.getResourceString("unableToSaveFilesError") + errors, null);
+                        }
+                    }
+                });
+            }
         }
 
         public void update() {
@@ -2729,6 +3050,10 @@ class SHTMLEditorKitActions {
                 this.setEnabled(false);
             }
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT;
+        }
     }
 
     /**
@@ -2737,7 +3062,7 @@ class SHTMLEditorKitActions {
      * <p>If a file already exists at the chosen location / name, the method
      * will ask the user if the existing file shall be overwritten.
      */
-    static class SHTMLFileSaveAsAction extends AbstractAction implements SHTMLAction {
+    static class SHTMLFileSaveAsAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -2750,6 +3075,9 @@ class SHTMLEditorKitActions {
         }
 
         public void actionPerformed(final ActionEvent ae) {
+            if (panel.getDocumentPane().isPartiallyLoaded()) {
+                return;
+            }
             boolean canSave = true;
             final Preferences prefs = Preferences.userNodeForPackage(panel.getClass());
             final JFileChooser chooser = new JFileChooser();
@@ -2856,11 +3184,17 @@ class SHTMLEditorKitActions {
 
         public void update() {
             final boolean isEnabled = panel.getSHTMLEditorPane() != null;
-            boolean saveInProgress = false;
+            boolean busy = false;
             if (isEnabled) {
-                saveInProgress = panel.getDocumentPane().saveInProgress();
+                // a document not loaded completely must not replace its source
+                busy = panel.getDocumentPane().saveInProgress() || panel.getDocumentPane().loadInProgress()
+                        || panel.getDocumentPane().isPartiallyLoaded();
             }
-            this.setEnabled(isEnabled && !saveInProgress);
+            this.setEnabled(isEnabled && !busy);
+        }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT | SAVE;
         }
     }
 
@@ -2919,7 +3253,7 @@ class SHTMLEditorKitActions {
      * (for being able to use an already existing style sheet
      * without having to define named styles)
      */
-    static class SetDefaultStyleRefAction extends AbstractAction implements SHTMLAction {
+    static class SetDefaultStyleRefAction extends AbstractAction implements StateDependentAction {
         /**
          *
          */
@@ -2939,5 +3273,9 @@ class SHTMLEditorKitActions {
         public void update() {
         	setEnabled(panel.isWYSIWYGEditorActive() && !panel.getSHTMLDocument().hasStyleRef());
         }
+
+        public int getUpdateDependencies() {
+            return DOCUMENT;
+        }
     }
 }
@@ -64,6 +64,7 @@ import javax.swing.plaf.TextUI;
 import javax.swing.text.AttributeSet;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.Caret;
+import javax.swing.text.DefaultStyledDocument.ElementSpec;
 import javax.swing.text.Document;
 import javax.swing.text.Element;
 import javax.swing.text.ElementIterator;
@@ -71,6 +72,7 @@ import javax.swing.text.MutableAttributeSet;
 import javax.swing.text.NavigationFilter;
 import javax.swing.text.Position.Bias;
 import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
 import javax.swing.text.html.CSS;
 import javax.swing.text.html.HTML;
 import javax.swing.text.html.HTMLDocument;
@@ -1099,15 +1101,10 @@ public class SHTMLEditorPane extends JEditorPane implements DropTargetListener,
             */
             doc.addAttributes(srcCell, set);
             try {
-                if (before) {
-                    doc.insertBeforeStart(srcCell, createTableCellHTML(srcCell));
-                }
-                else {
-                    doc.insertAfterEnd(srcCell, createTableCellHTML(srcCell));
-                }
-            }
-            catch (final IOException ioe) {
-                Util.errMsg(null, ioe.getMessage(), ioe);
+                final Vector<ElementSpec> specs = new Vector<ElementSpec>();
+                createTableCellSpecs(specs, srcCell, srcCell.getName());
+                doc.insertElements(srcCell.getParentElement(), before ? cIndex : cIndex + 1,
+                    specs.toArray(new ElementSpec[specs.size()]));
             }
             catch (final BadLocationException ble) {
                 Util.errMsg(null, ble.getMessage(), ble);
@@ -1148,24 +1145,25 @@ public class SHTMLEditorPane extends JEditorPane implements DropTargetListener,
      * Is shared by appendRow and insertRow actions.
      *
      * @param srcRow  the row element to copy from
+     * @param rowIndex  the index of srcRow in its table
      * @param before  true indicates insert before, false append after
      * @param forcedCellName if non-null, that cell name will be used in the new table row. Values: "td", "th".
      */
-    private void createTableRow(final Element srcRow, int rowIndex, final boolean before, final String forcedCellName) {
+    private void createTableRow(final Element srcRow, final int rowIndex, final boolean before,
+                                final String forcedCellName) {
         try {
-            if (before) {
-                getSHTMLDocument().insertBeforeStart(srcRow, createTableRowHTML(srcRow, forcedCellName));
-                if (rowIndex == 0) {
-                    rowIndex++;
-                }
-            }
-            else {
-                getSHTMLDocument().insertAfterEnd(srcRow, createTableRowHTML(srcRow, forcedCellName));
-                rowIndex++;
+            final Vector<ElementSpec> specs = new Vector<ElementSpec>();
+            final MutableAttributeSet rowAttributes = new SimpleAttributeSet(srcRow.getAttributes());
+            rowAttributes.addAttribute(StyleConstants.NameAttribute, HTML.Tag.TR);
+            specs.addElement(new ElementSpec(rowAttributes, ElementSpec.StartTagType));
+            for (int i = 0; i < srcRow.getElementCount(); i++) {
+                final Element modelCell = srcRow.getElement(i);
+                final String cellName = forcedCellName != null ? forcedCellName : modelCell.getName();
+                createTableCellSpecs(specs, modelCell, cellName);
             }
-        }
-        catch (final IOException ioe) {
-            Util.errMsg(null, ioe.getMessage(), ioe);
+            specs.addElement(new ElementSpec(null, ElementSpec.EndTagType));
+            getSHTMLDocument().insertElements(srcRow.getParentElement(), before ? rowIndex : rowIndex + 1,
+                specs.toArray(new ElementSpec[specs.size()]));
         }
         catch (final BadLocationException ble) {
             Util.errMsg(null, ble.getMessage(), ble);
@@ -1173,74 +1171,26 @@ public class SHTMLEditorPane extends JEditorPane implements DropTargetListener,
     }
 
     /**
-     * Returns the HTML string of the given table row, without the cell contents, possibly
-     * forcing the cell name on "td" or "th", if the parameter for forced cell name is non-null.
-     *
-     * For each table column found in srcRow, a start and end
-     * tag TD is created with the same attributes as in the
-     * column found in srcRow. The attributes of srcRow
-     * are applied to the newly created row HTML string as well.
-     *
-     * @param modelRow  the table row Element to copy from
-     * @param insert  indicates if a row is inserted before another row
-     *
-     * @return an HTML string representing the new table row
-     * (without cell contents)
-     */
-    private String createTableRowHTML(final Element modelRow, final String forcedCellName) {
-        final StringWriter stringWriter = new StringWriter();
-        final SHTMLWriter shtmlWriter = new SHTMLWriter(stringWriter, (SHTMLDocument) getDocument());
-        final String tr = HTML.Tag.TR.toString();
-        try {
-            shtmlWriter.writeStartTag(tr, modelRow.getAttributes());
-            for (int i = 0; i < modelRow.getElementCount(); i++) {
-                final Element modelCell = modelRow.getElement(i);
-                final String cellName = forcedCellName != null ? forcedCellName : modelCell.getName();
-                createTableCellHTML(shtmlWriter, modelCell, cellName);
-            }
-            shtmlWriter.writeEndTag(tr);
-        }
-        catch (final IOException ex) {
-            Util.errMsg(null, ex.getMessage(), ex);
-        }
-        return stringWriter.getBuffer().toString();
-    }
-
-    private void createTableCellHTML(final SHTMLWriter w, final Element cell, final String cellName) throws IOException {
-        {
-            w.writeStartTag(cellName, cell.getAttributes());
-            final Element paragraph = cell.getElement(0);
-            final String parName = "p"; //Was: paragraph.getName(); UL and OL are parNames not to be copied. --Dan
-            if (!parName.equalsIgnoreCase(HTML.Tag.IMPLIED.toString())) {
-                w.writeStartTag(parName, paragraph.getAttributes());
-                w.writeEndTag(parName);
-            }
-            w.writeEndTag(cellName);
-        }
-    }
-
-    /**
-     * build an HTML string copying from an existing table cell
-     *
-     * @param srcCell the cell to get the HTML for
-     * @param a  set of attributes to copy if we are inserting first table column
-     * @param insertFirst  indicates if we are inserting first table column
-     * @param rNum  number of row a cell is to be inserted to
-     *     (can be any value if insertFirst is false)
+     * Adds the ElementSpecs of an empty table cell to a list of ElementSpecs,
+     * copying the attributes of a given cell and its first paragraph.
      *
-     * @return the HTML string for the given cell (without cell contents)
+     * @param specs  the list to add to
+     * @param modelCell  the table cell to copy from
+     * @param cellName  the name of the new cell, "td" or "th"
      */
-    private String createTableCellHTML(final Element srcCell) {
-        final StringWriter sw = new StringWriter();
-        final SHTMLWriter w = new SHTMLWriter(sw, (SHTMLDocument) getDocument());
-        try {
-            createTableCellHTML(w, srcCell, srcCell.getName());
-        }
-        catch (final IOException e) {
-            Util.errMsg(null, e.getMessage(), e);
-        }
-        //System.out.println("getTableCellHTML buffer='" + sw.getBuffer().toString() + "'");
-        return sw.getBuffer().toString();
+    private void createTableCellSpecs(final Vector<ElementSpec> specs, final Element modelCell, final String cellName) {
+        final MutableAttributeSet cellAttributes = new SimpleAttributeSet(modelCell.getAttributes());
+        cellAttributes.addAttribute(StyleConstants.NameAttribute, HTML.getTag(cellName));
+        specs.addElement(new ElementSpec(cellAttributes, ElementSpec.StartTagType));
+        // always a paragraph, UL and OL of the model cell are not to be copied
+        final MutableAttributeSet paragraphAttributes = new SimpleAttributeSet(modelCell.getElement(0).getAttributes());
+        paragraphAttributes.addAttribute(StyleConstants.NameAttribute, HTML.Tag.P);
+        specs.addElement(new ElementSpec(paragraphAttributes, ElementSpec.StartTagType));
+        final SimpleAttributeSet contentAttributes = new SimpleAttributeSet();
+        contentAttributes.addAttribute(StyleConstants.NameAttribute, HTML.Tag.CONTENT);
+        specs.addElement(new ElementSpec(contentAttributes, ElementSpec.ContentType, new char[] { '\n' }, 0, 1));
+        specs.addElement(new ElementSpec(null, ElementSpec.EndTagType));
+        specs.addElement(new ElementSpec(null, ElementSpec.EndTagType));
     }
 
     /**
@@ -1348,28 +1298,31 @@ public class SHTMLEditorPane extends JEditorPane implements DropTargetListener,
         final int originalCaretPosition = getCaretPosition();
         final int selectionStart = getSelectionStart();
         final int selectionEnd = getSelectionEnd();
+        final SHTMLDocument doc = getSHTMLDocument();
         Element tableCell = getTableCell(selectionStart);
-        while (tableCell != null && tableCell.getStartOffset() <= selectionEnd) {
-            final String content = elementToHTML(tableCell);
-            String newContent = content;
-            if (content.matches("(?is)\\s*<td.*")) {
-                newContent = content.replaceFirst("(?is)^\\s*<td", "<th").replaceFirst("(?is)</td>\\s*$", "</th>");
-            }
-            else if (content.matches("(?is)\\s*<th.*")) {
-                newContent = content.replaceFirst("(?is)^\\s*<th", "<td").replaceFirst("(?is)</th>\\s*$", "</td>");
-            }
-            else {
-                // Unexpected
-            }
-            final Element row = tableCell.getParentElement();
-            final int tableCellIdx = row.getElementIndex(tableCell.getStartOffset());
-            try {
-                getSHTMLDocument().setOuterHTML(tableCell, newContent);
-            }
-            catch (final Exception ex) {
+        doc.startCompoundEdit();
+        try {
+            while (tableCell != null && tableCell.getStartOffset() <= selectionEnd) {
+                final HTML.Tag newTag;
+                if (tableCell.getName().equalsIgnoreCase(HTML.Tag.TD.toString())) {
+                    newTag = HTML.Tag.TH;
+                }
+                else if (tableCell.getName().equalsIgnoreCase(HTML.Tag.TH.toString())) {
+                    newTag = HTML.Tag.TD;
+                }
+                else {
+                    newTag = null; // Unexpected
+                }
+                if (newTag != null) {
+                    final SimpleAttributeSet set = new SimpleAttributeSet();
+                    set.addAttribute(StyleConstants.NameAttribute, newTag);
+                    doc.addAttributes(tableCell, set);
+                }
+                tableCell = getNextCell(tableCell);
             }
-            tableCell = row.getElement(tableCellIdx); // Restore the cell reference after the operation.
-            tableCell = getNextCell(tableCell);
+        }
+        finally {
+            doc.endCompoundEdit();
         }
         setCaretPosition(originalCaretPosition);
     }
@@ -1384,29 +1337,14 @@ public class SHTMLEditorPane extends JEditorPane implements DropTargetListener,
             return;
         }
         try {
-            getSHTMLDocument().startCompoundEdit();
-            final SHTMLWriter writer = new SHTMLWriter(getSHTMLDocument());
-            writer.writeStartTag(table);
-            for (int i = 0; i < indexOfRowInTable - 1; i++) {
-                writer.write(table.getElement(i));
-            }
-            writer.write(tableRow);
-            writer.write(table.getElement(indexOfRowInTable - 1));
-            for (int i = indexOfRowInTable + 1; i < table.getElementCount(); i++) {
-                writer.write(table.getElement(i));
-            }
-            writer.writeEndTag(table);
             final int offsetWithinCurrentRow = getCaretPosition() - tableRow.getStartOffset();
             final int finalCaretPosition = table.getElement(indexOfRowInTable - 1).getStartOffset()
                     + offsetWithinCurrentRow;
-            getSHTMLDocument().setOuterHTML(table, writer.getWrittenString());
+            getSHTMLDocument().moveElement(table, indexOfRowInTable, indexOfRowInTable - 1);
             setCaretPosition(finalCaretPosition);
         }
         catch (final Exception ex) {
         }
-        finally {
-            getSHTMLDocument().endCompoundEdit();
-        }
     }
 
     /** Moves the table column left. Does not treat multicolumn cells. */
@@ -1420,26 +1358,15 @@ public class SHTMLEditorPane extends JEditorPane implements DropTargetListener,
         }
         try {
             getSHTMLDocument().startCompoundEdit();
-            final SHTMLWriter writer = new SHTMLWriter(getSHTMLDocument());
-            writer.writeStartTag(table);
+            final int offsetWithinCurrentCell = getCaretPosition() - tableCell.getStartOffset();
+            final int finalCaretPosition = tableRow.getElement(indexOfCellInRow - 1).getStartOffset()
+                    + offsetWithinCurrentCell;
             for (int rowIdx = 0; rowIdx < table.getElementCount(); rowIdx++) {
                 final Element row = table.getElement(rowIdx);
-                writer.writeStartTag(row);
-                for (int i = 0; i < indexOfCellInRow - 1; i++) {
-                    writer.write(row.getElement(i));
-                }
-                writer.write(row.getElement(indexOfCellInRow));
-                writer.write(row.getElement(indexOfCellInRow - 1));
-                for (int i = indexOfCellInRow + 1; i < row.getElementCount(); i++) {
-                    writer.write(row.getElement(i));
+                if (indexOfCellInRow < row.getElementCount()) {
+                    getSHTMLDocument().moveElement(row, indexOfCellInRow, indexOfCellInRow - 1);
                 }
-                writer.writeEndTag(row);
             }
-            writer.writeEndTag(table);
-            final int offsetWithinCurrentCell = getCaretPosition() - tableCell.getStartOffset();
-            final int finalCaretPosition = tableRow.getElement(indexOfCellInRow - 1).getStartOffset()
-                    + offsetWithinCurrentCell;
-            getSHTMLDocument().setOuterHTML(table, writer.getWrittenString());
             setCaretPosition(finalCaretPosition);
         }
         catch (final Exception ex) {
@@ -1460,25 +1387,15 @@ public class SHTMLEditorPane extends JEditorPane implements DropTargetListener,
         }
         try {
             getSHTMLDocument().startCompoundEdit();
-            final SHTMLWriter writer = new SHTMLWriter(getSHTMLDocument());
-            writer.writeStartTag(table);
+            final Element cellToTheRight = tableRow.getElement(indexOfCellInRow + 1);
+            final int finalCaretPosition = getCaretPosition() + cellToTheRight.getEndOffset()
+                    - cellToTheRight.getStartOffset();
             for (int rowIdx = 0; rowIdx < table.getElementCount(); rowIdx++) {
                 final Element row = table.getElement(rowIdx);
-                writer.writeStartTag(row);
-                for (int i = 0; i < indexOfCellInRow; i++) {
-                    writer.write(row.getElement(i));
-                }
-                writer.write(row.getElement(indexOfCellInRow + 1));
-                writer.write(row.getElement(indexOfCellInRow));
-                for (int i = indexOfCellInRow + 2; i < row.getElementCount(); i++) {
-                    writer.write(row.getElement(i));
+                if (indexOfCellInRow + 1 < row.getElementCount()) {
+                    getSHTMLDocument().moveElement(row, indexOfCellInRow + 1, indexOfCellInRow);
                 }
-                writer.writeEndTag(row);
             }
-            final Element cellToTheRight = tableRow.getElement(indexOfCellInRow + 1);
-            final int finalCaretPosition = getCaretPosition() + cellToTheRight.getEndOffset()
-                    - cellToTheRight.getStartOffset();
-            getSHTMLDocument().setOuterHTML(table, writer.getWrittenString());
             setCaretPosition(finalCaretPosition);
         }
         catch (final Exception ex) {
@@ -1501,28 +1418,13 @@ public class SHTMLEditorPane extends JEditorPane implements DropTargetListener,
             return;
         }
         try {
-            getSHTMLDocument().startCompoundEdit();
-            final SHTMLWriter writer = new SHTMLWriter(getSHTMLDocument());
-            writer.writeStartTag(table);
-            for (int i = 0; i < indexOfRowInTable; i++) {
-                writer.write(table.getElement(i));
-            }
-            writer.write(table.getElement(indexOfRowInTable + 1));
-            writer.write(tableRow);
-            for (int i = indexOfRowInTable + 2; i < table.getElementCount(); i++) {
-                writer.write(table.getElement(i));
-            }
-            writer.writeEndTag(table);
             final Element rowBelow = table.getElement(indexOfRowInTable + 1);
             final int finalCaretPosition = getCaretPosition() + rowBelow.getEndOffset() - rowBelow.getStartOffset();
-            getSHTMLDocument().setOuterHTML(table, writer.getWrittenString());
+            getSHTMLDocument().moveElement(table, indexOfRowInTable + 1, indexOfRowInTable);
             setCaretPosition(finalCaretPosition);
         }
         catch (final Exception ex) {
         }
-        finally {
-            getSHTMLDocument().endCompoundEdit();
-        }
     }
 
     /**
@@ -1711,7 +1613,7 @@ public class SHTMLEditorPane extends JEditorPane implements DropTargetListener,
         public void actionPerformed(final ActionEvent ae) {
             if (listManager.caretAtTheBeginningOfListItem()) {
                 // Increase indent within list
-                listManager.increaseIndent(true);
+                listManager.increaseIndent();
                 return;
             }
             final Element cell = getCurrentTableCell();
@@ -1722,7 +1624,7 @@ public class SHTMLEditorPane extends JEditorPane implements DropTargetListener,
             }
             if (listManager.caretWithinListItem()) {
                 // Increase indent within list
-                listManager.increaseIndent(true);
+                listManager.increaseIndent();
                 return;
             }
             // Do nothing; above all, do not enter tab character.
@@ -1765,7 +1667,7 @@ public class SHTMLEditorPane extends JEditorPane implements DropTargetListener,
         public void actionPerformed(final ActionEvent ae) {
             // Decrease intent within list
             if (listManager.caretAtTheBeginningOfListItem()) {
-                listManager.decreaseIndent(true);
+                listManager.decreaseIndent();
                 return;
             }
             final Element cell = getCurrentTableCell();
@@ -1775,7 +1677,7 @@ public class SHTMLEditorPane extends JEditorPane implements DropTargetListener,
             }
             // Decrease intent within list
             if (listManager.caretWithinListItem()) {
-                listManager.decreaseIndent(true);
+                listManager.decreaseIndent();
                 return;
             }
             performDefaultKeyStrokeAction(KeyEvent.VK_TAB, InputEvent.SHIFT_MASK, ae);
@@ -2375,11 +2277,12 @@ public class SHTMLEditorPane extends JEditorPane implements DropTargetListener,
          * <p>Switches off all list formatting inside the block for the
          * given tag.</p>
          *
-         * <p>Splits lists if the selection covers only part of a list.</p>
+         * <p>Splits lists if the selection covers only part of a list. The
+         * smaller part of a split list is copied, the other part remains
+         * where it is.</p>
          * @throws BadLocationException 
-         * @throws IOException 
          */
-        private void listOff() throws IOException, BadLocationException {
+        private void listOff() throws BadLocationException {
             final int selectionStart = getSelectionStart();
             final int selectionEnd = getSelectionEnd();
             final Element firstParagraphElement = getParagraphElement(selectionStart);
@@ -2390,211 +2293,159 @@ public class SHTMLEditorPane extends JEditorPane implements DropTargetListener,
                 // Currently, no support for nested lists.
                 return;
             }
-            final SHTMLWriter sHTMLwriter = new SHTMLWriter(getSHTMLDocument());
-            int elementIdx;
-            Element nextElement = null;
-            for (elementIdx = 0; elementIdx < parentOfTheListElement.getElementCount(); elementIdx++) {
-                nextElement = parentOfTheListElement.getElement(elementIdx);
-                if (nextElement.getEndOffset() > fistParagraphElementStart) {
-                    break;
+            final int firstIndex = parentOfTheListElement.getElementIndex(fistParagraphElementStart);
+            final int lastIndex = parentOfTheListElement.getElementIndex(lastParagraphElementEnd - 1);
+            final Vector<Element> lists = new Vector<Element>();
+            for (int i = firstIndex; i <= lastIndex; i++) {
+                final Element element = parentOfTheListElement.getElement(i);
+                if (isListRootElement(element)) {
+                    lists.addElement(element);
                 }
             }
-            final Element startElementToBeReplaced = nextElement;
-            int nrElementsToBeReplaced = 1;
-            int listItemIdx = 0;
-            Element listItemElement = null;
-            if (nextElement.getStartOffset() < fistParagraphElementStart) {
-                sHTMLwriter.writeStartTag(nextElement);
-                elementIdx++;
-                // Write list item elements before the selection. 
-                for (;; listItemIdx++) {
-                    listItemElement = nextElement.getElement(listItemIdx);
-                    if (listItemElement.getStartOffset() == fistParagraphElementStart) {
-                        break;
-                    }
-                    sHTMLwriter.write(listItemElement);
-                }
-                sHTMLwriter.writeEndTag(nextElement);
-                // Turn the list item elements in the selection into paragraph element.
-                for (; listItemIdx < nextElement.getElementCount(); listItemIdx++) {
-                    listItemElement = nextElement.getElement(listItemIdx);
-                    if (listItemElement.getStartOffset() >= lastParagraphElementEnd) {
-                        break;
+            // Work backwards, so that the lists not processed so far remain unchanged.
+            for (int i = lists.size() - 1; i >= 0; i--) {
+                final Element list = lists.elementAt(i);
+                final int last = list.getElementCount() - 1;
+                final int first = Math.max(0, list.getElementIndex(fistParagraphElementStart));
+                final int end = Math.min(last, list.getElementIndex(lastParagraphElementEnd - 1));
+                final Vector<ElementSpec> specs = new Vector<ElementSpec>();
+                final boolean copyHead = first > 0 && end < last && first <= last - end;
+                if (copyHead) {
+                    addStartTag(specs, list.getAttributes());
+                    for (int j = 0; j < first; j++) {
+                        getSHTMLDocument().addElementSpecs(specs, list.getElement(j));
                     }
-                    sHTMLwriter.writeStartTag("p", null);
-                    sHTMLwriter.writeChildElements(listItemElement);
-                    sHTMLwriter.writeEndTag("p");
+                    addEndTag(specs);
                 }
-            }
-            if (nextElement.getEndOffset() <= lastParagraphElementEnd) {
-                for (; elementIdx < parentOfTheListElement.getElementCount(); elementIdx++) {
-                    nextElement = parentOfTheListElement.getElement(elementIdx);
-                    if (nextElement.getEndOffset() > lastParagraphElementEnd) {
-                        break;
-                    }
-                    if (nextElement != startElementToBeReplaced
-                            && nextElement.getStartOffset() < lastParagraphElementEnd) {
-                        nrElementsToBeReplaced++;
-                    }
-                    if (isListRootElement(nextElement)) {
-                        for (listItemIdx = 0; listItemIdx < nextElement.getElementCount(); listItemIdx++) {
-                            sHTMLwriter.writeStartTag("p", null);
-                            sHTMLwriter.writeChildElements(nextElement.getElement(listItemIdx));
-                            sHTMLwriter.writeEndTag("p");
-                        }
-                    }
-                    else {
-                        sHTMLwriter.writeStartTag("p", null);
-                        sHTMLwriter.writeChildElements(nextElement);
-                        sHTMLwriter.writeEndTag("p");
+                for (int j = first; j <= end; j++) {
+                    addParagraphSpecs(specs, list.getElement(j));
+                }
+                if (first > 0 && end < last && !copyHead) {
+                    addStartTag(specs, list.getAttributes());
+                    for (int j = end + 1; j <= last; j++) {
+                        getSHTMLDocument().addElementSpecs(specs, list.getElement(j));
                     }
+                    addEndTag(specs);
                 }
-            }
-            // nextElement is final at this point.
-            if (elementIdx <= parentOfTheListElement.getElementCount()
-                    && nextElement.getStartOffset() < lastParagraphElementEnd) {
-                if (nextElement != startElementToBeReplaced) {
-                    nrElementsToBeReplaced++;
+                final Element parent = list.getParentElement();
+                final int listIndex = parent.getElementIndex(list.getStartOffset());
+                if (first == 0 && end == last) {
+                    replaceElements(parent, listIndex + 1, specs, new ElementRange(list, 1));
                 }
-                for (; listItemIdx < nextElement.getElementCount(); listItemIdx++) {
-                    listItemElement = nextElement.getElement(listItemIdx);
-                    if (listItemElement.getStartOffset() >= lastParagraphElementEnd) {
-                        break;
-                    }
-                    sHTMLwriter.writeStartTag("p", null);
-                    sHTMLwriter.writeChildElements(listItemElement);
-                    sHTMLwriter.writeEndTag("p");
-                }
-                if (listItemIdx < nextElement.getElementCount()) {
-                    sHTMLwriter.writeStartTag(nextElement);
-                    for (; listItemIdx < nextElement.getElementCount(); listItemIdx++) {
-                        listItemElement = nextElement.getElement(listItemIdx);
-                        sHTMLwriter.write(listItemElement);
-                    }
-                    sHTMLwriter.writeEndTag(nextElement);
+                else if (first == 0 || copyHead) {
+                    replaceElements(parent, listIndex, specs, new ElementRange(list.getElement(0), end + 1));
+                }
+                else {
+                    replaceElements(parent, listIndex + 1, specs, new ElementRange(list.getElement(first), last
+                            - first + 1));
                 }
             }
-            getSHTMLDocument().replaceHTML(startElementToBeReplaced, nrElementsToBeReplaced,
-                sHTMLwriter.getWrittenString());
         }
 
         /**
          * switch ON list formatting for a given block of elements.
          *
          * <p>Takes care of merging existing lists before, after and inside
-         * respective element block.</p>
+         * respective element block. Items are added to an adjacent list of
+         * the given tag, if there is one, so that only the elements in the
+         * block are copied.</p>
          * @throws BadLocationException 
-         * @throws IOException 
          *
          */
         private void listOn(final String listTag, final AttributeSet attributeSet, final boolean forceOff)
-                throws IOException, BadLocationException {
+                throws BadLocationException {
             final int selectionStart = getSelectionStart();
             final int selectionEnd = getSelectionEnd();
             final Element firstParagraphElement = getParagraphElement(selectionStart);
-            int fistParagraphElementStart = firstParagraphElement.getStartOffset();
-            int lastParagraphElementEnd = getParagraphElement(selectionEnd).getEndOffset();
+            final int fistParagraphElementStart = firstParagraphElement.getStartOffset();
+            final int lastParagraphElementEnd = getParagraphElement(selectionEnd).getEndOffset();
             final Element parentElement = getListParent(firstParagraphElement);
-            Element startElementToBeRemoved = null;
-            int removeCount = 0;
-            final SHTMLWriter writer = new SHTMLWriter(getSHTMLDocument());
-            if (fistParagraphElementStart > 0) {
-                final Element before = getParagraphElement(fistParagraphElementStart - 1);
-                if (before.getName().equalsIgnoreCase(HTML.Tag.LI.toString())) {
-                    final Element listRoot = before.getParentElement();
-                    if (listRoot.getParentElement() == parentElement && listRoot.getName().equalsIgnoreCase(listTag)) {
-                        fistParagraphElementStart = listRoot.getStartOffset();
+            final int firstIndex = parentElement.getElementIndex(fistParagraphElementStart);
+            final int lastIndex = parentElement.getElementIndex(lastParagraphElementEnd - 1);
+            final Element first = parentElement.getElement(firstIndex);
+            final Element last = parentElement.getElement(lastIndex);
+            // a list element beginning before or ending after the block keeps its remaining items
+            final boolean firstSplit = first.getStartOffset() < fistParagraphElementStart;
+            final boolean lastSplit = last.getEndOffset() > lastParagraphElementEnd;
+            final Element previous = firstIndex > 0 ? parentElement.getElement(firstIndex - 1) : null;
+            final Element next = lastIndex + 1 < parentElement.getElementCount() ? parentElement
+                .getElement(lastIndex + 1) : null;
+            Element target = null;
+            int fromIndex = firstIndex;
+            if (isListRootElement(first) && first.getName().equalsIgnoreCase(listTag)) {
+                target = first;
+                fromIndex++;
+            }
+            else if (!firstSplit && previous != null && previous.getName().equalsIgnoreCase(listTag)) {
+                target = previous;
+            }
+            final boolean mergeNext = !lastSplit && next != null && next.getName().equalsIgnoreCase(listTag);
+            final Vector<ElementSpec> specs = new Vector<ElementSpec>();
+            for (int i = fromIndex; i <= lastIndex; i++) {
+                final Element element = parentElement.getElement(i);
+                if (isListRootElement(element)) {
+                    for (int j = 0; j < element.getElementCount(); j++) {
+                        final Element li = element.getElement(j);
+                        if (li.getStartOffset() >= fistParagraphElementStart
+                                && li.getStartOffset() < lastParagraphElementEnd) {
+                            getSHTMLDocument().addElementSpecs(specs, li);
+                        }
                     }
                 }
-            }
-            if (lastParagraphElementEnd < getSHTMLDocument().getLength() - 1) {
-                final Element after = getParagraphElement(lastParagraphElementEnd);
-                if (after.getName().equalsIgnoreCase(HTML.Tag.LI.toString())) {
-                    final Element listRoot = after.getParentElement();
-                    if (listRoot.getParentElement() == parentElement && listRoot.getName().equalsIgnoreCase(listTag)) {
-                        lastParagraphElementEnd = listRoot.getEndOffset();
-                    }
+                else {
+                    addListItemSpecs(specs, element);
                 }
             }
-            int i;
-            Element next = null;
-            for (i = 0; i < parentElement.getElementCount(); i++) {
-                next = parentElement.getElement(i);
-                if (next.getEndOffset() > fistParagraphElementStart) {
-                    break;
+            if (target != null && mergeNext) {
+                for (int j = 0; j < next.getElementCount(); j++) {
+                    getSHTMLDocument().addElementSpecs(specs, next.getElement(j));
                 }
             }
-            startElementToBeRemoved = next;
-            removeCount = 1;
-            int j = 0;
-            Element li = null;
-            if (next.getStartOffset() < fistParagraphElementStart) {
-                i++;
-                writer.writeStartTag(next);
-                for (;; j++) {
-                    li = next.getElement(j);
-                    if (li.getStartOffset() == fistParagraphElementStart) {
-                        break;
-                    }
-                    writer.write(li);
-                }
-                writer.writeEndTag(next);
-                writer.writeStartTag(listTag, attributeSet);
-                for (; j < next.getElementCount(); j++) {
-                    li = next.getElement(j);
-                    if (li.getStartOffset() >= lastParagraphElementEnd) {
-                        break;
-                    }
-                    writer.write(li);
-                }
+            final boolean split = firstSplit && lastSplit && first == last && target == null;
+            if (specs.isEmpty()) {
+                return;
             }
-            else {
-                writer.writeStartTag(listTag, attributeSet);
+            // the elements to remove once their copies are inserted
+            final ElementRange nextRange = target != null && mergeNext ? new ElementRange(next, 1) : null;
+            final ElementRange lastRange = lastSplit && !split ? new ElementRange(last.getElement(0), last
+                .getElementIndex(lastParagraphElementEnd)) : null;
+            final int removeFrom = firstSplit ? firstIndex + 1 : fromIndex;
+            final int removeTo = lastSplit ? lastIndex - 1 : lastIndex;
+            final ElementRange range = removeFrom <= removeTo ? new ElementRange(parentElement.getElement(removeFrom),
+                removeTo - removeFrom + 1) : null;
+            ElementRange firstRange = null;
+            if (firstSplit && target != first) {
+                final int j = first.getElementIndex(fistParagraphElementStart);
+                firstRange = new ElementRange(first.getElement(j), first.getElementCount() - j);
             }
-            if (next.getEndOffset() <= lastParagraphElementEnd) {
-                for (; i < parentElement.getElementCount(); i++) {
-                    next = parentElement.getElement(i);
-                    if (next.getEndOffset() > lastParagraphElementEnd) {
-                        break;
-                    }
-                    if (startElementToBeRemoved != next && next.getStartOffset() < lastParagraphElementEnd) {
-                        removeCount++;
-                    }
-                    if (isListRootElement(next)) {
-                        writer.writeChildElements(next);
-                    }
-                    else {
-                        writer.writeStartTag("li", null);
-                        writer.writeChildElements(next);
-                        writer.writeEndTag("li");
-                    }
+            final boolean applyAttributes = attributeSet != null && attributeSet.getAttributeCount() > 0;
+            if (target != null) {
+                if (applyAttributes) {
+                    getSHTMLDocument().addAttributes(target, attributeSet);
                 }
+                replaceElements(target, target.getElementCount(), specs, nextRange, lastRange, range, firstRange);
             }
-            if (i < parentElement.getElementCount() && next.getStartOffset() < lastParagraphElementEnd) {
-                if (startElementToBeRemoved != next) {
-                    removeCount++;
-                }
-                for (; j < next.getElementCount(); j++) {
-                    li = next.getElement(j);
-                    if (li.getStartOffset() >= lastParagraphElementEnd) {
-                        break;
-                    }
-                    writer.write(li);
-                }
-                writer.writeEndTag(listTag);
-                if (j < next.getElementCount()) {
-                    writer.writeStartTag(next);
-                    for (; j < next.getElementCount(); j++) {
-                        li = next.getElement(j);
-                        writer.write(li);
-                    }
-                    writer.writeEndTag(next);
+            else if (mergeNext) {
+                if (applyAttributes) {
+                    getSHTMLDocument().addAttributes(next, attributeSet);
                 }
+                replaceElements(next, 0, specs, lastRange, range, firstRange);
             }
             else {
-                writer.writeEndTag(listTag);
+                final Vector<ElementSpec> listSpecs = new Vector<ElementSpec>();
+                addStartTag(listSpecs, HTML.getTag(listTag), attributeSet);
+                listSpecs.addAll(specs);
+                addEndTag(listSpecs);
+                if (split) {
+                    addStartTag(listSpecs, last.getAttributes());
+                    for (int j = last.getElementIndex(lastParagraphElementEnd); j < last.getElementCount(); j++) {
+                        getSHTMLDocument().addElementSpecs(listSpecs, last.getElement(j));
+                    }
+                    addEndTag(listSpecs);
+                }
+                replaceElements(parentElement, lastSplit && !split ? lastIndex : lastIndex + 1, listSpecs,
+                    lastRange, range, firstRange);
             }
-            getSHTMLDocument().replaceHTML(startElementToBeRemoved, removeCount, writer.getWrittenString());
         }
 
         /**
@@ -2694,8 +2545,8 @@ public class SHTMLEditorPane extends JEditorPane implements DropTargetListener,
             return parent != null && "li".equalsIgnoreCase(parent.getName());
         }
 
-        /** Increases the intent of selected list items. ("Including subitems" should default to "true".) */
-        private void increaseIndent(final boolean includingSubitems) {
+        /** Increases the intent of selected list items, including their subitems. */
+        private void increaseIndent() {
             final Element paragraphElement = getCurrentParagraphElement();
             final Element listItemElement = paragraphElement.getParentElement();
             if (!isListItemElement(listItemElement)) {
@@ -2716,64 +2567,45 @@ public class SHTMLEditorPane extends JEditorPane implements DropTargetListener,
             final Element list = getListElement(selectionStart);
             final int indexOfSelectionStart = list.getElementIndex(selectionStart);
             final int indexOfSelectionEnd = list.getElementIndex(selectionEnd);
+            // The list item before the selection start should be the new parent.
+            if (indexOfSelectionStart == 0) {
+                // Cannot increase indent of the first item in a list, unlike in MSO and OOo.
+                return;
+            }
+            Element tagModel = null;
+            if (isListElement(list.getElement(indexOfSelectionStart - 1))) {
+                tagModel = list.getElement(indexOfSelectionStart - 1);
+            }
+            else if (indexOfSelectionEnd + 1 < list.getElementCount()
+                    && isListElement(list.getElement(indexOfSelectionEnd + 1))) {
+                tagModel = list.getElement(indexOfSelectionEnd + 1);
+            }
+            else {
+                tagModel = list;
+            }
+            final Element newParentListItem = list.getElement(indexOfSelectionStart - 1);
+            final Vector<ElementSpec> specs = new Vector<ElementSpec>();
             try {
                 getSHTMLDocument().startCompoundEdit();
-                final SHTMLWriter writer = new SHTMLWriter(getSHTMLDocument());
-                writer.writeStartTag(list);
-                for (int i = 0; i < indexOfSelectionStart - 1; i++) {
-                    writer.write(list.getElement(i));
+                for (int i = indexOfSelectionStart; i <= indexOfSelectionEnd; i++) {
+                    getSHTMLDocument().addElementSpecs(specs, list.getElement(i));
                 }
-                Element tagModel = null;
-                if (indexOfSelectionStart > 0 && isListElement(list.getElement(indexOfSelectionStart - 1))) {
-                    tagModel = list.getElement(indexOfSelectionStart - 1);
+                final ElementRange range = new ElementRange(list.getElement(indexOfSelectionStart),
+                    indexOfSelectionEnd - indexOfSelectionStart + 1);
+                final Element lastChild = newParentListItem.getElement(newParentListItem.getElementCount() - 1);
+                if (isListElement(newParentListItem)) {
+                    replaceElements(newParentListItem, newParentListItem.getElementCount(), specs, range);
                 }
-                else if (indexOfSelectionEnd + 1 < list.getElementCount()
-                        && isListElement(list.getElement(indexOfSelectionEnd + 1))) {
-                    tagModel = list.getElement(indexOfSelectionEnd + 1);
+                else if (lastChild.getName().equalsIgnoreCase(tagModel.getName())) {
+                    // Merge with the nested list the new parent ends with.
+                    replaceElements(lastChild, lastChild.getElementCount(), specs, range);
                 }
                 else {
-                    tagModel = list;
-                }
-                // The list item before the selection start should be the new parent.
-                if (indexOfSelectionStart == 0) {
-                    // Cannot increase indent of the first item in a list, unlike in MSO and OOo.
-                    return;
-                }
-                final Element newParentListItem = list.getElement(indexOfSelectionStart - 1);
-                writer.writeStartTag(newParentListItem);
-                writer.writeChildElements(newParentListItem);
-                //
-                writer.writeStartTag(tagModel);
-                for (int i = indexOfSelectionStart; i <= indexOfSelectionEnd; i++) {
-                    if (includingSubitems) {
-                        writer.write(list.getElement(i));
-                    }
-                    else {
-                        final Element listItem = list.getElement(i);
-                        writer.writeStartTag(listItem);
-                        for (int j = 0; j < listItem.getElementCount(); j++) {
-                            if (!isListElement(listItem.getElement(j))) {
-                                writer.write(listItem.getElement(j));
-                            }
-                        }
-                        writer.writeEndTag(listItem);
-                        for (int j = 0; j < listItem.getElementCount(); j++) {
-                            if (isListElement(listItem.getElement(j))) {
-                                writer.writeChildElements(listItem.getElement(j));
-                            }
-                        }
-                    }
+                    specs.insertElementAt(new ElementSpec(tagModel.getAttributes().copyAttributes(),
+                        ElementSpec.StartTagType), 0);
+                    addEndTag(specs);
+                    replaceElements(newParentListItem, newParentListItem.getElementCount(), specs, range);
                 }
-                writer.writeEndTag(tagModel);
-                writer.writeEndTag(newParentListItem);
-                //
-                for (int i = indexOfSelectionEnd + 1; i < list.getElementCount(); i++) {
-                    writer.write(list.getElement(i));
-                }
-                writer.writeEndTag(list);
-                final String newContent = writer.getWrittenString().replaceAll("(?ims)</ul>\\s*<ul[^>]*>", "")
-                    .replaceAll("(?ims)</ol>\\s*<ol[^>]*>", "");
-                getSHTMLDocument().setOuterHTML(list, newContent);
                 select(selectionStart, selectionEnd);
             }
             catch (final Exception ex) {
@@ -2783,11 +2615,8 @@ public class SHTMLEditorPane extends JEditorPane implements DropTargetListener,
             }
         }
 
-        /** Decreases the indent of selected list items. ("Including subitems" should default to "true". */
-        private void decreaseIndent(final boolean includingSubitems) {
-            // The parameter "includingSubitems should always be set to "true". The value of "false" currently causes
-            // problems, in that it leads to the creation of incorrect HTML such as 
-            // <ul><ul><li>c</li></ul></ul>; the consecutive ULs are incorrect.
+        /** Decreases the indent of selected list items, including their subitems. */
+        private void decreaseIndent() {
             // Example:
             // * a                   <-- Outer list item, beginning the outer list.
             //   * b                 <-- Inner list. Cursor here, before "b".
@@ -2798,7 +2627,7 @@ public class SHTMLEditorPane extends JEditorPane implements DropTargetListener,
             // list: UL (containing LI (b))
             // outerListItem: LI (a)
             // outerList: UL (containing LI (a) and the rest.)
-            // Result, with "including subitems" set to "true":
+            // Result:
             // * a
             // * b
             //   * c
@@ -2831,65 +2660,60 @@ public class SHTMLEditorPane extends JEditorPane implements DropTargetListener,
             final int indexOfSelectionEnd = list.getElementIndex(selectionEnd);
             final int indexOfSelectionInOuterItem = outerListItem.getElementIndex(selectionStart);
             final int indexOfSelectionInOuterList = outerList.getElementIndex(selectionStart);
+            final Vector<ElementSpec> specs = new Vector<ElementSpec>();
             try {
                 getSHTMLDocument().startCompoundEdit();
-                final SHTMLWriter writer = new SHTMLWriter(getSHTMLDocument());
-                // Write the beginning of the outer list
-                writer.writeStartTag(outerList);
-                for (int i = 0; i < indexOfSelectionInOuterList; i++) {
-                    writer.write(outerList.getElement(i));
-                }
-                // Write the beginning of the outer list item
-                writer.writeStartTag(outerListItem);
-                for (int i = 0; i < indexOfSelectionInOuterItem; i++) {
-                    writer.write(outerListItem.getElement(i));
-                }
-                // Write the beginning of the inner list
-                if (indexOfSelectionStart > 0) {
-                    writer.writeStartTag(list);
-                    for (int i = 0; i < indexOfSelectionStart; i++) {
-                        writer.write(list.getElement(i));
-                    }
-                    writer.writeEndTag(list);
-                }
-                // Close the outer list item
-                writer.writeEndTag(outerListItem);
-                // Write the promoted (moved to the left) items except for the last one
-                for (int i = indexOfSelectionStart; i <= indexOfSelectionEnd - 1; i++) {
-                    if (includingSubitems) {
-                        writer.write(list.getElement(i));
+                // The promoted (moved to the left) items except for the last one
+                for (int i = indexOfSelectionStart; i < indexOfSelectionEnd; i++) {
+                    getSHTMLDocument().addElementSpecs(specs, list.getElement(i));
+                }
+                // The last promoted item takes the rest of the inner list
+                final Element lastItem = list.getElement(indexOfSelectionEnd);
+                final Vector<ElementSpec> lastItemSpecs = new Vector<ElementSpec>();
+                getSHTMLDocument().addElementSpecs(lastItemSpecs, lastItem);
+                final int count = list.getElementCount();
+                if (indexOfSelectionEnd + 1 < count) {
+                    final Element lastChild = lastItem.getElement(lastItem.getElementCount() - 1);
+                    // Remove the end tag of the last item, and of its nested list if the rest is merged into it.
+                    lastItemSpecs.removeElementAt(lastItemSpecs.size() - 1);
+                    final boolean merge = lastChild.getName().equalsIgnoreCase(list.getName());
+                    if (merge) {
+                        lastItemSpecs.removeElementAt(lastItemSpecs.size() - 1);
                     }
                     else {
-                        writeListItemForDecreaseIndent(writer, list.getElement(i), includingSubitems, false);
+                        addStartTag(lastItemSpecs, list.getAttributes());
                     }
-                }
-                // Write the end of the inner list into the last promoted item
-                writeListItemForDecreaseIndent(writer, list.getElement(indexOfSelectionEnd), includingSubitems, /*withoutEndTag=*/
-                true);
-                if ((indexOfSelectionEnd + 1) < list.getElementCount()) {
-                    writer.writeStartTag(list);
-                    for (int i = indexOfSelectionEnd + 1; i < list.getElementCount(); i++) {
-                        writer.write(list.getElement(i));
+                    for (int i = indexOfSelectionEnd + 1; i < count; i++) {
+                        getSHTMLDocument().addElementSpecs(lastItemSpecs, list.getElement(i));
                     }
-                    writer.writeEndTag(list);
-                }
-                writer.writeEndTag(list.getElement(indexOfSelectionEnd));
-                // Write the end of the outer list item, as another list item
-                if (indexOfSelectionInOuterItem + 1 < outerListItem.getElementCount()) {
-                    writer.writeStartTag(outerListItem);
-                    for (int i = indexOfSelectionInOuterItem + 1; i < outerListItem.getElementCount(); i++) {
-                        writer.write(outerListItem.getElement(i));
+                    addEndTag(lastItemSpecs);
+                    addEndTag(lastItemSpecs);
+                }
+                specs.addAll(lastItemSpecs);
+                // The end of the outer list item, as another list item
+                final int outerCount = outerListItem.getElementCount();
+                if (indexOfSelectionInOuterItem + 1 < outerCount) {
+                    addStartTag(specs, outerListItem.getAttributes());
+                    for (int i = indexOfSelectionInOuterItem + 1; i < outerCount; i++) {
+                        getSHTMLDocument().addElementSpecs(specs, outerListItem.getElement(i));
                     }
-                    writer.writeEndTag(outerListItem);
+                    addEndTag(specs);
                 }
-                // Write the end of the outer list
-                for (int i = indexOfSelectionInOuterList + 1; i < outerList.getElementCount(); i++) {
-                    writer.write(outerList.getElement(i));
+                final ElementRange rest = indexOfSelectionInOuterItem + 1 < outerCount ? new ElementRange(
+                    outerListItem.getElement(indexOfSelectionInOuterItem + 1), outerCount
+                            - indexOfSelectionInOuterItem - 1) : null;
+                final ElementRange promoted;
+                if (indexOfSelectionStart > 0) {
+                    promoted = new ElementRange(list.getElement(indexOfSelectionStart), count - indexOfSelectionStart);
+                }
+                else if (indexOfSelectionInOuterItem > 0) {
+                    promoted = new ElementRange(list, 1);
+                }
+                else {
+                    // Nothing remains of the outer list item.
+                    promoted = new ElementRange(outerListItem, 1);
                 }
-                writer.writeEndTag(outerList);
-                final String newContent = writer.getWrittenString().replaceAll("(?ims)</ul>\\s*<ul>", "")
-                    .replaceAll("(?ims)</ol>\\s*<ol>", "");
-                getSHTMLDocument().setOuterHTML(outerList, newContent);
+                replaceElements(outerList, indexOfSelectionInOuterList + 1, specs, promoted, rest);
                 select(selectionStart, selectionEnd);
             }
             catch (final Exception ex) {
@@ -2899,42 +2723,136 @@ public class SHTMLEditorPane extends JEditorPane implements DropTargetListener,
             }
         }
 
-        /** Writes the list item for the "descrease indent" action. */
-        private void writeListItemForDecreaseIndent(final SHTMLWriter writer, final Element listItem,
-                                                    final boolean includingSubitems, final boolean withoutEndTag) {
-            try {
-                writer.writeStartTag(listItem);
-                if (includingSubitems) {
-                    writer.writeChildElements(listItem);
+        /**
+         * Adds the ElementSpecs of a list item for an element which is not a
+         * list item, e.g. a paragraph. The content of the paragraph becomes
+         * the content of the list item.
+         */
+        private void addListItemSpecs(final Vector<ElementSpec> specs, final Element element)
+                throws BadLocationException {
+            addStartTag(specs, HTML.Tag.LI, null);
+            if (element.getElementCount() > 0 && element.getElement(0).isLeaf()) {
+                addStartTag(specs, HTML.Tag.IMPLIED, null);
+                for (int i = 0; i < element.getElementCount(); i++) {
+                    getSHTMLDocument().addElementSpecs(specs, element.getElement(i));
+                }
+                addEndTag(specs);
+            }
+            else {
+                for (int i = 0; i < element.getElementCount(); i++) {
+                    getSHTMLDocument().addElementSpecs(specs, element.getElement(i));
+                }
+            }
+            addEndTag(specs);
+        }
+
+        /**
+         * Adds the ElementSpecs of the paragraphs a list item consists of
+         * without the list item, the content of an implied paragraph becomes
+         * the content of a paragraph.
+         */
+        private void addParagraphSpecs(final Vector<ElementSpec> specs, final Element listItem)
+                throws BadLocationException {
+            for (int i = 0; i < listItem.getElementCount(); i++) {
+                final Element child = listItem.getElement(i);
+                if (child.getName().equalsIgnoreCase(HTML.Tag.IMPLIED.toString())) {
+                    addStartTag(specs, HTML.Tag.P, null);
+                    for (int j = 0; j < child.getElementCount(); j++) {
+                        getSHTMLDocument().addElementSpecs(specs, child.getElement(j));
+                    }
+                    addEndTag(specs);
                 }
                 else {
-                    boolean childListItemsPresent = false;
-                    // Write all child elements that are not list items
-                    for (int j = 0; j < listItem.getElementCount(); j++) {
-                        if (isListElement(listItem.getElement(j))) {
-                            childListItemsPresent = true;
-                        }
-                        else {
-                            writer.write(listItem.getElement(j));
-                        }
+                    getSHTMLDocument().addElementSpecs(specs, child);
+                }
+            }
+        }
+
+        /** Adds a start tag copying the given attributes, including the name, to a list of ElementSpecs. */
+        private void addStartTag(final Vector<ElementSpec> specs, final AttributeSet attributes) {
+            specs.addElement(new ElementSpec(attributes.copyAttributes(), ElementSpec.StartTagType));
+        }
+
+        /** Adds a start tag for a new element with the given tag and attributes to a list of ElementSpecs. */
+        private void addStartTag(final Vector<ElementSpec> specs, final HTML.Tag tag, final AttributeSet attributes) {
+            final SimpleAttributeSet set = new SimpleAttributeSet();
+            if (attributes != null) {
+                set.addAttributes(attributes);
+            }
+            set.addAttribute(StyleConstants.NameAttribute, tag);
+            specs.addElement(new ElementSpec(set, ElementSpec.StartTagType));
+        }
+
+        private void addEndTag(final Vector<ElementSpec> specs) {
+            specs.addElement(new ElementSpec(null, ElementSpec.EndTagType));
+        }
+
+        /**
+         * Inserts elements and removes the elements they were copied from.
+         *
+         * @param parent  the element to insert into
+         * @param index  the index of the child element to insert before
+         * @param specs  the ElementSpecs of the elements to insert
+         * @param ranges  the elements to remove after inserting
+         */
+        private void replaceElements(final Element parent, final int index, final Vector<ElementSpec> specs,
+                                     final ElementRange... ranges) throws BadLocationException {
+            final SHTMLDocument doc = getSHTMLDocument();
+            final int length = doc.getLength();
+            final int offset = doc.insertElements(parent, index, specs.toArray(new ElementSpec[specs.size()]));
+            final int inserted = doc.getLength() - length;
+            // remove from the end of the document, so that the remaining offsets stay valid
+            final Vector<ElementRange> remaining = new Vector<ElementRange>();
+            for (final ElementRange range : ranges) {
+                if (range != null) {
+                    if (range.offset >= offset) {
+                        range.offset += inserted;
                     }
-                    //
-                    if (childListItemsPresent) {
-                        writer.writeStartTag(listItem.getParentElement());
-                        for (int j = 0; j < listItem.getElementCount(); j++) {
-                            if (isListElement(listItem.getElement(j))) {
-                                writer.write(listItem.getElement(j));
-                            }
-                        }
-                        writer.writeEndTag(listItem.getParentElement());
+                    int i = 0;
+                    while (i < remaining.size() && remaining.elementAt(i).offset > range.offset) {
+                        i++;
                     }
+                    remaining.insertElementAt(range, i);
                 }
-                if (!withoutEndTag) {
-                    writer.writeEndTag(listItem);
+            }
+            for (final ElementRange range : remaining) {
+                range.remove();
+            }
+        }
+
+        /**
+         * Elements following each other, which are found again by their
+         * offset and level after elements were inserted. Inserting elements
+         * may replace the elements following the inserted elements by
+         * copies.
+         */
+        private class ElementRange {
+            /**
+             * @param first  the first element of the range
+             * @param count  the number of elements
+             */
+            ElementRange(final Element first, final int count) {
+                offset = first.getStartOffset();
+                for (Element e = first.getParentElement(); e != null; e = e.getParentElement()) {
+                    depth++;
                 }
+                this.count = count;
             }
-            catch (final Exception ex) {
+
+            void remove() throws BadLocationException {
+                Element parent = getSHTMLDocument().getDefaultRootElement();
+                for (int i = 1; i < depth; i++) {
+                    parent = parent.getElement(parent.getElementIndex(offset));
+                }
+                getSHTMLDocument().removeElements(parent, parent.getElementIndex(offset), count);
             }
+
+            /** the start offset of the first element */
+            int offset;
+            /** the number of parents of the elements */
+            int depth;
+            /** the number of elements */
+            final int count;
         }
 
         /** Performs the action appropriate on pressing of the key delete, as far as lists
@@ -3122,49 +3040,61 @@ public class SHTMLEditorPane extends JEditorPane implements DropTargetListener,
 
         /** Merges a nested list item into a list item in the parent list. (Inaccurate description.)
          * See also {@link #mergeSecondElementIntoFirst(Element first, Element second)}. 
+         *
+         * <p>The paragraph of the parent list item before the nested list and the first
+         * paragraph of the nested item become one paragraph, the other elements of the
+         * nested item follow it.</p>
          * @param parentListItem a list item
          * @param childListItem a list item 
          */
         private void mergeNestedListItemIntoParent(final Element parentListItem, final Element childListItem) {
             final SHTMLDocument doc = (SHTMLDocument) getDocument();
-            final SHTMLWriter writer = new SHTMLWriter(doc);
             doc.startCompoundEdit();
             try {
                 if (!isListItemElement(parentListItem)) {
                     return;
                 }
-                final int finalCaretPosition = parentListItem.getElement(0).getEndOffset() - 1;
-                writer.writeStartTag(parentListItem);
-                for (int i = 0; i < parentListItem.getElementCount(); i++) {
-                    if (!isListElement(parentListItem.getElement(i))) {
-                        writer.write(parentListItem.getElement(i));
-                    }
+                final Element nestedList = childListItem.getParentElement();
+                if (nestedList.getParentElement() != parentListItem) {
+                    return;
                 }
-                writer.removeLastWrittenNewline();
-                writer.writeChildElements(childListItem);
-                for (int i = 0; i < parentListItem.getElementCount(); i++) {
-                    if (isListElement(parentListItem.getElement(i))) {
-                        // Write the nested list except for the merged child.
-                        final Element list = parentListItem.getElement(i);
-                        if (list.getElementCount() >= 2) {
-                            // Write the nested list only if it had at least two elements.
-                            writer.writeStartTag(list);
-                            for (int j = 0; j < list.getElementCount(); j++) {
-                                if (list.getElement(j) != childListItem) {
-                                    writer.write(list.getElement(j));
-                                }
-                            }
-                            writer.writeEndTag(list);
-                        }
-                    }
+                final int indexOfNestedList = parentListItem.getElementIndex(nestedList.getStartOffset());
+                if (indexOfNestedList == 0) {
+                    return;
+                }
+                final Element paragraph = parentListItem.getElement(indexOfNestedList - 1);
+                final Element childParagraph = childListItem.getElement(0);
+                if (paragraph.isLeaf() || !paragraph.getElement(0).isLeaf() || childParagraph.isLeaf()
+                        || !childParagraph.getElement(0).isLeaf()) {
+                    return;
                 }
-                writer.writeEndTag(parentListItem);
-                getSHTMLDocument().setOuterHTML(parentListItem, writer.getWrittenString());
+                final int finalCaretPosition = paragraph.getEndOffset() - 1;
+                final Vector<ElementSpec> specs = new Vector<ElementSpec>();
+                addStartTag(specs, paragraph.getAttributes());
+                final int count = paragraph.getElementCount();
+                for (int i = 0; i < count - 1; i++) {
+                    doc.addElementSpecs(specs, paragraph.getElement(i));
+                }
+                // the last element of the paragraph without its newline
+                final Element lastLeaf = paragraph.getElement(count - 1);
+                final int lastLeafLength = lastLeaf.getEndOffset() - lastLeaf.getStartOffset() - 1;
+                if (lastLeafLength > 0) {
+                    final char[] text = doc.getText(lastLeaf.getStartOffset(), lastLeafLength).toCharArray();
+                    specs.addElement(new ElementSpec(lastLeaf.getAttributes().copyAttributes(),
+                        ElementSpec.ContentType, text, 0, text.length));
+                }
+                for (int i = 0; i < childParagraph.getElementCount(); i++) {
+                    doc.addElementSpecs(specs, childParagraph.getElement(i));
+                }
+                addEndTag(specs);
+                for (int i = 1; i < childListItem.getElementCount(); i++) {
+                    doc.addElementSpecs(specs, childListItem.getElement(i));
+                }
+                replaceElements(parentListItem, indexOfNestedList, specs, new ElementRange(paragraph, 1),
+                    nestedList.getElementCount() == 1 ? new ElementRange(nestedList, 1) : new ElementRange(
+                        childListItem, 1));
                 setCaretPosition(finalCaretPosition);
             }
-            catch (final IOException e) {
-                e.printStackTrace();
-            }
             catch (final BadLocationException e) {
                 e.printStackTrace();
             }
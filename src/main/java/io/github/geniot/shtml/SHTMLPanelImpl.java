@@ -39,7 +39,6 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.File;
 import java.io.InputStream;
-import java.lang.reflect.InvocationTargetException;
 import java.net.URL;
 import java.util.*;
 import java.util.List;
@@ -79,6 +78,10 @@ public class SHTMLPanelImpl extends SHTMLPanel implements CaretListener {
      * single instance of a dynamic resource for use by all
      */
     public DynamicResource dynRes = new DynamicResource();
+    /**
+     * updates the actions of <code>dynRes</code> after changes
+     */
+    private final ActionUpdater actionUpdater = new ActionUpdater(dynRes);
     /**
      * SimplyHTML's main resource bundle (plug-ins use their own)
      */
@@ -157,9 +160,21 @@ public class SHTMLPanelImpl extends SHTMLPanel implements CaretListener {
      */
     private final String emptyIcon = "emptyIcon";
     /**
-     * watch for repeated key events
+     * delay in milliseconds the caret has to stay in place before
+     * format controls are updated
      */
-    private final RepeatKeyWatcher rkw = new RepeatKeyWatcher(40);
+    private static final int FORMAT_UPDATE_DELAY = 100;
+    /**
+     * updates the format controls once the caret has settled, restarted by
+     * each caret event so that the controls are not updated for positions
+     * the caret only passes, e.g. while a key is held down
+     */
+    private final javax.swing.Timer formatUpdateTimer = new javax.swing.Timer(FORMAT_UPDATE_DELAY,
+        new ActionListener() {
+            public void actionPerformed(final ActionEvent e) {
+                updateFormatControls();
+            }
+        });
     /**
      * counter for newly created documents
      */
@@ -278,6 +293,7 @@ public class SHTMLPanelImpl extends SHTMLPanel implements CaretListener {
      */
     SHTMLPanelImpl(boolean isComponent, boolean showContextMenu, boolean showMenuBar, boolean showToolbar) {
         super(new BorderLayout());
+        formatUpdateTimer.setRepeats(false);
         if (!isComponent) {
             SplashScreen.showInstance();
         }
@@ -496,112 +512,6 @@ public class SHTMLPanelImpl extends SHTMLPanel implements CaretListener {
         splitPanel.adjustDividerSizes();
     }
 
-    /**
-     * watch for key events that are automatically repeated
-     * due to the user holding down a key.
-     *
-     * <p>When a key is held down by the user, every keyPressed
-     * event is followed by a keyTyped event and a keyReleased
-     * event although the key is actually still down. I.e. it
-     * can not be determined by a keyReleased event if a key
-     * actually is released, which is why this implementation
-     * is necessary.</p>
-     */
-    class RepeatKeyWatcher implements KeyListener {
-        /**
-         * timer for handling keyReleased events
-         */
-        private final java.util.Timer releaseTimer = new java.util.Timer();
-        /**
-         * the next scheduled task for a keyReleased event
-         */
-        private ReleaseTask nextTask;
-        /**
-         * time of the last keyPressed event
-         */
-        private long lastWhen = 0;
-        /**
-         * time of the current KeyEvent
-         */
-        private long when;
-        /**
-         * delay to distinguish between single and repeated events
-         */
-        private final long delay;
-        /**
-         * indicates whether or not a KeyEvent currently occurs repeatedly
-         */
-        private boolean repeating = false;
-
-        /**
-         * construct a <code>RepeatKeyWatcher</code>
-         *
-         * @param delay the delay in milliseconds until a
-         *              keyReleased event should be handled
-         */
-        RepeatKeyWatcher(final long delay) {
-            super();
-            this.delay = delay;
-        }
-
-        /**
-         * handle a keyPressed event by cancelling the previous
-         * release task (if any) and indicating repeated key press
-         * as applicable.
-         */
-        public void keyPressed(final KeyEvent e) {
-            if (nextTask != null) {
-                nextTask.cancel();
-            }
-            when = e.getWhen();
-            if ((when - lastWhen) <= delay) {
-                repeating = true;
-            } else {
-                repeating = false;
-            }
-            lastWhen = when;
-        }
-
-        /**
-         * handle a keyReleased event by scheduling a
-         * <code>ReleaseTask</code>.
-         */
-        public void keyReleased(final KeyEvent e) {
-            nextTask = new ReleaseTask();
-            releaseTimer.schedule(nextTask, delay);
-        }
-
-        public void keyTyped(final KeyEvent e) {
-        }
-
-        /**
-         * indicate whether or not a key is being held down
-         *
-         * @return true if a key is being held down, false if not
-         */
-        boolean isRepeating() {
-            return repeating;
-        }
-
-        /**
-         * Task to be executed when a key is released
-         */
-        private class ReleaseTask extends TimerTask implements Runnable {
-            public void run() {
-                if (EventQueue.isDispatchThread()) {
-                    repeating = false;
-                    updateFormatControls();
-                } else {
-                    try {
-                        EventQueue.invokeAndWait(this);
-                    } catch (final InterruptedException e) {
-                    } catch (final InvocationTargetException e) {
-                    }
-                }
-            }
-        }
-    }
-
     public void clearDockPanels() {
         splitPanel.removeAllOuterPanels();
     }
@@ -820,14 +730,21 @@ public class SHTMLPanelImpl extends SHTMLPanel implements CaretListener {
      * update all actions
      */
     public void updateActions() {
-        Action action;
-        final Enumeration actions = dynRes.getActions();
-        while (actions.hasMoreElements()) {
-            action = (Action) actions.nextElement();
-            if (action instanceof SHTMLAction) {
-                ((SHTMLAction) action).update();
-            }
-        }
+        updateActions(StateDependentAction.ALL);
+    }
+
+    /**
+     * update the actions depending on some state.
+     *
+     * <p>The actions are updated once the event dispatch thread gets to
+     * it, together with the actions depending on states changed
+     * meanwhile.</p>
+     *
+     * @param states  the changed states, a combination of the constants of
+     * <code>StateDependentAction</code>
+     */
+    public void updateActions(final int states) {
+        actionUpdater.request(states);
     }
 
     /**
@@ -1034,7 +951,6 @@ public class SHTMLPanelImpl extends SHTMLPanel implements CaretListener {
     protected void registerDocument() {
         doc.addUndoableEditListener(undoHandler);
         getSHTMLEditorPane().addCaretListener(this);
-        getSHTMLEditorPane().addKeyListener(rkw);
     }
 
     /**
@@ -1046,7 +962,7 @@ public class SHTMLPanelImpl extends SHTMLPanel implements CaretListener {
      */
     protected void unregisterDocument() {
         getSHTMLEditorPane().removeCaretListener(this);
-        getSHTMLEditorPane().removeKeyListener(rkw);
+        formatUpdateTimer.stop();
         if (doc != null) {
             doc.removeUndoableEditListener(undoHandler);
         }
@@ -1136,6 +1052,7 @@ public class SHTMLPanelImpl extends SHTMLPanel implements CaretListener {
                 return;
             }
             getUndo().addEdit(e.getEdit());
+            updateActions(StateDependentAction.UNDO | StateDependentAction.SAVE);
         }
     }
 
@@ -1143,13 +1060,8 @@ public class SHTMLPanelImpl extends SHTMLPanel implements CaretListener {
      * caret listener implementation to track format changes
      */
     public void caretUpdate(final CaretEvent e) {
-        if (!rkw.isRepeating()) {
-            EventQueue.invokeLater(new Runnable() {
-                public void run() {
-                    updateFormatControls();
-                }
-            });
-        }
+        updateActions(StateDependentAction.SELECTION | StateDependentAction.TABLE_CELL);
+        formatUpdateTimer.restart();
     }
 
     /**
@@ -1368,47 +1280,23 @@ public class SHTMLPanelImpl extends SHTMLPanel implements CaretListener {
         return JOptionPane.getFrameForComponent(SHTMLPanelImpl.this);
     }
 
-    static AttributeSet getMaxAttributes(Element e, final StyleSheet s) {
-        final SimpleAttributeSet a = new SimpleAttributeSet();
-        final Element cElem = e;
-        AttributeSet attrs;
-        final Vector elements = new Vector();
-        Object classAttr;
-        String styleName;
-        String elemName;
-        while (e != null) {
-            elements.insertElementAt(e, 0);
-            e = e.getParentElement();
-        }
-        for (int i = 0; i < elements.size(); i++) {
-            e = (Element) elements.elementAt(i);
-            classAttr = e.getAttributes().getAttribute(HTML.Attribute.CLASS);
-            elemName = e.getName();
-            styleName = elemName;
-            if (classAttr != null) {
-                styleName = elemName + "." + classAttr.toString();
-                a.addAttribute(HTML.Attribute.CLASS, classAttr);
-            }
-            //System.out.println("getMaxAttributes name=" + styleName);
-            attrs = s.getStyle(styleName);
-            if (attrs != null) {
-                a.addAttributes(Util.resolveAttributes(attrs));
-            } else {
-                attrs = s.getStyle(elemName);
-                if (attrs != null) {
-                    a.addAttributes(Util.resolveAttributes(attrs));
-                }
+    /**
+     * Gets the attributes applying to an element, combined from the element,
+     * all its parents and their styles in a style sheet.
+     *
+     * <p>The attributes for elements of a document and its own style sheet
+     * are taken from the <code>ComputedStyleCache</code> of the document.</p>
+     *
+     * @return a new set of attributes, which may be changed
+     */
+    static AttributeSet getMaxAttributes(final Element e, final StyleSheet s) {
+        if (e != null && e.getDocument() instanceof SHTMLDocument) {
+            final SHTMLDocument doc = (SHTMLDocument) e.getDocument();
+            if (doc.getStyleSheet() == s) {
+                return new SimpleAttributeSet(doc.getComputedStyleCache().get(e));
             }
-            a.addAttributes(Util.resolveAttributes(e.getAttributes()));
-        }
-        if (cElem != null) {
-            //System.out.println("getMaxAttributes cElem.name=" + cElem.getName());
-            a.addAttributes(cElem.getAttributes());
         }
-        //System.out.println(" ");
-        //de.calcom.cclib.html.HTMLDiag hd = new de.calcom.cclib.html.HTMLDiag();
-        //hd.listAttributes(a, 4);
-        return new AttributeMapper(a).getMappedAttributes(AttributeMapper.toJava);
+        return ComputedStyleCache.getAttributes(e, s);
     }
 
     /**
@@ -20,6 +20,7 @@
 package io.github.geniot.shtml;
 
 import java.awt.event.ActionEvent;
+import java.net.URL;
 
 import javax.swing.JTabbedPane;
 import javax.swing.JToolBar;
@@ -40,14 +41,23 @@ public class SHTMLPanelMultipleDocImpl extends SHTMLPanelImpl implements ChangeL
     private StyleSelector styleSelector;
     /** number of currently active tab */
     private int activeTabNo;
+    /** saves the open documents for recovery after a crash, null if turned off */
+    private AutoSaver autoSaver;
 
     public SHTMLPanelMultipleDocImpl(boolean isComponent, boolean showContextMenu, boolean showMenuBar, boolean showToolbar) {
         super(isComponent, showContextMenu, showMenuBar, showToolbar);
     }
 
     protected void initDocumentPane(boolean isComponent) {
+        final int interval = AutoSaver.getInterval();
+        if (interval > 0) {
+            autoSaver = new AutoSaver(this, AutoSaver.getRecoveryDir());
+        }
         dynRes.getAction(newAction).actionPerformed(null);
         getDocumentPane().getEditor().setCaretPosition(0);
+        if (autoSaver != null) {
+            autoSaver.start(interval);
+        }
     }
 
     /* (non-Javadoc)
@@ -99,6 +109,9 @@ public class SHTMLPanelMultipleDocImpl extends SHTMLPanelImpl implements ChangeL
     protected void registerDocument() {
         super.registerDocument();
         ((SHTMLDocument) getDocumentPane().getDocument()).getStyleSheet().addChangeListener(styleSelector);
+        if (autoSaver != null) {
+            autoSaver.add(getDocumentPane());
+        }
     }
 
     /* (non-Javadoc)
@@ -107,6 +120,9 @@ public class SHTMLPanelMultipleDocImpl extends SHTMLPanelImpl implements ChangeL
     protected void unregisterDocument() {
         super.unregisterDocument();
         ((SHTMLDocument) getDocumentPane().getDocument()).getStyleSheet().removeChangeListener(styleSelector);
+        if (autoSaver != null) {
+            autoSaver.remove(getDocumentPane());
+        }
     }
 
     /**
@@ -166,6 +182,22 @@ public class SHTMLPanelMultipleDocImpl extends SHTMLPanelImpl implements ChangeL
         setDocumentPane(new DocumentPane(null, ++newDocCounter, false));
     }
 
+    /**
+     * show a document recovered after a crash in a new tab
+     *
+     * @param doc  the recovered document
+     * @param source  the URL the document was loaded from or null for a
+     * document not saved so far
+     */
+    void openRecoveredDocument(final SHTMLDocument doc, final URL source) {
+        final DocumentPane dp = new DocumentPane(null, ++newDocCounter, false);
+        dp.setRecoveredDocument(doc, source);
+        setDocumentPane(dp);
+        jtpDocs.setSelectedComponent(jtpDocs.add(dp.getDocumentName(), dp));
+        registerDocument();
+        updateActions();
+    }
+
     void selectTabbedPane(final int index) {
         ignoreActivateDoc = true;
         getTabbedPaneForDocuments().setSelectedIndex(index);
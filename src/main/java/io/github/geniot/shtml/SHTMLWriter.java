@@ -23,8 +23,6 @@ import java.io.IOException;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.Map;
 
 import javax.swing.text.AttributeSet;
 import javax.swing.text.BadLocationException;
@@ -47,17 +45,38 @@ import javax.swing.text.html.HTMLWriter;
 public class SHTMLWriter extends HTMLWriter {
     private static final char NB_SPACE = '\u00A0';
 	private Element element;
+    /** the HTML written for children of the body, used when writing a whole document */
+    private BlockHtmlCache blockHtmlCache;
+    /** the iterator skipping children of the body written from the cache */
+    private CachedBlockIterator cachedBlockIterator;
+    /** the child of the body written from the cache, its end tag is written already */
+    private Element writtenFromCache;
+    /** the child of the body whose HTML is being recorded */
+    private Element recordedElement;
+    /** the HTML recorded so far */
+    private StringBuilder recordedHtml;
+    /** the map to record the positions of the children of the body in */
+    private HTMLSourceMap sourceMap;
+    /** the number of characters written so far */
+    private int writtenLength;
     private Writer writer = null;
     private boolean replaceEntities;
     private boolean inTextArea;
     //final private MutableAttributeSet oConvAttr  = new SimpleAttributeSet();
     //final private MutableAttributeSet convertedAttributeSet  = new SimpleAttributeSet();
     private int inPreLevel=0;
-	private char[] tempChars;
+    /** the copy of text in which spaces are replaced by non breaking spaces */
+    private char[] spaces;
+    /** indicates that the whole document is written */
+    private final boolean completeDocument;
 
     public SHTMLWriter(final Writer w, final HTMLDocument doc, final int pos, final int len) {
         super(w, doc, pos, len);
         writer = w;
+        completeDocument = pos == 0 && len == doc.getLength();
+        if (doc instanceof SHTMLDocument && completeDocument) {
+            blockHtmlCache = ((SHTMLDocument) doc).getBlockHtmlCache();
+        }
     }
 
     /** Constructs the SHTMLWriter with a new StringWriter. See also the method
@@ -72,21 +91,32 @@ public class SHTMLWriter extends HTMLWriter {
 
     @Override
     protected ElementIterator getElementIterator() {
+        cachedBlockIterator = null;
         if (element == null) {
+            if (blockHtmlCache != null) {
+                cachedBlockIterator = new CachedBlockIterator(getDocument());
+                return cachedBlockIterator;
+            }
             return super.getElementIterator();
         }
         return new ElementIterator(element);
     }
     
-    @SuppressWarnings("serial")
-	private final static Map<Character, String> HTML_CHAR_ENTITIES = new HashMap<Character, String>(){{
-    	put('<', "&lt;");
-    	put('>', "&gt;");
-    	put('&', "&amp;");
-    	put('"', "&quot;");
-    	put('<', "&lt;");
-    	put(NB_SPACE, "&nbsp;");
-    }};
+    /**
+     * the replacements of characters to be written as entities, indexed by
+     * the character, null for characters written as they are
+     */
+    private final static char[][] ESCAPES = new char[NB_SPACE + 1][];
+    static {
+        for (char c = 0; c < ' '; c++) {
+            ESCAPES[c] = ("&#x" + Integer.toHexString(c) + ';').toCharArray();
+        }
+        ESCAPES['<'] = "&lt;".toCharArray();
+        ESCAPES['>'] = "&gt;".toCharArray();
+        ESCAPES['&'] = "&amp;".toCharArray();
+        ESCAPES['"'] = "&quot;".toCharArray();
+        ESCAPES[NB_SPACE] = "&nbsp;".toCharArray();
+    }
 
     @Override
     protected void output(char[] chars, int start, int length) throws IOException {
@@ -95,33 +125,49 @@ public class SHTMLWriter extends HTMLWriter {
     		return;
     	}
     	
-    	if(inPreLevel == 0)
+    	if (inPreLevel == 0 && length > 0 && hasSpacesToReplace(chars, start, length)) {
+    	    // the characters may be the content of the document, replace in a copy
+    	    if (spaces == null || spaces.length < length) {
+    	        spaces = new char[length];
+    	    }
+    	    System.arraycopy(chars, start, spaces, 0, length);
+    	    chars = spaces;
+    	    start = 0;
     	    replaceMultipleSpacesByNonBreakingSpaces(chars, start, length);
+    	}
         
+        // write runs of characters needing no replacement at once
         int last = start;
         length += start;
         for (int counter = start; counter < length; counter++) {
-        	char c = chars[counter];
-        	String replacement = entity(c);
-			if(replacement != null) {
-				directOutput(chars, last, counter - last);
-				directOutput(replacement);
-				last = counter + 1;
-			}
+        	final char c = chars[counter];
+        	if (c < ESCAPES.length && ESCAPES[c] != null) {
+        		if (counter > last) {
+        			directOutput(chars, last, counter - last);
+        		}
+        		directOutput(ESCAPES[c], 0, ESCAPES[c].length);
+        		last = counter + 1;
+        	}
         }
 
         if (last < length) {
         	directOutput(chars, last, length - last);
         }
     }
-
-    private String entity(char c) {
-    	if (c < ' ')
-    		return "&#x" + Integer.toHexString(c) + ';';
-    	String knownEntity = HTML_CHAR_ENTITIES.get(c);
-		return knownEntity;
-    }
     
+	private boolean hasSpacesToReplace(char[] chars, int start, int length) {
+		if (chars[start] == ' ') {
+		    return true;
+		}
+		final int last = start + length - 1;
+		for (int i = start + 1; i < last; i++) {
+		    if (chars[i] == ' ' && (chars[i - 1] == NB_SPACE || chars[i + 1] == ' ')) {
+		        return true;
+		    }
+		}
+		return false;
+	}
+
 	private void replaceMultipleSpacesByNonBreakingSpaces(char[] chars, int start, int length) {
 		if (chars[start] == ' ') {
 		    chars[start] = NB_SPACE;
@@ -138,31 +184,137 @@ public class SHTMLWriter extends HTMLWriter {
             throws IOException {
     	getWriter().write(content, start, length);
     	setCurrentLineLength(getCurrentLineLength() + length);
+    	writtenLength += length;
+    	if (recordedHtml != null) {
+    		recordedHtml.append(content, start, length);
+    	}
     }
 
-    private void directOutput(String string) throws IOException {
-        int length = string.length();
-        if (tempChars == null || tempChars.length < length) {
-            tempChars = new char[length];
-        }
-        string.getChars(0, length, tempChars, 0);
-        directOutput(tempChars, 0, length);
-    }
-
+    /**
+     * Writes the start tag of an element. When a whole document is written,
+     * the HTML recorded earlier for an unchanged child of the body is written
+     * instead, together with its content and end tag. Otherwise the HTML
+     * of the child is recorded while it is written.
+     */
     @Override
     protected void startTag(final Element elem) throws IOException, BadLocationException {
+        if (sourceMap != null && element == null && BlockHtmlCache.isWrittenSeparately(elem)) {
+            sourceMap.addBlock(elem, writtenLength);
+        }
+        if (cachedBlockIterator != null && elem == cachedBlockIterator.skipped) {
+            final String html = blockHtmlCache.get(elem);
+            writtenFromCache = elem;
+            getWriter().write(html);
+            writtenLength += html.length();
+            setCurrentLineLength(html.length() - html.lastIndexOf('\n') - 1);
+            return;
+        }
+        if (cachedBlockIterator != null && recordedElement == null && BlockHtmlCache.isCacheable(elem)) {
+            recordedElement = elem;
+            recordedHtml = new StringBuilder();
+        }
         if (matchNameAttribute(elem.getAttributes(), HTML.Tag.PRE)) {
             inPreLevel++;
         }
         super.startTag(elem);
+        if (completeDocument && element == null && matchNameAttribute(elem.getAttributes(), HTML.Tag.HEAD)) {
+            // documents are saved in UTF-8, tell browsers so
+            incrIndent();
+            indent();
+            write("<meta http-equiv=\"Content-Type\" content=\"text/html; charset=UTF-8\">");
+            writeLineSeparator();
+            decrIndent();
+        }
+    }
+
+    /**
+     * Writes an empty tag, except for a declaration of the character set
+     * of the document. The character set written to the head is declared
+     * instead.
+     */
+    @Override
+    protected void emptyTag(final Element elem) throws BadLocationException, IOException {
+        if (completeDocument && element == null && isCharsetDeclaration(elem.getAttributes())) {
+            return;
+        }
+        super.emptyTag(elem);
+    }
+
+    /**
+     * indicates whether or not the attributes are those of a meta tag
+     * declaring the character set of the document
+     */
+    private boolean isCharsetDeclaration(final AttributeSet attr) {
+        if (!matchNameAttribute(attr, HTML.Tag.META)) {
+            return false;
+        }
+        final Object equiv = attr.getAttribute(HTML.Attribute.HTTPEQUIV);
+        return attr.getAttribute("charset") != null
+                || (equiv != null && "content-type".equalsIgnoreCase(equiv.toString()));
     }
 
     @Override
     protected void endTag(final Element elem) throws IOException {
+        if (elem == writtenFromCache) {
+            writtenFromCache = null;
+            return;
+        }
         if (matchNameAttribute(elem.getAttributes(), HTML.Tag.PRE)) {
             inPreLevel--;
         }
         super.endTag(elem);
+        if (elem == recordedElement) {
+            blockHtmlCache.put(elem, recordedHtml.toString());
+            recordedElement = null;
+            recordedHtml = null;
+        }
+    }
+
+    /**
+     * Skips the content of children of the body written from the
+     * <code>BlockHtmlCache</code>.
+     */
+    private class CachedBlockIterator extends ElementIterator {
+        CachedBlockIterator(final Document doc) {
+            super(doc);
+        }
+
+        @Override
+        public Element next() {
+            Element next = super.next();
+            if (skipped != null) {
+                while (next != null && isDescendant(next, skipped)) {
+                    next = super.next();
+                }
+                skipped = null;
+            }
+            if (next != null && BlockHtmlCache.isCacheable(next) && blockHtmlCache.get(next) != null
+                    && inRange(next) && inRange(getNextSibling(next))) {
+                skipped = next;
+            }
+            return next;
+        }
+
+        /**
+         * get the element following a cacheable element, its end tag is
+         * written when that element comes up
+         */
+        private Element getNextSibling(final Element e) {
+            final Element parent = e.getParentElement();
+            return parent.getElement(parent.getElementIndex(e.getStartOffset()) + 1);
+        }
+
+        private boolean isDescendant(final Element e, final Element ancestor) {
+            for (Element parent = e.getParentElement(); parent != null; parent = parent.getParentElement()) {
+                if (parent == ancestor) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** the element whose descendants are skipped, it is written from the cache */
+        private Element skipped;
     }
 
     @Override
@@ -182,10 +334,27 @@ public class SHTMLWriter extends HTMLWriter {
         replaceEntities = replaceEntitiesOld;
     }
 
+    /**
+     * record the positions the children of the body are written at
+     * when the whole document is written
+     *
+     * @param sourceMap  the map to record the positions in
+     */
+    void setSourceMap(final HTMLSourceMap sourceMap) {
+        this.sourceMap = sourceMap;
+    }
+
     @Override
     public void write() throws IOException, BadLocationException {
         replaceEntities = false;
-        super.write();
+        try {
+            super.write();
+        }
+        finally {
+            cachedBlockIterator = null;
+            recordedElement = null;
+            recordedHtml = null;
+        }
     }
 
     @Override
@@ -406,6 +575,10 @@ public class SHTMLWriter extends HTMLWriter {
     @Override
     public void write(final String string) throws IOException{
     	writer.write(string);
+    	writtenLength += string.length();
+    	if (recordedHtml != null) {
+    		recordedHtml.append(string);
+    	}
     }
 
     public String toString() {
@@ -22,7 +22,10 @@ package io.github.geniot.shtml;
 import java.awt.Font;
 import java.awt.Toolkit;
 
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import javax.swing.text.AttributeSet;
+import javax.swing.text.Style;
 import javax.swing.text.html.CSS;
 import javax.swing.text.html.StyleSheet;
 
@@ -33,6 +36,39 @@ public class ScaledStyleSheet extends StyleSheet{
      * 
      */
     private static final long serialVersionUID = 1L;
+
+    /** counts changes of styles and of the set of styles */
+    private final ChangeListener modificationCounter = new ChangeListener() {
+        public void stateChanged(ChangeEvent e) {
+            modificationCount++;
+        }
+    };
+    /** the number of changes made to this style sheet so far */
+    private volatile long modificationCount;
+
+    public ScaledStyleSheet() {
+        addChangeListener(modificationCounter);
+    }
+
+    /**
+     * get the number of changes made to this style sheet so far. Styles
+     * being added, removed or changed count as changes.
+     *
+     * @return the number of changes, unchanged as long as the style sheet
+     * is not changed
+     */
+    public long getModificationCount() {
+        return modificationCount;
+    }
+
+    public Style addStyle(String nm, Style parent) {
+        final Style style = super.addStyle(nm, parent);
+        if (modificationCounter != null) { // null while the super constructor adds the default style
+            style.addChangeListener(modificationCounter);
+        }
+        return style;
+    }
+
 	public Font getFont(AttributeSet a) {
 	    final Font font = super.getFont(a);
 	    final float fontScaleFactor = getFontScaleFactor(a);
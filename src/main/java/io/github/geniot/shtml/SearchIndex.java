@@ -0,0 +1,562 @@
+/*
+ * SimplyHTML, a word processor based on Java, HTML and CSS
+ * Copyright (C) 2003 Ulrich Hilger
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.github.geniot.shtml;
+
+import java.util.Arrays;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+
+/**
+ * Text index of a <code>Document</code> used by <code>FindReplaceDialog</code>.
+ *
+ * <p>The index keeps a copy of the document text which is kept up to date
+ * by listening to the document, so a search does not need to copy the
+ * whole text again.</p>
+ *
+ * <p>The text is divided into blocks of about <code>BLOCK_SIZE</code>
+ * characters. Each block carries a signature, a bit set of hashes of the
+ * case folded trigrams starting in it. Searches skip blocks whose signature
+ * tells that no occurrence can start in them. For approximate searches the
+ * q-gram lemma is used: an occurrence with k errors of a term of length m
+ * still contains at least m - 2 - 4k of the trigrams of the term.</p>
+ *
+ * <p>Signatures are rebuilt lazily when a block changed, so editing only
+ * costs updating the text copy.</p>
+ *
+ * <p>The index of a document is obtained with <code>getInstance</code> and
+ * stored as a document property.</p>
+ */
+class SearchIndex implements DocumentListener {
+    /** name of the document property holding the index */
+    private static final String PROPERTY_NAME = SearchIndex.class.getName();
+    /** length of the indexed character sequences */
+    private static final int Q = 3;
+    /** preferred number of characters in a block */
+    private static final int BLOCK_SIZE = 2048;
+    /** number of bits in a block signature, a power of 2 */
+    private static final int SIGNATURE_BITS = 4096;
+    /** number of longs in a block signature */
+    private static final int SIGNATURE_LONGS = SIGNATURE_BITS / 64;
+
+    /**
+     * get the index of a document, create it if the document has none yet
+     *
+     * @param doc  the document to get the index for
+     *
+     * @return the index
+     */
+    static SearchIndex getInstance(final Document doc) {
+        synchronized (SearchIndex.class) {
+            SearchIndex index = (SearchIndex) doc.getProperty(PROPERTY_NAME);
+            if (index == null) {
+                index = new SearchIndex(doc);
+                doc.putProperty(PROPERTY_NAME, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * construct a <code>SearchIndex</code> for the current text of a
+     * document and start listening to changes
+     */
+    private SearchIndex(final Document doc) {
+        final SearchIndex index = this;
+        doc.render(new Runnable() {
+            public void run() {
+                try {
+                    text.insert(0, doc.getText(0, doc.getLength()));
+                }
+                catch (final BadLocationException e) {
+                    e.printStackTrace();
+                }
+                resetBlocks();
+                doc.addDocumentListener(index);
+            }
+        });
+    }
+
+    /* -------- DocumentListener implementation start ------------*/
+    public synchronized void insertUpdate(final DocumentEvent e) {
+        final int offset = e.getOffset();
+        try {
+            text.insert(offset, e.getDocument().getText(offset, e.getLength()));
+        }
+        catch (final BadLocationException ex) {
+            ex.printStackTrace();
+            return;
+        }
+        int b = findBlock(offset);
+        if (b == blockCount) {
+            b--;
+        }
+        blockLengths[b] += e.getLength();
+        markDirty(b);
+        if (blockLengths[b] > 2 * BLOCK_SIZE) {
+            splitBlock(b);
+        }
+    }
+
+    public synchronized void removeUpdate(final DocumentEvent e) {
+        final int offset = e.getOffset();
+        int remaining = e.getLength();
+        text.remove(offset, remaining);
+        int b = findBlock(offset);
+        int blockStart = blockStart(b);
+        while (remaining > 0 && b < blockCount) {
+            final int removed = Math.min(remaining, blockStart + blockLengths[b] - Math.max(offset, blockStart));
+            blockLengths[b] -= removed;
+            remaining -= removed;
+            markDirty(b);
+            if (blockLengths[b] == 0 && blockCount > 1) {
+                removeBlock(b);
+            }
+            else {
+                blockStart += blockLengths[b];
+                b++;
+            }
+        }
+    }
+
+    public void changedUpdate(final DocumentEvent e) {
+        // attribute changes do not affect the text
+    }
+
+    /* -------- DocumentListener implementation end ------------*/
+    /**
+     * get the indexed text
+     *
+     * <p>The sequence reflects later changes of the document. It must be used
+     * on the thread changing the document only.</p>
+     */
+    CharSequence getText() {
+        return text;
+    }
+
+    /**
+     * get the length of the indexed text
+     */
+    synchronized int length() {
+        return text.length();
+    }
+
+    /**
+     * get a character of the indexed text
+     */
+    synchronized char charAt(final int index) {
+        return text.charAt(index);
+    }
+
+    /**
+     * find the first occurrence of a term at or after a given position
+     *
+     * @param term  the term to find
+     * @param from  the position to start at
+     * @param matchCase  true, if case matters
+     *
+     * @return the position of the occurrence or -1, if there is none
+     */
+    synchronized int indexOf(final String term, int from, final boolean matchCase) {
+        final int m = term.length();
+        from = Math.max(from, 0);
+        final int last = text.length() - m;
+        if (from > last) {
+            return -1;
+        }
+        final int[] hashes = termHashes(term);
+        int b = findBlock(from);
+        int blockStart = blockStart(b);
+        while (b < blockCount && blockStart <= last) {
+            final int blockEnd = blockStart + blockLengths[b];
+            if (hashes == null || countHits(b, blockStart, m, hashes) == hashes.length) {
+                final int end = Math.min(blockEnd - 1, last);
+                for (int i = Math.max(from, blockStart); i <= end; i++) {
+                    if (matchesAt(term, i, matchCase)) {
+                        return i;
+                    }
+                }
+            }
+            blockStart = blockEnd;
+            b++;
+        }
+        return -1;
+    }
+
+    /**
+     * find the last occurrence of a term at or before a given position
+     *
+     * @param term  the term to find
+     * @param from  the position to start at
+     * @param matchCase  true, if case matters
+     *
+     * @return the position of the occurrence or -1, if there is none
+     */
+    synchronized int lastIndexOf(final String term, int from, final boolean matchCase) {
+        final int m = term.length();
+        from = Math.min(from, text.length() - m);
+        if (from < 0) {
+            return -1;
+        }
+        final int[] hashes = termHashes(term);
+        int b = findBlock(from);
+        int blockStart = blockStart(b);
+        while (b >= 0) {
+            if (hashes == null || countHits(b, blockStart, m, hashes) == hashes.length) {
+                final int end = Math.min(blockStart + blockLengths[b] - 1, from);
+                for (int i = end; i >= blockStart; i--) {
+                    if (matchesAt(term, i, matchCase)) {
+                        return i;
+                    }
+                }
+            }
+            b--;
+            if (b >= 0) {
+                blockStart -= blockLengths[b];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * get the regions of the text where approximate occurrences of a term
+     * with up to a given number of errors may be found
+     *
+     * @param term  the term to find
+     * @param maxErrors  the maximum number of errors an occurrence may have
+     *
+     * @return pairs of start and end positions of the regions in ascending order
+     *      or null, if the term is too short to rule out any region
+     */
+    synchronized int[] getApproximateRegions(final String term, final int maxErrors) {
+        final int[] hashes = termHashes(term);
+        if (hashes == null) {
+            return null;
+        }
+        // an edit destroys at most Q trigrams, a transposition Q + 1
+        final int minHits = hashes.length - maxErrors * (Q + 1);
+        if (minHits <= 0) {
+            return null;
+        }
+        final int span = term.length() + maxErrors;
+        int[] regions = new int[16];
+        int count = 0;
+        int blockStart = 0;
+        for (int b = 0; b < blockCount; b++) {
+            if (blockHasWildcard(b, blockStart, span) || countHits(b, blockStart, span, hashes) >= minHits) {
+                final int regionEnd = Math.min(blockStart + blockLengths[b] + span, text.length());
+                if (count > 0 && regions[count - 1] >= blockStart) {
+                    regions[count - 1] = regionEnd;
+                }
+                else {
+                    if (count == regions.length) {
+                        regions = Arrays.copyOf(regions, count * 2);
+                    }
+                    regions[count++] = blockStart;
+                    regions[count++] = regionEnd;
+                }
+            }
+            blockStart += blockLengths[b];
+        }
+        return Arrays.copyOf(regions, count);
+    }
+
+    /**
+     * indicates whether or not a term occurs at a given position
+     */
+    private boolean matchesAt(final String term, final int pos, final boolean matchCase) {
+        for (int j = 0; j < term.length(); j++) {
+            final char c = text.charAt(pos + j);
+            final char t = term.charAt(j);
+            if (c != t && (matchCase || Character.toLowerCase(c) != Character.toLowerCase(t))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * count how many of the given trigram hashes are set in the signatures of
+     * the blocks an occurrence starting in a given block can extend to
+     *
+     * @param b  the block an occurrence starts in
+     * @param blockStart  the start position of the block
+     * @param span  the maximum length of an occurrence
+     * @param hashes  the trigram hashes to look for
+     */
+    private int countHits(final int b, final int blockStart, final int span, final int[] hashes) {
+        final int lastGramStart = blockStart + blockLengths[b] - 1 + span - Q;
+        int hits = 0;
+        for (int h = 0; h < hashes.length; h++) {
+            int k = b;
+            int kStart = blockStart;
+            while (k < blockCount && kStart <= lastGramStart) {
+                if ((getSignature(k, kStart)[hashes[h] >>> 6] & (1L << hashes[h])) != 0) {
+                    hits++;
+                    break;
+                }
+                kStart += blockLengths[k];
+                k++;
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * indicates whether or not an occurrence starting in a given block can
+     * contain a '-' which approximate matching treats as a wildcard
+     */
+    private boolean blockHasWildcard(final int b, final int blockStart, final int span) {
+        final int end = Math.min(blockStart + blockLengths[b] + span, text.length());
+        int k = b;
+        int kStart = blockStart;
+        while (k < blockCount && kStart < end) {
+            getSignature(k, kStart);
+            if (wildcards[k]) {
+                return true;
+            }
+            kStart += blockLengths[k];
+            k++;
+        }
+        return false;
+    }
+
+    /**
+     * get the signature of a block, rebuild it, if the block changed
+     */
+    private long[] getSignature(final int b, final int blockStart) {
+        long[] signature = signatures[b];
+        if (signature == null) {
+            signature = new long[SIGNATURE_LONGS];
+            boolean wildcard = false;
+            final int end = blockStart + blockLengths[b];
+            final int lastGramStart = Math.min(end, text.length() - Q + 1);
+            for (int i = blockStart; i < end; i++) {
+                if (text.charAt(i) == '-') {
+                    wildcard = true;
+                }
+            }
+            for (int i = blockStart; i < lastGramStart; i++) {
+                final int h = hash(text.charAt(i), text.charAt(i + 1), text.charAt(i + 2));
+                signature[h >>> 6] |= 1L << h;
+            }
+            signatures[b] = signature;
+            wildcards[b] = wildcard;
+        }
+        return signature;
+    }
+
+    /**
+     * get the hashes of all trigrams of a term, one per position
+     *
+     * @return the hashes or null, if the term is shorter than a trigram
+     */
+    private static int[] termHashes(final String term) {
+        if (term.length() < Q) {
+            return null;
+        }
+        final int[] hashes = new int[term.length() - Q + 1];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = hash(term.charAt(i), term.charAt(i + 1), term.charAt(i + 2));
+        }
+        return hashes;
+    }
+
+    /**
+     * hash a case folded trigram to a bit of a block signature
+     */
+    private static int hash(final char c0, final char c1, final char c2) {
+        final int h = (Character.toLowerCase(c0) * 31 + Character.toLowerCase(c1)) * 31 + Character.toLowerCase(c2);
+        return (h * 0x9E3779B9) >>> (32 - 12);
+    }
+
+    /* ----------- block management start ------- */
+    /**
+     * divide the whole text into blocks of BLOCK_SIZE characters
+     */
+    private void resetBlocks() {
+        final int length = text.length();
+        blockCount = Math.max(1, (length + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        blockLengths = new int[blockCount + 16];
+        signatures = new long[blockCount + 16][];
+        wildcards = new boolean[blockCount + 16];
+        for (int b = 0; b < blockCount; b++) {
+            blockLengths[b] = Math.min(BLOCK_SIZE, length - b * BLOCK_SIZE);
+        }
+        if (length == 0) {
+            blockLengths[0] = 0;
+        }
+    }
+
+    /**
+     * get the block a given position belongs to, blockCount for the end of the text
+     */
+    private int findBlock(final int offset) {
+        int blockStart = 0;
+        for (int b = 0; b < blockCount; b++) {
+            blockStart += blockLengths[b];
+            if (offset < blockStart) {
+                return b;
+            }
+        }
+        return blockCount;
+    }
+
+    /**
+     * get the start position of a block
+     */
+    private int blockStart(final int b) {
+        int blockStart = 0;
+        for (int k = 0; k < b && k < blockCount; k++) {
+            blockStart += blockLengths[k];
+        }
+        return blockStart;
+    }
+
+    /**
+     * discard the signatures of a changed block and its predecessor, whose
+     * last trigrams extend into the block
+     */
+    private void markDirty(final int b) {
+        signatures[b] = null;
+        if (b > 0) {
+            signatures[b - 1] = null;
+        }
+    }
+
+    /**
+     * split an oversized block into blocks of BLOCK_SIZE characters
+     */
+    private void splitBlock(final int b) {
+        final int length = blockLengths[b];
+        final int pieces = (length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        ensureBlockCapacity(blockCount + pieces - 1);
+        System.arraycopy(blockLengths, b + 1, blockLengths, b + pieces, blockCount - b - 1);
+        System.arraycopy(signatures, b + 1, signatures, b + pieces, blockCount - b - 1);
+        System.arraycopy(wildcards, b + 1, wildcards, b + pieces, blockCount - b - 1);
+        for (int i = 0; i < pieces; i++) {
+            blockLengths[b + i] = Math.min(BLOCK_SIZE, length - i * BLOCK_SIZE);
+            signatures[b + i] = null;
+        }
+        blockCount += pieces - 1;
+    }
+
+    /**
+     * remove an empty block
+     */
+    private void removeBlock(final int b) {
+        System.arraycopy(blockLengths, b + 1, blockLengths, b, blockCount - b - 1);
+        System.arraycopy(signatures, b + 1, signatures, b, blockCount - b - 1);
+        System.arraycopy(wildcards, b + 1, wildcards, b, blockCount - b - 1);
+        blockCount--;
+        signatures[blockCount] = null;
+    }
+
+    private void ensureBlockCapacity(final int capacity) {
+        if (capacity > blockLengths.length) {
+            final int newCapacity = Math.max(capacity, blockLengths.length * 2);
+            blockLengths = Arrays.copyOf(blockLengths, newCapacity);
+            signatures = Arrays.copyOf(signatures, newCapacity);
+            wildcards = Arrays.copyOf(wildcards, newCapacity);
+        }
+    }
+
+    /* ----------- block management end ------- */
+    /**
+     * a character sequence with a gap at the position of the last edit,
+     * so that consecutive edits at the same place do not move the whole text
+     */
+    private static class GapText implements CharSequence {
+        public int length() {
+            return chars.length - (gapEnd - gapStart);
+        }
+
+        public char charAt(final int index) {
+            return index < gapStart ? chars[index] : chars[index + gapEnd - gapStart];
+        }
+
+        public CharSequence subSequence(final int start, final int end) {
+            final StringBuilder sb = new StringBuilder(end - start);
+            for (int i = start; i < end; i++) {
+                sb.append(charAt(i));
+            }
+            return sb.toString();
+        }
+
+        public String toString() {
+            return subSequence(0, length()).toString();
+        }
+
+        void insert(final int offset, final String s) {
+            final int len = s.length();
+            if (gapEnd - gapStart < len) {
+                final int newLength = Math.max(chars.length * 2, length() + len + 1024);
+                final char[] newChars = new char[newLength];
+                System.arraycopy(chars, 0, newChars, 0, gapStart);
+                final int tail = chars.length - gapEnd;
+                System.arraycopy(chars, gapEnd, newChars, newLength - tail, tail);
+                gapEnd = newLength - tail;
+                chars = newChars;
+            }
+            moveGap(offset);
+            s.getChars(0, len, chars, gapStart);
+            gapStart += len;
+        }
+
+        void remove(final int offset, final int len) {
+            moveGap(offset);
+            gapEnd += len;
+        }
+
+        private void moveGap(final int offset) {
+            if (offset < gapStart) {
+                final int count = gapStart - offset;
+                System.arraycopy(chars, offset, chars, gapEnd - count, count);
+                gapStart -= count;
+                gapEnd -= count;
+            }
+            else if (offset > gapStart) {
+                final int count = offset - gapStart;
+                System.arraycopy(chars, gapEnd, chars, gapStart, count);
+                gapStart += count;
+                gapEnd += count;
+            }
+        }
+
+        /** the characters, including the gap */
+        private char[] chars = new char[1024];
+        /** start of the gap */
+        private int gapStart = 0;
+        /** end of the gap */
+        private int gapEnd = 1024;
+    }
+
+    /** copy of the document text */
+    private final GapText text = new GapText();
+    /** number of blocks */
+    private int blockCount;
+    /** number of characters in each block */
+    private int[] blockLengths;
+    /** trigram signature of each block, null if the block changed */
+    private long[][] signatures;
+    /** indicates for each block, if it contains a '-' */
+    private boolean[] wildcards;
+}
@@ -0,0 +1,50 @@
+/*
+ * SimplyHTML, a word processor based on Java, HTML and CSS
+ * Copyright (C) 2003 Ulrich Hilger
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.github.geniot.shtml;
+
+/**
+ * An action telling which state of the editor its own state depends on,
+ * so that it is updated only when that state changed.
+ *
+ * <p>Actions implementing <code>SHTMLAction</code> only are updated on
+ * any change.</p>
+ *
+ * @see SHTMLPanelImpl#updateActions(int)
+ */
+public interface StateDependentAction extends SHTMLAction {
+    /** the document shown, its view or whether it is editable */
+    public static final int DOCUMENT = 1;
+    /** the caret position or the selection */
+    public static final int SELECTION = 2;
+    /** the table cell the caret is in */
+    public static final int TABLE_CELL = 4;
+    /** the edits which can be undone or redone */
+    public static final int UNDO = 8;
+    /** whether the document needs saving or is being saved */
+    public static final int SAVE = 16;
+    /** any state */
+    public static final int ALL = DOCUMENT | SELECTION | TABLE_CELL | UNDO | SAVE;
+
+    /**
+     * get the states the state of this action depends on
+     *
+     * @return a combination of the constants of this interface
+     */
+    public int getUpdateDependencies();
+}
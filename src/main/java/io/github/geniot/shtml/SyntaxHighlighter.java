@@ -0,0 +1,576 @@
+/*
+ * SimplyHTML, a word processor based on Java, HTML and CSS
+ * Copyright (C) 2002, 2003 Ulrich Hilger
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package io.github.geniot.shtml;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.text.StyledDocument;
+
+/**
+ * Incremental syntax highlighting of HTML code in a <code>StyledDocument</code>.
+ *
+ * <p>The text is split into tokens by a small lexer running on a
+ * background thread. The lexer state at the start of each line is
+ * cached, so that after an edit only the damaged lines are lexed again.
+ * Lexing goes on past the damaged lines only as long as the state at the
+ * end of a line differs from the cached one, e.g. when a comment or a
+ * quoted attribute value was opened or closed.</p>
+ *
+ * <p>The resulting styles are applied on the event dispatch thread in
+ * batches of coalesced runs. A batch produced for an outdated version of
+ * the document is discarded and its lines are lexed again.</p>
+ *
+ * <p>All access to the line cache happens on the lexer thread. Edits are
+ * handed over as tasks in the order they occurred, so line numbers of a
+ * task always refer to the cache as left by the previous task.</p>
+ */
+class SyntaxHighlighter implements DocumentListener {
+    /** token type of content text */
+    static final int TEXT = 0;
+    /** token type of a tag name or a tag delimiter */
+    static final int TAG = 1;
+    /** token type of an attribute name */
+    static final int ATTRIBUTE = 2;
+    /** token type of an attribute value */
+    static final int VALUE = 3;
+    /** token type of a comment */
+    static final int COMMENT = 4;
+    /** number of token types */
+    static final int TOKEN_TYPES = 5;
+    /** lexer state outside of tags */
+    private static final int STATE_TEXT = 0;
+    /** lexer state inside a tag */
+    private static final int STATE_TAG = 1;
+    /** lexer state inside a double quoted attribute value */
+    private static final int STATE_DOUBLE_QUOTED = 2;
+    /** lexer state inside a single quoted attribute value */
+    private static final int STATE_SINGLE_QUOTED = 3;
+    /** lexer state inside a comment */
+    private static final int STATE_COMMENT = 4;
+    /** lexer state of a line not lexed so far */
+    private static final int STATE_UNKNOWN = 0x0F;
+    /** mask to extract the lexer state from a cache entry */
+    private static final int STATE_MASK = 0x0F;
+    /** flag marking a cache entry whose line needs to be lexed */
+    private static final int DIRTY = 0x10;
+    /** maximum number of style runs handed to the event dispatch thread at once */
+    private static final int MAX_RUNS_PER_BATCH = 1024;
+    /** the thread all lexing is done on */
+    private static final ExecutorService lexer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(final Runnable r) {
+            final Thread t = new Thread(r, "SyntaxHighlighter");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        }
+    });
+
+    /**
+     * construct a <code>SyntaxHighlighter</code> and start highlighting
+     * the given document
+     *
+     * @param doc  the document to highlight
+     * @param styles  the attributes to apply, indexed by token type
+     */
+    SyntaxHighlighter(final StyledDocument doc, final AttributeSet[] styles) {
+        this.doc = doc;
+        this.styles = styles;
+        final int lineCount = doc.getDefaultRootElement().getElementCount();
+        lexer.execute(new Runnable() {
+            public void run() {
+                lines.reset(lineCount);
+                process();
+            }
+        });
+        doc.addDocumentListener(this);
+    }
+
+    /**
+     * stop highlighting the document of this <code>SyntaxHighlighter</code>
+     */
+    void dispose() {
+        disposed = true;
+        doc.removeDocumentListener(this);
+    }
+
+    /**
+     * highlight all lines touching the given area of the document again
+     *
+     * @param offset  the position to start at
+     * @param len  the number of characters to highlight
+     */
+    void markDirty(final int offset, final int len) {
+        final Element root = doc.getDefaultRootElement();
+        final int firstLine = root.getElementIndex(offset);
+        final int lastLine = root.getElementIndex(offset + Math.max(len - 1, 0));
+        lexer.execute(new Runnable() {
+            public void run() {
+                lines.mark(firstLine, lastLine);
+                process();
+            }
+        });
+    }
+
+    /* -------- DocumentListener implementation start ------------*/
+    public void insertUpdate(final DocumentEvent e) {
+        damage(e);
+    }
+
+    public void removeUpdate(final DocumentEvent e) {
+        damage(e);
+    }
+
+    public void changedUpdate(final DocumentEvent e) {
+        // attribute changes are caused by highlighting itself
+    }
+
+    /* -------- DocumentListener implementation end ------------*/
+    /**
+     * hand the lines affected by an insert or remove over to the lexer
+     * thread
+     *
+     * <p>Called while the document is write locked, so the version
+     * counter and the order of the submitted tasks follow the edits
+     * exactly.</p>
+     */
+    private void damage(final DocumentEvent e) {
+        final Element root = doc.getDefaultRootElement();
+        final DocumentEvent.ElementChange change = e.getChange(root);
+        final int index;
+        final int removed;
+        final int added;
+        if (change != null) {
+            index = change.getIndex();
+            removed = change.getChildrenRemoved().length;
+            added = change.getChildrenAdded().length;
+        }
+        else {
+            index = root.getElementIndex(e.getOffset());
+            removed = 1;
+            added = 1;
+        }
+        final int newVersion = ++version;
+        lexer.execute(new Runnable() {
+            public void run() {
+                lines.replace(index, removed, added);
+                lexedVersion = newVersion;
+                process();
+            }
+        });
+    }
+
+    /**
+     * lex all dirty lines batch by batch, runs on the lexer thread
+     */
+    private void process() {
+        boolean more = !disposed;
+        while (more) {
+            final Batch batch = new Batch();
+            doc.render(new Runnable() {
+                public void run() {
+                    batch.more = lexBatch(batch);
+                }
+            });
+            if (batch.runs.size > 0) {
+                SwingUtilities.invokeLater(batch);
+            }
+            more = batch.more && !disposed;
+        }
+    }
+
+    /**
+     * lex a number of consecutive dirty lines, called with the document
+     * read locked
+     *
+     * @param batch  the batch to store style runs in
+     *
+     * @return true, if dirty lines remain to be lexed
+     */
+    private boolean lexBatch(final Batch batch) {
+        if (lexedVersion != version) {
+            // further edits are queued, lexing continues after them
+            return false;
+        }
+        final Element root = doc.getDefaultRootElement();
+        if (lines.size != root.getElementCount()) {
+            lines.reset(root.getElementCount());
+        }
+        int line = lines.nextDirty(0);
+        if (line < 0) {
+            return false;
+        }
+        try {
+            final int length = doc.getLength();
+            batch.docVersion = lexedVersion;
+            batch.start = doc.createPosition(root.getElement(line).getStartOffset());
+            int end = 0;
+            do {
+                final Element lineElement = root.getElement(line);
+                final int start = lineElement.getStartOffset();
+                end = Math.min(lineElement.getEndOffset(), length);
+                doc.getText(start, end - start, segment);
+                final int endState = lexLine(segment, start, lines.getState(line), batch.runs);
+                lines.lexed(line, endState);
+                line++;
+            }
+            while (line < lines.size && lines.isDirty(line) && batch.runs.size < MAX_RUNS_PER_BATCH);
+            batch.end = doc.createPosition(end);
+        }
+        catch (final BadLocationException ex) {
+            System.out.println("SyntaxHighlighter ERROR: " + ex.getMessage());
+            lines.reset(root.getElementCount());
+            return false;
+        }
+        return lines.nextDirty(0) >= 0;
+    }
+
+    /**
+     * split a line of HTML code into tokens
+     *
+     * @param s  the text of the line
+     * @param offset  the position of the line inside the document
+     * @param state  the lexer state at the start of the line
+     * @param runs  the list to add style runs to
+     *
+     * @return the lexer state at the end of the line
+     */
+    static int lexLine(final Segment s, final int offset, int state, final RunList runs) {
+        final char[] a = s.array;
+        final int end = s.offset + s.count;
+        int i = s.offset;
+        while (i < end) {
+            final int tokenStart = i;
+            int type;
+            switch (state) {
+                case STATE_COMMENT: {
+                    type = COMMENT;
+                    final int close = indexOf(a, i, end, "-->");
+                    if (close < 0) {
+                        i = end;
+                    }
+                    else {
+                        i = close + 3;
+                        state = STATE_TEXT;
+                    }
+                    break;
+                }
+                case STATE_DOUBLE_QUOTED:
+                case STATE_SINGLE_QUOTED: {
+                    type = VALUE;
+                    final char quote = state == STATE_DOUBLE_QUOTED ? '"' : '\'';
+                    while (i < end && a[i] != quote) {
+                        i++;
+                    }
+                    if (i < end) {
+                        i++;
+                        state = STATE_TAG;
+                    }
+                    break;
+                }
+                case STATE_TAG: {
+                    final char c = a[i];
+                    if (c == '>') {
+                        type = TAG;
+                        i++;
+                        state = STATE_TEXT;
+                    }
+                    else if (c == '/' && i + 1 < end && a[i + 1] == '>') {
+                        type = TAG;
+                        i += 2;
+                        state = STATE_TEXT;
+                    }
+                    else if (c == '"') {
+                        type = VALUE;
+                        i++;
+                        state = STATE_DOUBLE_QUOTED;
+                    }
+                    else if (c == '\'') {
+                        type = VALUE;
+                        i++;
+                        state = STATE_SINGLE_QUOTED;
+                    }
+                    else if (isNameChar(c) || c == '=') {
+                        type = ATTRIBUTE;
+                        while (i < end && isNameChar(a[i])) {
+                            i++;
+                        }
+                        if (i < end && a[i] == '=') {
+                            i++;
+                            if (i < end && a[i] != '"' && a[i] != '\'' && a[i] != '>' && !Character.isWhitespace(a[i])) {
+                                // unquoted attribute value
+                                runs.add(offset + tokenStart - s.offset, i - tokenStart, ATTRIBUTE);
+                                final int valueStart = i;
+                                while (i < end && a[i] != '>' && !Character.isWhitespace(a[i])) {
+                                    i++;
+                                }
+                                runs.add(offset + valueStart - s.offset, i - valueStart, VALUE);
+                                continue;
+                            }
+                        }
+                    }
+                    else {
+                        type = TAG;
+                        i++;
+                    }
+                    break;
+                }
+                default: {
+                    if (a[i] == '<') {
+                        if (indexOf(a, i, Math.min(i + 4, end), "<!--") == i) {
+                            type = COMMENT;
+                            i += 4;
+                            state = STATE_COMMENT;
+                        }
+                        else {
+                            type = TAG;
+                            i++;
+                            if (i < end && (a[i] == '/' || a[i] == '!' || a[i] == '?')) {
+                                i++;
+                            }
+                            while (i < end && isNameChar(a[i])) {
+                                i++;
+                            }
+                            state = STATE_TAG;
+                        }
+                    }
+                    else {
+                        type = TEXT;
+                        while (i < end && a[i] != '<') {
+                            i++;
+                        }
+                    }
+                    break;
+                }
+            }
+            runs.add(offset + tokenStart - s.offset, i - tokenStart, type);
+        }
+        return state;
+    }
+
+    /**
+     * find a string in a range of a character array
+     *
+     * @return the index of the first occurrence or -1, if not found
+     */
+    private static int indexOf(final char[] a, final int from, final int to, final String s) {
+        final int last = to - s.length();
+        outer: for (int i = from; i <= last; i++) {
+            for (int j = 0; j < s.length(); j++) {
+                if (a[i + j] != s.charAt(j)) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * indicates whether or not a character can be part of a tag or attribute name
+     */
+    private static boolean isNameChar(final char c) {
+        return Character.isLetterOrDigit(c) || c == '-' || c == '_' || c == ':' || c == '.';
+    }
+
+    /**
+     * the style runs of a number of lines together with the document
+     * version they were produced for, applied on the event dispatch thread
+     */
+    private class Batch implements Runnable {
+        public void run() {
+            if (disposed) {
+                return;
+            }
+            if (version != docVersion) {
+                // the document changed meanwhile, lex these lines again
+                markDirty(start.getOffset(), end.getOffset() - start.getOffset());
+                return;
+            }
+            for (int i = 0; i < runs.size; i++) {
+                final int offset = runs.offsets[i];
+                final int length = runs.lengths[i];
+                final AttributeSet style = styles[runs.types[i]];
+                final Element e = doc.getCharacterElement(offset);
+                if (e.getStartOffset() > offset || e.getEndOffset() < offset + length
+                        || !e.getAttributes().isEqual(style)) {
+                    doc.setCharacterAttributes(offset, length, style, true);
+                }
+            }
+        }
+
+        /** the style runs of this batch */
+        private final RunList runs = new RunList();
+        /** the document version this batch was produced for */
+        private int docVersion;
+        /** start of the lines covered by this batch */
+        private Position start;
+        /** end of the lines covered by this batch */
+        private Position end;
+        /** indicates if dirty lines remained after this batch */
+        private boolean more;
+    }
+
+    /**
+     * growable list of style runs, adjacent runs of the same type are
+     * coalesced
+     */
+    static class RunList {
+        void add(final int offset, final int length, final int type) {
+            if (length <= 0) {
+                return;
+            }
+            if (size > 0 && types[size - 1] == type && offsets[size - 1] + lengths[size - 1] == offset) {
+                lengths[size - 1] += length;
+                return;
+            }
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
+                types = Arrays.copyOf(types, size * 2);
+            }
+            offsets[size] = offset;
+            lengths[size] = length;
+            types[size] = type;
+            size++;
+        }
+
+        /** start positions of the runs */
+        int[] offsets = new int[64];
+        /** lengths of the runs */
+        int[] lengths = new int[64];
+        /** token types of the runs */
+        int[] types = new int[64];
+        /** number of runs in this list */
+        int size;
+    }
+
+    /**
+     * the lexer state at the start of each line together with a flag
+     * telling whether the line needs to be lexed
+     */
+    private static class LineStates {
+        /**
+         * mark all of a given number of lines as not lexed
+         */
+        void reset(final int count) {
+            ensureCapacity(count);
+            size = count;
+            for (int i = 0; i < count; i++) {
+                data[i] = STATE_UNKNOWN | DIRTY;
+            }
+            if (count > 0) {
+                data[0] = STATE_TEXT | DIRTY;
+            }
+        }
+
+        /**
+         * replace a number of lines by another number of lines, the state
+         * at the start of the first line remains valid
+         */
+        void replace(final int index, final int removed, final int added) {
+            if (index >= size) {
+                reset(size + added - removed);
+                return;
+            }
+            final int delta = added - removed;
+            ensureCapacity(size + delta);
+            System.arraycopy(data, index + removed, data, index + added, size - index - removed);
+            for (int i = index + 1; i < index + added; i++) {
+                data[i] = STATE_UNKNOWN | DIRTY;
+            }
+            data[index] |= DIRTY;
+            size += delta;
+        }
+
+        /**
+         * mark a range of lines as dirty
+         */
+        void mark(final int firstLine, final int lastLine) {
+            for (int i = firstLine; i <= lastLine && i < size; i++) {
+                data[i] |= DIRTY;
+            }
+        }
+
+        /**
+         * record that a line was lexed and mark the next line dirty, if its
+         * start state changed
+         */
+        void lexed(final int line, final int endState) {
+            data[line] &= ~DIRTY;
+            if (line + 1 < size && (data[line + 1] & STATE_MASK) != endState) {
+                data[line + 1] = endState | DIRTY;
+            }
+        }
+
+        int getState(final int line) {
+            final int state = data[line] & STATE_MASK;
+            return state == STATE_UNKNOWN ? STATE_TEXT : state;
+        }
+
+        boolean isDirty(final int line) {
+            return (data[line] & DIRTY) != 0;
+        }
+
+        int nextDirty(final int from) {
+            for (int i = from; i < size; i++) {
+                if ((data[i] & DIRTY) != 0) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void ensureCapacity(final int capacity) {
+            if (capacity > data.length) {
+                data = Arrays.copyOf(data, Math.max(capacity, data.length * 2));
+            }
+        }
+
+        /** one entry per line, lexer state and dirty flag */
+        private int[] data = new int[64];
+        /** number of lines */
+        private int size;
+    }
+
+    /** the document to highlight */
+    private final StyledDocument doc;
+    /** the attributes to apply, indexed by token type */
+    private final AttributeSet[] styles;
+    /** lexer state cache, only accessed on the lexer thread */
+    private final LineStates lines = new LineStates();
+    /** buffer for line text, only accessed on the lexer thread */
+    private final Segment segment = new Segment();
+    /** number of inserts and removes seen so far */
+    private volatile int version;
+    /** the version the line cache corresponds to, only accessed on the lexer thread */
+    private int lexedVersion;
+    /** indicates if highlighting was stopped */
+    private volatile boolean disposed;
+}
@@ -28,10 +28,12 @@ import java.awt.Point;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.io.InputStream;
+import java.io.Reader;
 import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.Files;
 import java.util.Enumeration;
 import java.util.StringTokenizer;
 import java.util.Vector;
@@ -79,8 +81,6 @@ public class Util {
     public static final String pct = "%";
     public static final String pt = "pt";
     public static final String px = "px";
-    /** the default block size in bytes for file operations */
-    private static int blockSize = 1024;
     private static Vector startTimes = new Vector();
     private static final String ERR_TITLE = "Error";
     private static String unit = "";
@@ -157,6 +157,20 @@ public class Util {
         return newName;
     }
 
+    /**
+     * get a reader for the text of an HTML file
+     *
+     * <p>Files are saved in UTF-8. Files saved in the platform encoding by
+     * earlier versions are read in the platform encoding from their first
+     * byte which is not valid UTF-8 on.</p>
+     *
+     * @param in  the stream to read the file from
+     * @see HtmlFileReader
+     */
+    static Reader createHtmlReader(final InputStream in) {
+        return new HtmlFileReader(in);
+    }
+
     /**
      * resolve sets of attributes that are recursively stored in each other
      *
@@ -342,23 +356,26 @@ public class Util {
     public static void copyFile(final File srcFile, final File destFile) throws FileNotFoundException, IOException {
         if (!srcFile.toString().equals(destFile.toString())) {
             if (!destFile.exists()) {
-                File destDir;
-                final byte[] buf = new byte[blockSize];
-                int bytesRead = 0;
-                destDir = new File(destFile.getParent());
-                destDir.mkdirs();
-                try(RandomAccessFile src = new RandomAccessFile(srcFile.getPath(), "r");
-                        RandomAccessFile dest = new RandomAccessFile(destFile.getPath(), "rw")) {
-                    bytesRead = src.read(buf);
-                    while (bytesRead > -1) {
-                        dest.write(buf, 0, bytesRead);
-                        bytesRead = src.read(buf);
-                    }
-                }
+                new File(destFile.getParent()).mkdirs();
+                Files.copy(srcFile.toPath(), destFile.toPath());
             }
         }
     }
 
+    /**
+     * get a hexadecimal string of the bytes of a hash
+     *
+     * @param bytes  the bytes of the hash
+     * @return the bytes as hexadecimal string, two digits per byte
+     */
+    public static String toHexString(final byte[] bytes) {
+        final StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (final byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
     /**
      * get the index of a given element in the list of its parents elements.
      *
@@ -0,0 +1,142 @@
+/*
+ * SimplyHTML, a word processor based on Java, HTML and CSS
+ * Copyright (C) 2003 Ulrich Hilger
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.github.geniot.shtml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.file.Files;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests saving a document to a <code>RecoveryJournal</code> and getting
+ * it back by replaying the journal.
+ */
+public class RecoveryJournalTest extends TestCase {
+
+    /** text making documents long enough for changes to be journaled */
+    private static final String BODY = new String(new char[500]).replace('\0', 'x');
+
+    private File dir;
+
+    protected void setUp() throws IOException {
+        dir = Files.createTempDirectory("journal").toFile();
+    }
+
+    protected void tearDown() {
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    public void testReplayCheckpoint() throws IOException {
+        final URL source = new URL("file:/tmp/doc.htm");
+        final RecoveryJournal journal = new RecoveryJournal(dir, "s-1");
+        journal.save("<p>one</p>", source, "doc.htm");
+        assertEquals("<p>one</p>", new RecoveryJournal(dir, "s-1").replay());
+        assertEquals(source, journal.getSource());
+        assertEquals("doc.htm", journal.getName());
+    }
+
+    public void testReplayRecords() throws IOException {
+        final RecoveryJournal journal = new RecoveryJournal(dir, "s-1");
+        journal.save(BODY + "<p>one</p>", null, "new");
+        journal.save(BODY + "<p>one two</p>", null, "new");
+        journal.save(BODY + "<p>zero one two</p>", null, "new");
+        journal.save(BODY + "<p>zero two</p>", null, "new");
+        journal.save(BODY + "<p>zero two äöü</p>", null, "new");
+        assertTrue(getFile("s-1.journal").length() > 8);
+        assertEquals(BODY + "<p>zero two äöü</p>", new RecoveryJournal(dir, "s-1").replay());
+        assertNull(journal.getSource());
+    }
+
+    public void testChangeWithinSurrogatePair() throws IOException {
+        final RecoveryJournal journal = new RecoveryJournal(dir, "s-1");
+        journal.save(BODY + "<p>\uD83D\uDE00</p>", null, "new");
+        journal.save(BODY + "<p>\uD83D\uDE01</p>", null, "new");
+        journal.save(BODY + "<p>\uD83D\uDE01\uD83D\uDE02</p>", null, "new");
+        assertEquals(BODY + "<p>\uD83D\uDE01\uD83D\uDE02</p>", new RecoveryJournal(dir, "s-1").replay());
+    }
+
+    public void testUnchangedHtmlAddsNoRecord() throws IOException {
+        final RecoveryJournal journal = new RecoveryJournal(dir, "s-1");
+        journal.save(BODY + "<p>one</p>", null, "new");
+        final long length = getFile("s-1.journal").length();
+        journal.save(BODY + "<p>one</p>", null, "new");
+        assertEquals(length, getFile("s-1.journal").length());
+    }
+
+    public void testTornLastRecordIsIgnored() throws IOException {
+        final RecoveryJournal journal = new RecoveryJournal(dir, "s-1");
+        journal.save(BODY + "<p>one</p>", null, "new");
+        journal.save(BODY + "<p>one two</p>", null, "new");
+        final long complete = getFile("s-1.journal").length();
+        journal.save(BODY + "<p>one two three</p>", null, "new");
+        try (final RandomAccessFile f = new RandomAccessFile(getFile("s-1.journal"), "rw")) {
+            f.setLength(f.length() - 3);
+        }
+        assertEquals(BODY + "<p>one two</p>", journal.replay());
+        try (final RandomAccessFile f = new RandomAccessFile(getFile("s-1.journal"), "rw")) {
+            f.setLength(complete + 6);
+        }
+        assertEquals(BODY + "<p>one two</p>", journal.replay());
+    }
+
+    public void testJournalOfOtherCheckpointIsIgnored() throws IOException {
+        final RecoveryJournal journal = new RecoveryJournal(dir, "s-1");
+        journal.save(BODY + "<p>one</p>", null, "new");
+        journal.save(BODY + "<p>one two</p>", null, "new");
+        assertEquals(BODY + "<p>one two</p>", journal.replay());
+        // a crash after a new checkpoint was written, but not its journal
+        Files.write(getFile("s-1.html").toPath(), (BODY + "<p>one two three</p>").getBytes("UTF-8"));
+        assertEquals(BODY + "<p>one two three</p>", journal.replay());
+    }
+
+    public void testNewCheckpointAfterManyRecords() throws IOException {
+        final RecoveryJournal journal = new RecoveryJournal(dir, "s-1");
+        final StringBuilder html = new StringBuilder(BODY + "<p>");
+        for (int i = 0; i < 120; i++) {
+            html.append(i % 10);
+            journal.save(html + "</p>", null, "new");
+        }
+        assertEquals(html + "</p>", journal.replay());
+        assertTrue(getFile("s-1.journal").length() < 60 * 20);
+    }
+
+    public void testListAndDelete() throws IOException {
+        new RecoveryJournal(dir, "s-1").save("<p>one</p>", null, "new");
+        final RecoveryJournal journal = new RecoveryJournal(dir, "s-2");
+        journal.save("<p>two</p>", null, "new");
+        assertEquals(2, RecoveryJournal.list(dir).length);
+        journal.delete();
+        final String[] ids = RecoveryJournal.list(dir);
+        assertEquals(1, ids.length);
+        assertEquals("s-1", ids[0]);
+    }
+
+    private File getFile(final String name) {
+        return new File(dir, name);
+    }
+}